@@ -1,26 +1,28 @@
 package code;
 
 import java.awt.Image;
-import java.awt.Toolkit;
-import java.awt.image.CropImageFilter;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.ImageFilter;
-import java.util.ArrayList;
-
-import javax.swing.ImageIcon;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
     The Animation class manages a series of images (frames) and
     the amount of time to display each frame.
     
+    The frames themselves (images, end times, sizes and collision masks)
+    are kept in a Frames object that is never changed once made; adding a
+    frame makes a new one. Copies of an animation made with the copy
+    constructor share the frames but play back on their own, so many
+    sprites can use the same frames without any locking.
+    
     @author David Cairns
 */
 public class Animation {
 
-    private ArrayList<AnimFrame> frames;	// The set of animation frames
+    private Frames frames;					// The set of animation frames
     private int currFrameIndex;				// Current frame animation is on
     private long animTime;					// Current animation time
-    private long totalDuration;				// Total animation time
     private float animSpeed = 1.0f;			// Animation speed, e.g. 2 will be twice as fast
     
     private boolean loop = true;			// True if the animation should continue looping
@@ -32,31 +34,57 @@ public class Animation {
      * Creates a new, empty Animation.
      */
     public Animation() {
-        frames = new ArrayList<AnimFrame>();
-        totalDuration = 0;
+        frames = Frames.EMPTY;
         looped = false;
         start();
     }
     
+    /**
+     * Creates a new Animation that shows the same frames as 'other' but
+     * plays back separately. Playback settings (speed, looping) are copied
+     * and it starts from the beginning.
+     * 
+     * @param other	The animation to copy
+     */
+    public Animation(Animation other) {
+        frames = other.frames;
+        animSpeed = other.animSpeed;
+        loop = other.loop;
+        play = other.play;
+        start();
+    }
+    
     /**
      * Adds an image to the animation with the specified
-     * duration (time to display the image).
+     * duration (time to display the image). The image must
+     * already be loaded so that its size is known.
      *   
      * @param image		The image to add
      * @param duration	The time it should be displayed for
      * 
      */
-    public synchronized void addFrame(Image image, long duration)
+    public void addFrame(Image image, long duration)
+    {
+        frames = frames.add(image, duration);
+    }
+
+    /**
+     * Works out collision masks for every frame rotated in 'steps' equal
+     * steps around a full turn, e.g. 4 for 90 degree steps or 36 for 10
+     * degree steps. getMask(degrees) then returns the nearest one.
+     * 
+     * @param steps	The number of rotations to make masks for
+     */
+    public void buildRotatedMasks(int steps)
     {
-        totalDuration += duration;
-        frames.add(new AnimFrame(image, totalDuration));
+        frames = frames.withRotations(steps);
     }
 
 
     /**
      *  Starts this animation over from the beginning.
      */
-    public synchronized void start() {
+    public void start() {
         animTime = 0;
         currFrameIndex = 0;
         looped = false;
@@ -68,34 +96,32 @@ public class Animation {
      * 
      * @param elapsedTime	Time that has elapsed since last call
      */
-    public synchronized void update(long elapsedTime) {
+    public void update(long elapsedTime) {
     	
     	// If we are paused, don't update the animation
     	if (!play) return; 
     	
     	elapsedTime = (long)(elapsedTime * animSpeed);
     	
-        if (frames.size() > 1) 
+    	Frames f = frames;
+        if (f.count > 1) 
         {
             animTime += elapsedTime;
 
-            if (animTime >= totalDuration) 
+            if (animTime >= f.totalDuration) 
             {
             	if (loop)
             	{
-	                animTime = animTime % totalDuration;
-	                currFrameIndex = 0;
+	                animTime = animTime % f.totalDuration;
             	}
             	else
             	{
-            		animTime = totalDuration;
+            		animTime = f.totalDuration;
             	}
             	looped = true;
             }
 
-            while (animTime > getFrame(currFrameIndex).endTime) {
-                currFrameIndex++;
-            }
+            currFrameIndex = f.frameAt(animTime);
             
             // If we hit a stopFrame, pause the animation
             // It will be -1 if we should not stop at this point
@@ -114,25 +140,68 @@ public class Animation {
      * 
      * @return The current image that should be displayed
      */
-    public synchronized Image getImage() {
-        if (frames.size() == 0) {
-            return null;
-        }
-        else {
-            return getFrame(currFrameIndex).image;
-        }
+    public Image getImage() {
+        Frames f = frames;
+        if (f.count == 0) return null;
+        return f.images[currFrameIndex];
+    }
+
+    /**
+     * @return The width of the current image, or 0 if there are no images
+     */
+    public int getWidth() {
+        Frames f = frames;
+        if (f.count == 0) return 0;
+        return f.widths[currFrameIndex];
+    }
+
+    /**
+     * @return The height of the current image, or 0 if there are no images
+     */
+    public int getHeight() {
+        Frames f = frames;
+        if (f.count == 0) return 0;
+        return f.heights[currFrameIndex];
     }
 
     /**
-     * Works out which frame to display, incorporating
-     * the offset.
+     * @return Half the larger of the width and height of the current image
+     */
+    public float getRadius() {
+        Frames f = frames;
+        if (f.count == 0) return 0;
+        return f.radii[currFrameIndex];
+    }
+
+    /**
+     * Gets the collision mask for the current frame. Returns null if this
+     * animation has no images or the image had not loaded.
      * 
-     * @param i	The frame index to get
+     * @return The mask of the current image
+     */
+    public CollisionMask getMask() {
+        Frames f = frames;
+        if (f.count == 0) return null;
+        return f.masks[currFrameIndex];
+    }
+
+    /**
+     * Gets the collision mask for the current frame rotated by 'degrees',
+     * using the nearest mask made by buildRotatedMasks. If there aren't
+     * any rotated masks the unrotated one is returned.
      * 
-     * @return The animation frame corresponding to the index
+     * @param degrees	The rotation in degrees
+     * @return The mask of the current image
      */
-    private AnimFrame getFrame(int i) {
-        return (AnimFrame)frames.get(i);
+    public CollisionMask getMask(double degrees) {
+        Frames f = frames;
+        if (f.count == 0) return null;
+        if (f.rotations == null) return f.masks[currFrameIndex];
+
+        CollisionMask [] rotations = f.rotations[currFrameIndex];
+        int steps = rotations.length;
+        int i = (int)Math.round(degrees * steps / 360.0);
+        return rotations[Math.floorMod(i, steps)];
     }
 
     /**
@@ -145,10 +214,16 @@ public class Animation {
      */
     public Image getFrameImage(int i) {
     	
-    	if (i < 0 || i >= frames.size()) return null;
-    	
-    	AnimFrame frame = frames.get(i);
-    	return frame.image;
+    	Frames f = frames;
+    	if (i < 0 || i >= f.count) return null;
+    	return f.images[i];
+    }
+    
+    /**
+     * @return The number of frames in the animation
+     */
+    public int getFrameCount() {
+    	return frames.count;
     }
     
     /**
@@ -171,78 +246,22 @@ public class Animation {
     /**
      * Loads a complete animation from an animation sheet and adds each
      * frame in the sheet to the animation with the given frameDuration.
+     * The sheet is decoded straight away and each frame is copied into
+     * its own compatible image (see SpriteSheet).
      * 
      * @param fileName	The path to the file to load the animations from
      * @param rows		How many rows there are in the sheet
      * @param columns	How many columns there are in the sheet
      * @param frameDuration	The duration of each frame
+     * @return The sheet that was loaded, or null if it failed to load
      */
-    public void loadAnimationFromSheet(String fileName, int columns, int rows, int frameDuration)
+    public SpriteSheet loadAnimationFromSheet(String fileName, int columns, int rows, int frameDuration)
     {
-    	Image sheet = new ImageIcon(fileName).getImage();
-    	Image[] images = getImagesFromSheet(sheet, columns, rows);
-    	
-    	for (int i=0; i<images.length; i++)
-    	{
-    		addFrame(images[i], frameDuration);
-    	}
+    	SpriteSheet sheet = SpriteSheet.load(fileName, columns, rows);
+    	if (sheet != null) sheet.addTo(this, frameDuration);
+    	return sheet;
     }
     
-
-    
-    /**
-     * Loads a set of images from a sprite sheet so that they can be added to an animation.
-     * Courtesy of Donald Robertson.
-     * 
-     * @param sheet
-     * @param rows
-     * @param columns
-     * @return
-     */
-    private Image[] getImagesFromSheet(Image sheet, int columns, int rows) {
-
-        // basic method to achieve split of sprite sheet
-        // overloading could be used to achieve more complex things 
-    	// such as sheets where all images are not the same dimensions
-        // deliberately 'overcommented' for clarity when integrating with
-    	// main engine
-
-        // initialise image array to return
-        Image[] split = new Image[rows*columns];
-
-        // easiest way to count as going through sprite sheet as though it is a 2d array
-        int count = 0;
-
-        // initialise width & height of split up images
-        int width = sheet.getWidth(null)/columns;
-        int height = sheet.getHeight(null)/rows;
-
-        // for each column in each row
-        for(int i = 0; i < rows; i++) 
-        {
-            for(int j = 0; j < columns; j++) 
-            {
-            	// create an image filter
-            	// top left (x) = j*width, (y) = i*height
-            	// extract rectangular region of width and height from origin x,y
-            	ImageFilter cropper = new CropImageFilter(j*width,i*height, width, height);
-            	
-                // create image source based on original sprite sheet with filter applied
-                // results in image source for cropped image being generated
-                FilteredImageSource cropped = new FilteredImageSource(sheet.getSource(), cropper);
-                
-                // create a new image using generated image source and store in appropriate array element
-                split[count] = Toolkit.getDefaultToolkit().createImage(cropped);
-                        
-                // increment count to prevent elements being overwritten
-                count++;
-            }
-        }
-
-        // return array
-        return split;
-    }
-
     /**
      * Pause the animation.
      */
@@ -257,7 +276,7 @@ public class Animation {
      */
     public void pauseAt(int frame)
     {
-    	if ((frame < 0) || (frame >= frames.size())) 
+    	if ((frame < 0) || (frame >= frames.count)) 
     		stopFrame = 0;
     	else
     		stopFrame = frame; 
@@ -288,29 +307,148 @@ public class Animation {
      */
     public void setAnimationFrame(int f)
     {
-    	if (f < 0 || f >= frames.size()) return;
+    	if (f < 0 || f >= frames.count) return;
     	currFrameIndex = f;
+    	// Start the clock just inside the frame so update stays on it, as
+    	// frameAt() gives the time a frame ends to that frame, not the next
+    	animTime = (f == 0) ? 0 : frames.endTimes[f - 1] + 1;
+    }
+    
+    /**
+     * Save where this animation is up to (not its frames), e.g. for a
+     * replay keyframe.
+     * 
+     * @param out	Where to write the playback state
+     * @throws IOException If the state could not be written
+     */
+    public void writeState(DataOutput out) throws IOException
+    {
+    	out.writeInt(currFrameIndex);
+    	out.writeLong(animTime);
+    	out.writeFloat(animSpeed);
+    	out.writeBoolean(loop);
+    	out.writeBoolean(looped);
+    	out.writeBoolean(play);
+    	out.writeInt(stopFrame);
+    }
+    
+    /**
+     * Carry on from a playback state saved by writeState(). The animation
+     * must have the same frames it had when the state was saved.
+     * 
+     * @param in	Where to read the playback state from
+     * @throws IOException If the state could not be read
+     */
+    public void readState(DataInput in) throws IOException
+    {
+    	currFrameIndex = in.readInt();
+    	animTime = in.readLong();
+    	animSpeed = in.readFloat();
+    	loop = in.readBoolean();
+    	looped = in.readBoolean();
+    	play = in.readBoolean();
+    	stopFrame = in.readInt();
+    	if (currFrameIndex < 0 || currFrameIndex >= Math.max(1, frames.count))
+    		throw new IOException("Frame " + currFrameIndex + " is not in the animation");
     }
     
     /**
-     * Private class to hold information about a given
-     * animation frame.
+     * The frames of an animation. A Frames object is never changed once it
+     * has been made, so it can be shared by any number of animations and
+     * read from any thread.
      * 
      */
-    private class AnimFrame {
+    private static class Frames {
+
+        static final Frames EMPTY = new Frames(0);
+
+        final int count;
+        final Image [] images;			// The image for each frame
+        final long [] endTimes;			// The time at which each frame ends
+        final long totalDuration;		// Total animation time
+        final int [] widths;			// The size of each image
+        final int [] heights;
+        final float [] radii;			// Half the larger of the width and height
+        final CollisionMask [] masks;	// The solid pixels of each image
+        final CollisionMask [][] rotations;	// Masks for rotated copies of each image, or null
+        final int rotationSteps;		// Number of rotated masks per image
+
+        private Frames(int count) {
+            this(count, new Image[count], new long[count], new int[count], new int[count],
+            		new float[count], new CollisionMask[count], null, 0);
+        }
+
+        private Frames(int count, Image [] images, long [] endTimes, int [] widths, int [] heights,
+        		float [] radii, CollisionMask [] masks, CollisionMask [][] rotations, int rotationSteps) {
+            this.count = count;
+            this.images = images;
+            this.endTimes = endTimes;
+            this.totalDuration = count == 0 ? 0 : endTimes[count - 1];
+            this.widths = widths;
+            this.heights = heights;
+            this.radii = radii;
+            this.masks = masks;
+            this.rotations = rotations;
+            this.rotationSteps = rotationSteps;
+        }
+
+        /**
+         * @return A copy of these frames with 'image' added to the end
+         */
+        Frames add(Image image, long duration) {
+            int n = count + 1;
+            long [] ends = Arrays.copyOf(endTimes, n);
+            ends[count] = totalDuration + duration;
+            int [] w = Arrays.copyOf(widths, n);
+            int [] h = Arrays.copyOf(heights, n);
+            float [] r = Arrays.copyOf(radii, n);
+            w[count] = image.getWidth(null);
+            h[count] = image.getHeight(null);
+            r[count] = Math.max(w[count], h[count]) / 2.0f;
+            CollisionMask [] m = Arrays.copyOf(masks, n);
+            m[count] = CollisionMask.fromImage(image);
+
+            CollisionMask [][] rot = null;
+            if (rotations != null) {
+                rot = Arrays.copyOf(rotations, n);
+                rot[count] = rotatedMasks(image, rotationSteps);
+            }
 
-        Image image;	// The image for a frame.
-        long endTime;	// The time at which this frame ends.
+            Image [] img = Arrays.copyOf(images, n);
+            img[count] = image;
+            return new Frames(n, img, ends, w, h, r, m, rot, rotationSteps);
+        }
 
         /**
-         * Create a new frame with the given image and end time.
-         * 
-         * @param image		The image to use
-         * @param endTime	The associated end time
+         * @return A copy of these frames with 'steps' rotated masks for each frame
          */
-        public AnimFrame(Image image, long endTime) {
-            this.image = image;
-            this.endTime = endTime;
+        Frames withRotations(int steps) {
+            CollisionMask [][] rot = new CollisionMask[count][];
+            for (int i=0; i<count; i++)
+                rot[i] = rotatedMasks(images[i], steps);
+            return new Frames(count, images, endTimes, widths, heights, radii, masks, rot, steps);
+        }
+
+        private static CollisionMask [] rotatedMasks(Image image, int steps) {
+            CollisionMask [] rot = new CollisionMask[steps];
+            for (int i=0; i<steps; i++)
+                rot[i] = CollisionMask.rotated(image, i * 360.0 / steps);
+            return rot;
+        }
+
+        /**
+         * Finds the frame showing at 'time' by binary search: the first
+         * frame that ends at or after it.
+         */
+        int frameAt(long time) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (endTimes[mid] < time) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
         }
     }
 }
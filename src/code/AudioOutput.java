@@ -0,0 +1,41 @@
+package code;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An AudioOutput is where SoftwareMixer sends the sound it has mixed:
+ * normally a LineOutput for the sound card, or a NullOutput when there
+ * isn't one or the mixer is being benchmarked.
+ *
+ * @author Cameron Morrison
+ */
+public interface AudioOutput {
+
+	/**
+	 * Get ready to take sound in 'format'.
+	 *
+	 * @param format		The format of the data that will be written
+	 * @param bufferFrames	How many frames the output should buffer
+	 * @throws Exception If the output could not be opened
+	 */
+	void open(AudioFormat format, int bufferFrames) throws Exception;
+
+	/**
+	 * Send 'length' bytes of 'data' to the output. This may block until
+	 * there is room in the output's buffer.
+	 *
+	 * @param data		The sound data
+	 * @param length	The number of bytes to write
+	 */
+	void write(byte [] data, int length);
+
+	/**
+	 * @return How many frames have been written but not played yet
+	 */
+	int getQueuedFrames();
+
+	/**
+	 * Stop and release the output.
+	 */
+	void close();
+}
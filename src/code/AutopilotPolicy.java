@@ -0,0 +1,38 @@
+package code;
+
+/**
+ * AutopilotPolicy is a very simple Policy that flaps whenever the bird is
+ * falling and below a set height. It has no state, so one can be shared by
+ * any number of games.
+ *
+ * @author Cameron Morrison
+ */
+public class AutopilotPolicy implements Policy {
+
+	private float height;	// Fraction of the way down the screen to keep the bird above
+
+	/**
+	 * Keep the bird around the middle of the screen.
+	 */
+	public AutopilotPolicy()
+	{
+		this(0.5f);
+	}
+
+	/**
+	 * @param height How far down the screen to keep the bird, from 0 (top) to 1 (bottom)
+	 */
+	public AutopilotPolicy(float height)
+	{
+		this.height = height;
+	}
+
+	@Override
+	public int act(GameWorld world)
+	{
+		Sprite player = world.getPlayer();
+		if (player.getY() > world.getScreenHeight() * height && player.getVelocityY() > 0)
+			return GameWorld.INPUT_FLAP;
+		return 0;
+	}
+}
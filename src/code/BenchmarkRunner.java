@@ -0,0 +1,307 @@
+package code;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BenchmarkRunner times small pieces of code the way a benchmark harness
+ * such as JMH does, without needing anything outside the JDK. Each
+ * benchmark is first run for a number of warm up iterations, so the JIT has
+ * compiled it, and then for a number of measured iterations. An iteration
+ * calls the benchmark repeatedly for about 'iterationMillis' and works out
+ * the time per operation; the results are the mean, spread and range of
+ * those iterations.
+ *
+ * A benchmark does 'ops' operations per call and returns something made
+ * from their results, which the runner keeps so the JIT can't decide the
+ * work is unused and remove it.
+ *
+ * The results can be saved as JSON, one benchmark per line, and an earlier
+ * file read back to compare against, so changes can be checked for
+ * regressions.
+ *
+ * @author Cameron Morrison
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * A piece of code to time.
+	 */
+	public interface Benchmark {
+		/**
+		 * @param ops How many operations to do
+		 * @return Anything made from the results, so they aren't optimised away
+		 */
+		long run(int ops);
+	}
+
+	private int warmupIterations;
+	private int measureIterations;
+	private long iterationMillis;
+	private ArrayList<Result> results = new ArrayList<Result>();
+	private long sink = 0;		// Everything the benchmarks return is added into here
+
+	/**
+	 * @param warmup	Iterations to run before measuring
+	 * @param measure	Iterations to measure
+	 * @param millis	Roughly how long each iteration lasts
+	 */
+	public BenchmarkRunner(int warmup, int measure, long millis)
+	{
+		warmupIterations = warmup;
+		measureIterations = Math.max(1, measure);
+		iterationMillis = millis;
+	}
+
+	/**
+	 * Time a benchmark, doing as many operations per call as fit in about a
+	 * millisecond, and print its result.
+	 *
+	 * @param name	What to call it in the results
+	 * @param b		The benchmark
+	 * @return Its result
+	 */
+	public Result run(String name, Benchmark b)
+	{
+		return run(name, 0, b);
+	}
+
+	/**
+	 * Time a benchmark and print its result.
+	 *
+	 * @param name	What to call it in the results
+	 * @param batch	Operations per call, or 0 to pick enough for about a millisecond
+	 * @param b		The benchmark
+	 * @return Its result
+	 */
+	public Result run(String name, int batch, Benchmark b)
+	{
+		if (batch <= 0) batch = calibrate(b);
+
+		for (int i=0; i<warmupIterations; i++)
+			iteration(b, batch);
+
+		double [] nanosPerOp = new double[measureIterations];
+		long ops = 0;
+		for (int i=0; i<measureIterations; i++)
+		{
+			long [] done = iteration(b, batch);
+			nanosPerOp[i] = (double)done[1] / done[0];
+			ops += done[0];
+		}
+
+		Result r = new Result(name, nanosPerOp, ops);
+		results.add(r);
+		System.out.println(r);
+		return r;
+	}
+
+	/**
+	 * @return Operations per call that take about a millisecond
+	 */
+	private int calibrate(Benchmark b)
+	{
+		int batch = 1;
+		while (batch < (1 << 30))
+		{
+			long start = System.nanoTime();
+			sink += b.run(batch);
+			if (System.nanoTime() - start >= 1000000) break;
+			batch *= 2;
+		}
+		return batch;
+	}
+
+	/**
+	 * Call 'b' until 'iterationMillis' has gone by.
+	 *
+	 * @return The operations done and the nanoseconds they took
+	 */
+	private long [] iteration(Benchmark b, int batch)
+	{
+		long ops = 0;
+		long start = System.nanoTime();
+		long end = start + iterationMillis * 1000000;
+		long now;
+		do {
+			sink += b.run(batch);
+			ops += batch;
+			now = System.nanoTime();
+		} while (now < end);
+		return new long[] { ops, now - start };
+	}
+
+	/**
+	 * @return Every result so far, in the order they were run
+	 */
+	public List<Result> getResults() { return results; }
+
+	/**
+	 * Save every result so far as JSON.
+	 *
+	 * @param file Where to save them
+	 * @return true if they were saved
+	 */
+	public boolean writeJson(File file)
+	{
+		try (PrintWriter out = new PrintWriter(new FileWriter(file)))
+		{
+			out.println("{");
+			out.println("  \"timestamp\": \"" + Instant.now() + "\",");
+			out.println("  \"java\": \"" + escape(System.getProperty("java.version")) + "\",");
+			out.println("  \"vm\": \"" + escape(System.getProperty("java.vm.name")) + "\",");
+			out.println("  \"os\": \"" + escape(System.getProperty("os.name") + " " + System.getProperty("os.arch")) + "\",");
+			out.println("  \"cpus\": " + Runtime.getRuntime().availableProcessors() + ",");
+			out.println("  \"warmupIterations\": " + warmupIterations + ",");
+			out.println("  \"measureIterations\": " + measureIterations + ",");
+			out.println("  \"iterationMillis\": " + iterationMillis + ",");
+			out.println("  \"benchmarks\": [");
+			for (int i=0; i<results.size(); i++)
+				out.println("    " + results.get(i).toJson() + (i < results.size() - 1 ? "," : ""));
+			out.println("  ]");
+			out.println("}");
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to write results '" + file + "':" + e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Read the mean time of each benchmark from a file saved by writeJson().
+	 *
+	 * @param file The file
+	 * @return Nanoseconds per operation by benchmark name, or null if the file couldn't be read
+	 */
+	public static Map<String, Double> readJson(File file)
+	{
+		Pattern p = Pattern.compile("\"name\": \"((?:[^\"\\\\]|\\\\.)*)\".*\"mean\": ([-0-9.eE+]+)");
+		LinkedHashMap<String, Double> means = new LinkedHashMap<String, Double>();
+		try (BufferedReader in = new BufferedReader(new FileReader(file)))
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				Matcher m = p.matcher(line);
+				if (m.find()) means.put(m.group(1).replace("\\\"", "\"").replace("\\\\", "\\"), Double.parseDouble(m.group(2)));
+			}
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			System.err.println("Failed to read results '" + file + "':" + e);
+			return null;
+		}
+		return means;
+	}
+
+	/**
+	 * Print how every result so far compares with an earlier run.
+	 *
+	 * @param baseline Nanoseconds per operation by name, from readJson()
+	 */
+	public void compare(Map<String, Double> baseline)
+	{
+		System.out.println();
+		System.out.printf("%-40s %12s %12s %8s%n", "Benchmark", "Before", "After", "Change");
+		for (Result r : results)
+		{
+			Double before = baseline.get(r.getName());
+			if (before == null) continue;
+			System.out.printf("%-40s %12.1f %12.1f %+7.1f%%%n", r.getName(), before, r.getMean(),
+					(r.getMean() - before) / before * 100);
+		}
+	}
+
+	/**
+	 * @return Everything the benchmarks returned, added up
+	 */
+	public long getSink() { return sink; }
+
+	private static String escape(String s)
+	{
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/**
+	 * The time per operation of one benchmark over the measured iterations.
+	 */
+	public static class Result {
+
+		private String name;
+		private double mean;
+		private double stddev;
+		private double min = Double.MAX_VALUE;
+		private double max = 0;
+		private int iterations;
+		private long ops;
+
+		private Result(String name, double [] nanosPerOp, long ops)
+		{
+			this.name = name;
+			this.ops = ops;
+			iterations = nanosPerOp.length;
+			for (double n : nanosPerOp)
+			{
+				mean += n;
+				min = Math.min(min, n);
+				max = Math.max(max, n);
+			}
+			mean /= iterations;
+			for (double n : nanosPerOp)
+				stddev += (n - mean) * (n - mean);
+			stddev = iterations > 1 ? Math.sqrt(stddev / (iterations - 1)) : 0;
+		}
+
+		public String getName() { return name; }
+
+		/**
+		 * @return The average nanoseconds per operation
+		 */
+		public double getMean() { return mean; }
+
+		/**
+		 * @return The standard deviation of the iterations' nanoseconds per operation
+		 */
+		public double getStddev() { return stddev; }
+
+		public double getMin() { return min; }
+
+		public double getMax() { return max; }
+
+		/**
+		 * @return The operations done in the measured iterations
+		 */
+		public long getOps() { return ops; }
+
+		/**
+		 * @return The result as a JSON object on one line
+		 */
+		public String toJson()
+		{
+			// Always use '.' for the decimal point, whatever the locale
+			return String.format(Locale.ROOT, "{\"name\": \"%s\", \"unit\": \"ns/op\", \"mean\": %.3f, \"stddev\": %.3f, "
+					+ "\"min\": %.3f, \"max\": %.3f, \"iterations\": %d, \"ops\": %d}",
+					escape(name), mean, stddev, min, max, iterations, ops);
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%-40s %12.1f ns/op  +- %6.1f  (%d ops)", name, mean, stddev, ops);
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package code;
+
+/**
+ * BirdBatch moves a large number of birds through one level at once, e.g.
+ * to try out a tuning change on 100,000 birds. Only the bird physics from
+ * GameWorld.update is simulated: gravity, flapping, being kept on the
+ * screen (handleScreenEdge) and crashing into the tile map. Rocks are left
+ * out, and a bird that crashes stops where it is.
+ *
+ * Rather than a Sprite per bird, the birds are kept as a structure of
+ * arrays, one float array per property, so each tick is a couple of tight
+ * loops over plain arrays:
+ *
+ * 1. The physics loop is only float arithmetic, with no calls or branches,
+ *    so the JIT can compile it to SIMD instructions.
+ * 2. The collision loop looks each bird's height up in a table, made once
+ *    a tick from the map's solid tiles packed one long per column (see
+ *    TileMap.getSolidColumn), that says whether a bird there could be off
+ *    the screen or touching a tile. Only those birds are moved back onto
+ *    the screen and given the exact circle test GameWorld uses.
+ *
+ * Every bird plays the same level (endless levels are generated as it
+ * scrolls), and the map scrolls 1 pixel a tick just as in GameWorld.
+ *
+ * Usage: java -Djava.awt.headless=true code.BirdBatch [birds] [ticks]
+ *
+ * @author Cameron Morrison
+ */
+public class BirdBatch {
+
+	static final long TICK_MILLIS = 10;	// Same tick length as GameCore's default
+
+	private int count;
+	private float [] x;				// Left of each bird, in screen pixels
+	private float [] y;				// Top of each bird, in screen pixels
+	private float [] vy;			// Vertical speed in pixels per ms
+	private float [] alive;			// 1 for a bird still flying, 0 once it has crashed
+	private int [] crashTick;		// Ticks each crashed bird survived before crashing
+	private int living;
+	private int tick = 0;			// Ticks played
+
+	private TileMap tmap;
+	private LevelGenerator generator;
+	private long [] columns;		// Solid tiles of each stored map column, see TileMap.getSolidColumn
+	private byte [] danger;			// For each pixel row, 1 if a bird with its top there needs checking
+	private int offsetMapX;
+	private int screenWidth;
+
+	private float gravity;
+	private float lift;
+	private float birdHeight;
+	private float radius;
+
+	/**
+	 * Create 'count' birds at the start of a new game.
+	 *
+	 * @param settings	How to set up the game, as for a GameWorld
+	 * @param count		How many birds
+	 * @throws IllegalStateException If the game couldn't be loaded
+	 */
+	public BirdBatch(GameSettings settings, int count)
+	{
+		GameWorld world = settings.createWorld(false);
+		if (world == null) throw new IllegalStateException("Failed to load the game");
+		tmap = world.getTileMap();
+		if (tmap.getMapHeight() > 64) throw new IllegalStateException("The map is too tall for BirdBatch");
+		generator = world.getGenerator();
+		offsetMapX = world.getOffsetMapX();
+		screenWidth = world.getScreenWidth();
+		gravity = world.getGravity();
+		lift = world.getLift();
+		Sprite player = world.getPlayer();
+		birdHeight = player.getHeight();
+		radius = player.getRadius();
+
+		this.count = count;
+		x = new float[count];
+		y = new float[count];
+		vy = new float[count];
+		alive = new float[count];
+		crashTick = new int[count];
+		for (int i=0; i<count; i++)
+		{
+			x[i] = player.getX();
+			y[i] = player.getY();
+			vy[i] = player.getVelocityY();
+			alive[i] = 1;
+		}
+		living = count;
+
+		columns = new long[tmap.getMapWidth()];
+		packColumns();
+		danger = new byte[tmap.getPixelHeight() + 1];
+	}
+
+	/**
+	 * Copy the solid tiles of every stored column into 'columns'.
+	 */
+	private void packColumns()
+	{
+		for (int c=0; c<columns.length; c++)
+			columns[c] = tmap.getSolidColumn(c);
+	}
+
+	/**
+	 * Move every bird on by one tick.
+	 *
+	 * @param elapsed	The length of the tick in milliseconds
+	 * @param flap		1 for each bird that flaps this tick, otherwise 0
+	 */
+	public void update(long elapsed, float [] flap)
+	{
+		float dt = elapsed;
+		float fall = gravity * dt;
+		float up = -lift;
+
+		// Gravity, flapping and moving, as in GameWorld.update. There are no
+		// ifs, a flap is blended in by multiplying with 0 or 1 (which gives
+		// exactly the same numbers), so the JIT can use SIMD instructions.
+		for (int i=0; i<count; i++)
+		{
+			float a = alive[i];
+			float v = vy[i];
+			y[i] += v * dt * a;
+			v += fall * a;
+			float f = flap[i] * a;
+			vy[i] = v * (1 - f) + up * f;
+		}
+		tick++;
+
+		offsetMapX--;
+		if (generator != null)
+		{
+			generator.update(tmap, offsetMapX, screenWidth);
+			packColumns();
+		}
+		collide();
+	}
+
+	/**
+	 * Keep every bird on the screen and stop any that have hit a solid tile.
+	 */
+	private void collide()
+	{
+		float floor = tmap.getPixelHeight() - birdHeight;
+		float h = birdHeight;
+		float r = radius;
+		int last = danger.length - 1;
+
+		float lastX = Float.NaN;
+		for (int i=0; i<count; i++)
+		{
+			// Birds usually share an x, so the table rarely needs remaking
+			if (x[i] != lastX)
+			{
+				lastX = x[i];
+				markDanger(lastX);
+			}
+			int row = Math.max(0, Math.min(last, (int)y[i]));
+			if (danger[row] == 0 || alive[i] == 0) continue;
+
+			// As GameWorld.handleScreenEdge
+			if (y[i] > floor)
+			{
+				y[i] = floor - 1;
+				vy[i] = -vy[i];
+			}
+			if (y[i] < h) y[i] = h + 1;
+
+			if (tmap.circleHitsSolid(x[i] + r - offsetMapX, y[i] + r, r))
+			{
+				alive[i] = 0;
+				crashTick[i] = tick - 1;
+				living--;
+			}
+		}
+	}
+
+	/**
+	 * Work out 'danger' for birds whose left is at 'birdX'. A bird whose top
+	 * is between y and y + 1 pixels could be off the screen or touching a
+	 * solid tile unless danger[y] is 0.
+	 */
+	private void markDanger(float birdX)
+	{
+		float floor = tmap.getPixelHeight() - birdHeight;
+		int tw = tmap.getTileWidth();
+		int th = tmap.getTileHeight();
+		int mapWidth = columns.length;
+		int lastRow = tmap.getMapHeight() - 1;
+		float size = radius * 2;
+
+		// The solid tiles in the columns the bird's box covers
+		float left = birdX - offsetMapX;
+		long solid = 0;
+		for (int c=(int)Math.floor(left / tw); c<=(int)Math.floor((left + size) / tw); c++)
+		{
+			if (tmap.isWrapped()) solid |= columns[Math.floorMod(c, mapWidth)];
+			else if (c >= 0 && c < mapWidth) solid |= columns[c];
+		}
+
+		for (int y=0; y<danger.length; y++)
+		{
+			// The rows covered by the box of a bird with its top anywhere from y to y + 1
+			int row0 = Math.min(lastRow, y / th);
+			int row1 = Math.min(lastRow, (int)((y + 1 + size) / th));
+			long rows = (-1L << row0) & (-1L >>> (63 - row1));
+			boolean edge = y + 1 > floor || y < birdHeight;
+			danger[y] = (byte)(edge || (solid & rows) != 0 ? 1 : 0);
+		}
+	}
+
+	/**
+	 * @return The number of birds
+	 */
+	public int getCount() { return count; }
+
+	/**
+	 * @return The number of birds that haven't crashed
+	 */
+	public int getLivingCount() { return living; }
+
+	/**
+	 * @param i Which bird
+	 * @return true if it hasn't crashed
+	 */
+	public boolean isAlive(int i) { return alive[i] != 0; }
+
+	/**
+	 * @param i Which bird
+	 * @return The ticks it survived, not counting the one it crashed in
+	 */
+	public int getTicks(int i) { return alive[i] != 0 ? tick : crashTick[i]; }
+
+	/**
+	 * @param i Which bird
+	 * @return The top of the bird in screen pixels
+	 */
+	public float getY(int i) { return y[i]; }
+
+	/**
+	 * @param i Which bird
+	 * @return Its vertical speed in pixels per ms
+	 */
+	public float getVelocityY(int i) { return vy[i]; }
+
+	/**
+	 * @return How far the map has scrolled, as GameWorld.getOffsetMapX()
+	 */
+	public int getOffsetMapX() { return offsetMapX; }
+
+	/**
+	 * @return The map the birds are flying through
+	 */
+	public TileMap getTileMap() { return tmap; }
+
+	/**
+	 * Compare BirdBatch with moving the same birds as Sprites the way
+	 * GameWorld does. Each bird flaps whenever it falls too far towards the
+	 * bottom of the next gap, each with its own margin so they spread out.
+	 */
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		int birds = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		GameSettings settings = new GameSettings(1);
+		settings.setEndless(1);
+		float [] margin = new float[birds];
+		GameRandom random = new GameRandom(2);
+		for (int i=0; i<birds; i++)
+			margin[i] = 40 + random.nextFloat() * 60;
+
+		// Warm up both, then time them
+		for (int pass=0; pass<2; pass++)
+		{
+			int n = pass == 0 ? Math.min(birds, 1000) : birds;
+			int t = pass == 0 ? Math.min(ticks, 500) : ticks;
+
+			long start = System.nanoTime();
+			int living = runBatch(settings, n, t, margin);
+			long batchNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int spriteLiving = runSprites(settings, n, t, margin);
+			long spriteNanos = System.nanoTime() - start;
+
+			if (pass == 0) continue;
+			System.out.printf("%d birds for %d ticks%n", n, t);
+			System.out.printf("BirdBatch: %.1f ms (%.2f ns per bird tick), %d still flying%n",
+					batchNanos / 1e6, (double)batchNanos / ((long)n * t), living);
+			System.out.printf("Sprites:   %.1f ms (%.2f ns per bird tick), %d still flying%n",
+					spriteNanos / 1e6, (double)spriteNanos / ((long)n * t), spriteLiving);
+			System.out.printf("Speedup: %.1fx%n", (double)spriteNanos / batchNanos);
+		}
+	}
+
+	/**
+	 * @return The birds still flying at the end
+	 */
+	private static int runBatch(GameSettings settings, int birds, int ticks, float [] margin)
+	{
+		BirdBatch batch = new BirdBatch(settings, birds);
+		float [] flap = new float[birds];
+		int [] runs = new int[batch.tmap.getMapHeight() + 1];
+		for (int t=0; t<ticks; t++)
+		{
+			float bottom = gapBottom(batch.tmap, batch.x[0] - batch.offsetMapX, runs);
+			for (int i=0; i<birds; i++)
+				flap[i] = batch.y[i] > bottom - margin[i] && batch.vy[i] > 0 ? 1 : 0;
+			batch.update(TICK_MILLIS, flap);
+		}
+		return batch.getLivingCount();
+	}
+
+	/**
+	 * @return The birds still flying at the end
+	 */
+	private static int runSprites(GameSettings settings, int birds, int ticks, float [] margin)
+	{
+		GameWorld world = settings.createWorld(false);
+		TileMap tmap = world.getTileMap();
+		LevelGenerator generator = world.getGenerator();
+		int offsetMapX = world.getOffsetMapX();
+		Sprite player = world.getPlayer();
+		Sprite [] sprites = new Sprite[birds];
+		for (int i=0; i<birds; i++)
+		{
+			sprites[i] = new Sprite(new Animation(GameAssets.get().bird));
+			sprites[i].setX(player.getX());
+			sprites[i].setY(player.getY());
+		}
+
+		int [] runs = new int[tmap.getMapHeight() + 1];
+		int living = birds;
+		for (int t=0; t<ticks; t++)
+		{
+			float bottom = gapBottom(tmap, player.getX() - offsetMapX, runs);
+			offsetMapX--;
+			if (generator != null) generator.update(tmap, offsetMapX, world.getScreenWidth());
+			for (int i=0; i<birds; i++)
+			{
+				Sprite s = sprites[i];
+				if (!s.isVisible()) continue;
+				boolean flap = s.getY() > bottom - margin[i] && s.getVelocityY() > 0;
+				s.update(TICK_MILLIS);
+				s.setVelocityY(s.getVelocityY() + world.getGravity() * TICK_MILLIS);
+				if (flap) s.setVelocityY(-world.getLift());
+				world.handleScreenEdge(s, tmap, TICK_MILLIS);
+				float r = s.getRadius();
+				if (tmap.circleHitsSolid(s.getX() + r - offsetMapX, s.getY() + r, r))
+				{
+					s.hide();
+					living--;
+				}
+			}
+		}
+		return living;
+	}
+
+	/**
+	 * @param tmap	The map
+	 * @param mapX	The left of the birds in map pixels
+	 * @param runs	Room for the solid runs of a column
+	 * @return The bottom of the gap in the next pipe, or of the map if there is none
+	 */
+	private static float gapBottom(TileMap tmap, float mapX, int [] runs)
+	{
+		int first = (int)Math.floor(mapX / tmap.getTileWidth());
+		for (int col=first; col<=first + BirdSensors.LOOKAHEAD; col++)
+		{
+			int n = tmap.getSolidIntervals(col, runs);
+			// The pipes in a level have one gap, between a run from the top and one from the bottom
+			if (n == 2) return runs[2] * tmap.getTileHeight();
+		}
+		return tmap.getPixelHeight();
+	}
+}
@@ -0,0 +1,140 @@
+package code;
+
+/**
+ * BirdSensors describes what the bird can see as a few numbers, for a bot
+ * to decide what to do from. Each is scaled to be roughly between -1 and 1:
+ *
+ *  0  height of the bird's centre, 0 at the top of the screen, 1 at the bottom
+ *  1  vertical speed, as a fraction of the speed a flap gives (-1 just after one)
+ *  2  distance to the next pipe, as a fraction of the screen width (1 if none)
+ *  3  top of the gap in that pipe, relative to the bird's centre
+ *  4  bottom of the gap in that pipe, relative to the bird's centre
+ *  5  across to the nearest rock ahead, as a fraction of the screen width (1 if none)
+ *  6  down to that rock, as a fraction of the screen height
+ *
+ * Reading the sensors allocates nothing once the first map has been seen.
+ * A BirdSensors is not thread safe; give each bot its own.
+ *
+ * @author Cameron Morrison
+ */
+public class BirdSensors {
+
+	public static final int COUNT = 7;		// How many numbers read() writes
+	static final int LOOKAHEAD = 16;		// Columns ahead of the bird to look for a pipe
+
+	private int [] runs = new int[0];		// Solid runs of a column, from TileMap.getSolidIntervals
+	private float [] pipe = new float[3];	// The next pipe, from findPipes
+
+	/**
+	 * Write the sensor readings for 'world' into 'out'.
+	 *
+	 * @param world		The game to look at
+	 * @param out		Where to write COUNT numbers
+	 * @param offset	Where in 'out' to write the first one
+	 */
+	public void read(GameWorld world, float [] out, int offset)
+	{
+		Sprite bird = world.getPlayer();
+		float width = world.getScreenWidth();
+		float height = world.getScreenHeight();
+		float cx = bird.getX() + bird.getWidth() / 2.0f;
+		float cy = bird.getY() + bird.getHeight() / 2.0f;
+
+		out[offset] = cy / height;
+		out[offset + 1] = bird.getVelocityY() / world.getLift();
+
+		float pipeX = width;
+		float gapTop = 0;
+		float gapBottom = world.getTileMap().getPixelHeight();
+		if (findPipes(world, 1, pipe, 0) > 0)
+		{
+			pipeX = pipe[0];
+			gapTop = pipe[1];
+			gapBottom = pipe[2];
+		}
+		out[offset + 2] = Math.max(0, pipeX) / width;
+		out[offset + 3] = (gapTop - cy) / height;
+		out[offset + 4] = (gapBottom - cy) / height;
+
+		// The closest rock that hasn't gone past the bird
+		ObstaclePool rocks = world.getRocks();
+		float rockDx = width;
+		float rockDy = 0;
+		float best = Float.MAX_VALUE;
+		for (int i=0; i<rocks.getActiveCount(); i++)
+		{
+			Sprite r = rocks.getActive(i);
+			if (r.getX() + r.getWidth() < bird.getX()) continue;
+			float dx = r.getX() + r.getWidth() / 2.0f - cx;
+			float dy = r.getY() + r.getHeight() / 2.0f - cy;
+			float d = dx * dx + dy * dy;
+			if (d < best)
+			{
+				best = d;
+				rockDx = dx;
+				rockDy = dy;
+			}
+		}
+		out[offset + 5] = rockDx / width;
+		out[offset + 6] = rockDy / height;
+	}
+
+	/**
+	 * Find the next few pipes at or ahead of the bird, nearest first. A pipe
+	 * is one or more columns of the map next to each other with something
+	 * solid in them, and its gap is the biggest space between the solid
+	 * tiles in its first column. For each pipe three numbers are written:
+	 * how far it is to the right of the bird's left edge, and the top and
+	 * bottom of its gap, all in pixels.
+	 *
+	 * @param world		The game to look at
+	 * @param count		The most pipes to find
+	 * @param out		Where to write 3 numbers for each pipe found
+	 * @param offset	Where in 'out' to write the first one
+	 * @return The number of pipes found within LOOKAHEAD columns of each other
+	 */
+	int findPipes(GameWorld world, int count, float [] out, int offset)
+	{
+		TileMap tmap = world.getTileMap();
+		if (runs.length < tmap.getMapHeight() + 1) runs = new int[tmap.getMapHeight() + 1];
+		int tw = tmap.getTileWidth();
+		int th = tmap.getTileHeight();
+		float mapX = world.getPlayer().getX() - world.getOffsetMapX();
+		int col = (int)Math.floor(mapX / tw);
+		int last = col + LOOKAHEAD;
+		int found = 0;
+		boolean inPipe = false;		// The column before was part of a pipe
+		for (; col<=last && found<count; col++)
+		{
+			int n = tmap.getSolidIntervals(col, runs);
+			if (n == 0 || inPipe)
+			{
+				inPipe = n > 0;
+				continue;
+			}
+			inPipe = true;
+
+			// The biggest space between the solid runs is the gap
+			int bestStart = 0;
+			int bestEnd = 0;
+			int end = 0;
+			for (int i=0; i<=n; i++)
+			{
+				int start = i < n ? runs[i * 2] : tmap.getMapHeight();
+				if (start - end > bestEnd - bestStart)
+				{
+					bestStart = end;
+					bestEnd = start;
+				}
+				if (i < n) end = runs[i * 2 + 1];
+			}
+			int o = offset + found * 3;
+			out[o] = col * tw - mapX;
+			out[o + 1] = bestStart * th;
+			out[o + 2] = bestEnd * th;
+			found++;
+			last = col + LOOKAHEAD;
+		}
+		return found;
+	}
+}
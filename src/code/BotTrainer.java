@@ -0,0 +1,389 @@
+package code;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * BotTrainer evolves NeuralPolicy bots that play the game, e.g. for an
+ * attract mode or to check how hard a level is. A population of networks
+ * with the same shape is kept in one flat float array, one genome (all of a
+ * network's weights) after another. Each generation:
+ *
+ * 1. Every genome plays a few endless levels, in parallel on a
+ *    RolloutRunner, until it first crashes or time runs out. Its fitness
+ *    is the average number of ticks it survived.
+ * 2. The best few genomes are kept as they are. The rest of the new
+ *    population is bred from parents picked by tournament, mixing their
+ *    weights at random and then nudging some weights by a random amount.
+ *
+ * The best genomes can be saved to a checkpoint file, which training can
+ * carry on from and NeuralPolicy.load() can play.
+ *
+ * Usage: java -Djava.awt.headless=true code.BotTrainer [generations] [population] [checkpoint] [threads]
+ *
+ * @author Cameron Morrison
+ */
+public class BotTrainer {
+
+	static final int [] LAYERS = { BirdSensors.COUNT, 8, 1 };
+	static final int CHECKPOINT_MAGIC = 0x46424E4E;	// "FBNN"
+	static final int CHECKPOINT_VERSION = 1;
+
+	private int [] layers;
+	private int genomeLength;
+	private int size;
+	private float [] population;		// Every genome, one after another
+	private float [] children;			// The next generation is bred into here
+	private float [] fitness;			// Fitness of each genome, once evaluated
+	private long [] ranking;			// Fitness and index packed together, for sorting
+	private int generation = 0;
+
+	private GameRandom random;
+	private RolloutRunner runner;
+
+	private int evalTicks = 6000;		// Longest a genome plays each level for, 1 minute
+	private int evalLevels = 3;			// Levels each genome plays
+	private int elites = 2;				// Best genomes copied unchanged to the next generation
+	private int tournament = 3;			// Genomes in each tournament when picking a parent
+	private float mutationRate = 0.1f;	// Chance of each weight being nudged
+	private float mutationSize = 0.3f;	// Standard deviation of a nudge
+
+	/**
+	 * Create a random population.
+	 *
+	 * @param size		The number of genomes
+	 * @param threads	The number of games to play at once
+	 * @param seed		Seed for the random numbers used in training
+	 */
+	public BotTrainer(int size, int threads, long seed)
+	{
+		this.size = size;
+		layers = LAYERS.clone();
+		genomeLength = new NeuralNetwork(layers).getWeightCount();
+		population = new float[size * genomeLength];
+		children = new float[size * genomeLength];
+		fitness = new float[size];
+		ranking = new long[size];
+		random = new GameRandom(seed);
+		runner = new RolloutRunner(threads);
+
+		for (int i=0; i<population.length; i++)
+			population[i] = random.nextGaussian();
+	}
+
+	/**
+	 * Play every genome and work out its fitness.
+	 */
+	public void evaluate()
+	{
+		// Every genome plays the same levels, which change each generation
+		long [] seeds = new long[evalLevels];
+		for (int k=0; k<evalLevels; k++)
+			seeds[k] = random.nextLong();
+
+		ArrayList<RolloutRunner.Session> sessions = new ArrayList<RolloutRunner.Session>();
+		for (int i=0; i<size; i++)
+		{
+			for (int k=0; k<evalLevels; k++)
+			{
+				GameSettings settings = new GameSettings(seeds[k]);
+				settings.setEndless(seeds[k]);
+				RolloutRunner.Session s = new RolloutRunner.Session(settings,
+						new NeuralPolicy(layers, population, i * genomeLength), evalTicks);
+				s.setStopOnCrash(true);
+				sessions.add(s);
+			}
+		}
+
+		RolloutRunner.Results results = runner.run(sessions);
+		for (int i=0; i<size; i++)
+		{
+			float total = 0;
+			for (int k=0; k<evalLevels; k++)
+				total += results.getResults().get(i * evalLevels + k).getTicks();
+			fitness[i] = total / evalLevels;
+		}
+		rank();
+	}
+
+	/**
+	 * Sort the genomes by fitness, best first, into 'ranking'.
+	 */
+	private void rank()
+	{
+		// Fitness is never negative, so its bits sort the same way as its value
+		for (int i=0; i<size; i++)
+			ranking[i] = ((long)Float.floatToIntBits(fitness[i]) << 32) | i;
+		Arrays.sort(ranking);
+		for (int i=0; i<size / 2; i++)
+		{
+			long t = ranking[i];
+			ranking[i] = ranking[size - 1 - i];
+			ranking[size - 1 - i] = t;
+		}
+	}
+
+	/**
+	 * Replace the population with the next generation. Call evaluate() first.
+	 */
+	public void breed()
+	{
+		int keep = Math.min(elites, size);
+		for (int c=0; c<keep; c++)
+			System.arraycopy(population, rankedIndex(c) * genomeLength, children, c * genomeLength, genomeLength);
+
+		for (int c=keep; c<size; c++)
+		{
+			int a = pickParent() * genomeLength;
+			int b = pickParent() * genomeLength;
+			int child = c * genomeLength;
+			for (int w=0; w<genomeLength; w++)
+			{
+				float gene = random.nextFloat() < 0.5f ? population[a + w] : population[b + w];
+				if (random.nextFloat() < mutationRate) gene += random.nextGaussian() * mutationSize;
+				children[child + w] = gene;
+			}
+		}
+
+		float [] t = population;
+		population = children;
+		children = t;
+		generation++;
+	}
+
+	/**
+	 * @return The fittest of a few genomes picked at random
+	 */
+	private int pickParent()
+	{
+		int best = random.nextInt(size);
+		for (int i=1; i<tournament; i++)
+		{
+			int g = random.nextInt(size);
+			if (fitness[g] > fitness[best]) best = g;
+		}
+		return best;
+	}
+
+	/**
+	 * @param rank 0 for the fittest genome, 1 for the next and so on
+	 * @return The index of that genome, as of the last evaluate()
+	 */
+	private int rankedIndex(int rank) { return (int)ranking[rank]; }
+
+	/**
+	 * @return The fitness of the best genome in the last evaluate()
+	 */
+	public float getBestFitness() { return Float.intBitsToFloat((int)(ranking[0] >>> 32)); }
+
+	/**
+	 * @return The average fitness in the last evaluate()
+	 */
+	public float getMeanFitness()
+	{
+		float total = 0;
+		for (int i=0; i<size; i++)
+			total += Float.intBitsToFloat((int)(ranking[i] >>> 32));
+		return total / size;
+	}
+
+	/**
+	 * @return The number of generations bred so far
+	 */
+	public int getGeneration() { return generation; }
+
+	/**
+	 * Save the best genomes from the last evaluate(), best first.
+	 *
+	 * @param file	Where to save them
+	 * @param count	How many to save
+	 * @return true if they were saved
+	 */
+	public boolean saveCheckpoint(File file, int count)
+	{
+		count = Math.min(count, size);
+		// Write to another file first so a crash can't leave a broken checkpoint
+		File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeInt(layers.length);
+			for (int n : layers)
+				out.writeInt(n);
+			out.writeInt(generation);
+			out.writeInt(count);
+			for (int r=0; r<count; r++)
+			{
+				int g = rankedIndex(r);
+				out.writeFloat(fitness[g]);
+				for (int w=0; w<genomeLength; w++)
+					out.writeFloat(population[g * genomeLength + w]);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to save checkpoint '" + file + "':" + e);
+			return false;
+		}
+		file.delete();
+		return temp.renameTo(file);
+	}
+
+	/**
+	 * Carry on training from a checkpoint. The saved genomes go back into
+	 * the population, and the rest is filled with mutated copies of them.
+	 *
+	 * @param c The checkpoint, which must be for networks of the same shape
+	 * @return true if the checkpoint could be used
+	 */
+	public boolean resume(Checkpoint c)
+	{
+		if (!Arrays.equals(c.layers, layers) || c.getGenomeCount() == 0) return false;
+		for (int i=0; i<size; i++)
+		{
+			float [] genome = c.genomes[i % c.getGenomeCount()];
+			boolean copy = i < c.getGenomeCount();
+			for (int w=0; w<genomeLength; w++)
+			{
+				float gene = genome[w];
+				if (!copy && random.nextFloat() < mutationRate) gene += random.nextGaussian() * mutationSize;
+				population[i * genomeLength + w] = gene;
+			}
+		}
+		generation = c.generation + 1;
+		return true;
+	}
+
+	/**
+	 * Stop the threads used to play the games.
+	 */
+	public void shutdown()
+	{
+		runner.shutdown();
+	}
+
+	/**
+	 * Read a checkpoint saved by saveCheckpoint().
+	 *
+	 * @param file The checkpoint
+	 * @return The checkpoint, or null if it couldn't be read
+	 */
+	public static Checkpoint readCheckpoint(File file)
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != CHECKPOINT_MAGIC) throw new IOException("Not a checkpoint");
+			if (in.readInt() != CHECKPOINT_VERSION) throw new IOException("Checkpoint is from a different version");
+			int [] layers = new int[in.readInt()];
+			for (int l=0; l<layers.length; l++)
+				layers[l] = in.readInt();
+			int length = new NeuralNetwork(layers).getWeightCount();
+			int generation = in.readInt();
+			float [][] genomes = new float[in.readInt()][length];
+			float [] fitness = new float[genomes.length];
+			for (int g=0; g<genomes.length; g++)
+			{
+				fitness[g] = in.readFloat();
+				for (int w=0; w<length; w++)
+					genomes[g][w] = in.readFloat();
+			}
+			return new Checkpoint(layers, generation, genomes, fitness);
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			System.err.println("Failed to read checkpoint '" + file + "':" + e);
+			return null;
+		}
+	}
+
+	/**
+	 * The best genomes at some point in training, best first.
+	 */
+	public static class Checkpoint {
+
+		private int [] layers;
+		private int generation;
+		private float [][] genomes;
+		private float [] fitness;
+
+		private Checkpoint(int [] layers, int generation, float [][] genomes, float [] fitness)
+		{
+			this.layers = layers;
+			this.generation = generation;
+			this.genomes = genomes;
+			this.fitness = fitness;
+		}
+
+		/**
+		 * @return The shape of the networks
+		 */
+		public int [] getLayers() { return layers.clone(); }
+
+		/**
+		 * @return The generation the genomes are from
+		 */
+		public int getGeneration() { return generation; }
+
+		/**
+		 * @return The number of genomes saved
+		 */
+		public int getGenomeCount() { return genomes.length; }
+
+		/**
+		 * @param i 0 for the best genome
+		 * @return A copy of the genome's weights
+		 */
+		public float [] getGenome(int i) { return genomes[i].clone(); }
+
+		/**
+		 * @param i 0 for the best genome
+		 * @return The genome's fitness when it was saved
+		 */
+		public float getFitness(int i) { return fitness[i]; }
+	}
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		int generations = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		File file = new File(args.length > 2 ? args[2] : "bot.fbnn");
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		if (GameAssets.get() == null)
+		{
+			System.err.println("Failed to load the game");
+			return;
+		}
+
+		BotTrainer trainer = new BotTrainer(size, threads, System.nanoTime());
+		if (file.exists())
+		{
+			Checkpoint c = readCheckpoint(file);
+			if (c != null && trainer.resume(c))
+				System.out.println("Carrying on from generation " + c.getGeneration() + " in " + file);
+		}
+
+		for (int i=0; i<generations; i++)
+		{
+			long start = System.nanoTime();
+			trainer.evaluate();
+			System.out.printf("Generation %d: best %.0f ticks, mean %.0f ticks (%.1f s)%n",
+					trainer.getGeneration(), trainer.getBestFitness(), trainer.getMeanFitness(),
+					(System.nanoTime() - start) / 1e9);
+			trainer.saveCheckpoint(file, Math.max(1, size / 8));
+			trainer.breed();
+		}
+		trainer.shutdown();
+	}
+}
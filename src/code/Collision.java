@@ -0,0 +1,187 @@
+package code;
+
+/**
+ * Collision holds the exact (narrowphase) collision tests between sprites.
+ * Sprites are treated as circles of radius getRadius() around the centre
+ * of their current image. All of the maths is done with floats.
+ * 
+ * The sweep methods find when things moving in a straight line first
+ * touch, as a fraction (0-1) of the move, so that a long tick can't carry
+ * a sprite through something thin. They return -1 if there is no hit.
+ * 
+ * @author Cameron Morrison
+ */
+public class Collision {
+
+	/**
+	 * Checks if the bounding circles of two sprites overlap.
+	 * 
+	 * @param s1	The first sprite
+	 * @param s2	The second sprite
+	 * @return true if the circles overlap
+	 */
+	public static boolean circlesOverlap(Sprite s1, Sprite s2)
+	{
+		float dx = (s1.getX() + s1.getWidth() / 2.0f) - (s2.getX() + s2.getWidth() / 2.0f);
+		float dy = (s1.getY() + s1.getHeight() / 2.0f) - (s2.getY() + s2.getHeight() / 2.0f);
+		float minimum = s1.getRadius() + s2.getRadius();
+		
+		return dx * dx + dy * dy < minimum * minimum;
+	}
+
+	/**
+	 * Checks if the solid pixels of two sprites overlap, using the collision
+	 * masks of their current frames at their current rotations. Only call
+	 * this for sprites that have passed circlesOverlap, as it is the more
+	 * expensive test. Scaling is not taken into account. If either sprite
+	 * has no mask the sprites are assumed to overlap.
+	 * 
+	 * @param s1	The first sprite
+	 * @param s2	The second sprite
+	 * @return true if any solid pixels overlap
+	 */
+	public static boolean masksOverlap(Sprite s1, Sprite s2)
+	{
+		CollisionMask m1 = s1.getCollisionMask();
+		CollisionMask m2 = s2.getCollisionMask();
+		if (m1 == null || m2 == null) return true;
+		
+		return CollisionMask.overlaps(m1, Math.round(s1.getX()), Math.round(s1.getY()),
+				m2, Math.round(s2.getX()), Math.round(s2.getY()));
+	}
+
+	/**
+	 * Works out when two sprites first touch as they move from their
+	 * previous positions to their current ones. The bounding circles give
+	 * the first possible time, then the rest of the move is stepped through
+	 * a pixel at a time checking the collision masks.
+	 * 
+	 * @param s1	The first sprite
+	 * @param s2	The second sprite
+	 * @return The fraction of the move at which they first touch, or -1 if they don't
+	 */
+	public static float sweep(Sprite s1, Sprite s2)
+	{
+		float w1 = s1.getWidth() / 2.0f, h1 = s1.getHeight() / 2.0f;
+		float w2 = s2.getWidth() / 2.0f, h2 = s2.getHeight() / 2.0f;
+		
+		// Move s1 relative to s2, so s2 stays still
+		float x = (s1.getPrevX() + w1) - (s2.getPrevX() + w2);
+		float y = (s1.getPrevY() + h1) - (s2.getPrevY() + h2);
+		float dx = (s1.getX() - s1.getPrevX()) - (s2.getX() - s2.getPrevX());
+		float dy = (s1.getY() - s1.getPrevY()) - (s2.getY() - s2.getPrevY());
+		
+		float t = sweepPointCircle(x, y, dx, dy, 0, 0, s1.getRadius() + s2.getRadius());
+		if (t < 0) return -1;
+		
+		CollisionMask m1 = s1.getCollisionMask();
+		CollisionMask m2 = s2.getCollisionMask();
+		if (m1 == null || m2 == null) return t;
+		
+		int steps = Math.max(1, (int)Math.ceil(Math.sqrt(dx * dx + dy * dy) * (1 - t)));
+		for (int i=0; i<=steps; i++)
+		{
+			float at = t + (1 - t) * i / steps;
+			if (CollisionMask.overlaps(
+					m1, Math.round(s1.getPrevX() + (s1.getX() - s1.getPrevX()) * at),
+						Math.round(s1.getPrevY() + (s1.getY() - s1.getPrevY()) * at),
+					m2, Math.round(s2.getPrevX() + (s2.getX() - s2.getPrevX()) * at),
+						Math.round(s2.getPrevY() + (s2.getY() - s2.getPrevY()) * at)))
+				return at;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Works out when a circle moving from 'x,y' by 'dx,dy' first touches
+	 * the rectangle from 'left,top' to 'right,bottom'.
+	 * 
+	 * @return The fraction of the move at which they first touch, or -1 if they don't
+	 */
+	public static float sweepCircleRect(float x, float y, float dx, float dy, float r,
+			float left, float top, float right, float bottom)
+	{
+		// The circle touches the rectangle when its centre is inside the
+		// rectangle grown by r with rounded corners, which is the same as
+		// being inside one of two rectangles or one of four corner circles
+		float t = sweepPointRect(x, y, dx, dy, left - r, top, right + r, bottom);
+		t = earliest(t, sweepPointRect(x, y, dx, dy, left, top - r, right, bottom + r));
+		t = earliest(t, sweepPointCircle(x, y, dx, dy, left, top, r));
+		t = earliest(t, sweepPointCircle(x, y, dx, dy, right, top, r));
+		t = earliest(t, sweepPointCircle(x, y, dx, dy, left, bottom, r));
+		t = earliest(t, sweepPointCircle(x, y, dx, dy, right, bottom, r));
+		return t;
+	}
+	
+	/**
+	 * Works out when a point moving from 'x,y' by 'dx,dy' first enters
+	 * the circle of radius 'r' centred at 'cx,cy'.
+	 * 
+	 * @return The fraction of the move at which it enters, or -1 if it doesn't
+	 */
+	public static float sweepPointCircle(float x, float y, float dx, float dy, float cx, float cy, float r)
+	{
+		float fx = x - cx;
+		float fy = y - cy;
+		float c = fx * fx + fy * fy - r * r;
+		if (c < 0) return 0;			// Already inside
+		
+		float a = dx * dx + dy * dy;
+		float b = fx * dx + fy * dy;
+		if (a == 0 || b >= 0) return -1;	// Not moving, or moving away
+		
+		float disc = b * b - a * c;
+		if (disc <= 0) return -1;
+		float t = (-b - (float)Math.sqrt(disc)) / a;
+		return t <= 1 ? t : -1;
+	}
+	
+	/**
+	 * Works out when a point moving from 'x,y' by 'dx,dy' first enters
+	 * the rectangle from 'left,top' to 'right,bottom'.
+	 * 
+	 * @return The fraction of the move at which it enters, or -1 if it doesn't
+	 */
+	public static float sweepPointRect(float x, float y, float dx, float dy,
+			float left, float top, float right, float bottom)
+	{
+		float enter = 0;
+		float exit = 1;
+		
+		if (dx == 0)
+		{
+			if (x <= left || x >= right) return -1;
+		}
+		else
+		{
+			float t1 = (left - x) / dx;
+			float t2 = (right - x) / dx;
+			enter = Math.max(enter, Math.min(t1, t2));
+			exit = Math.min(exit, Math.max(t1, t2));
+		}
+		
+		if (dy == 0)
+		{
+			if (y <= top || y >= bottom) return -1;
+		}
+		else
+		{
+			float t1 = (top - y) / dy;
+			float t2 = (bottom - y) / dy;
+			enter = Math.max(enter, Math.min(t1, t2));
+			exit = Math.min(exit, Math.max(t1, t2));
+		}
+		
+		return enter < exit ? enter : -1;
+	}
+	
+	/**
+	 * @return The earlier of two hit times, ignoring misses (-1)
+	 */
+	static float earliest(float t1, float t2)
+	{
+		if (t1 < 0) return t2;
+		if (t2 < 0) return t1;
+		return Math.min(t1, t2);
+	}
+}
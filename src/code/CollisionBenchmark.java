@@ -0,0 +1,82 @@
+package code;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * CollisionBenchmark compares finding every touching pair of sprites with
+ * a SpatialGrid against checking every pair with a brute force loop. It
+ * moves 'count' sprites around a square world and reports the number of
+ * narrowphase checks and the time per tick for each approach, and checks
+ * that both found the same number of hits.
+ * 
+ * Usage: java -Djava.awt.headless=true code.CollisionBenchmark [count] [ticks] [worldSize]
+ * 
+ * @author Cameron Morrison
+ */
+public class CollisionBenchmark {
+
+	public static void main(String[] args)
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		float size = args.length > 2 ? Float.parseFloat(args[2]) : 4000;
+		
+		Random random = new Random(1);
+		Animation anim = new Animation();
+		anim.addFrame(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB), 1000);
+		
+		Sprite [] sprites = new Sprite[count];
+		SpatialGrid grid = new SpatialGrid(32, count);
+		for (int i=0; i<count; i++)
+		{
+			sprites[i] = new Sprite(anim);
+			sprites[i].setPosition(random.nextFloat() * size, random.nextFloat() * size);
+			sprites[i].setVelocity(random.nextFloat() * 0.2f - 0.1f, random.nextFloat() * 0.2f - 0.1f);
+			sprites[i].update(0);
+			grid.add(i, sprites[i]);
+		}
+		int [] pairs = new int[count * 64];
+		
+		long bruteChecks = 0, bruteHits = 0, bruteNanos = 0;
+		long gridChecks = 0, gridHits = 0, gridNanos = 0;
+		
+		for (int t=0; t<ticks; t++)
+		{
+			for (Sprite s : sprites)
+			{
+				s.update(10);
+				// Bounce off the edges of the world
+				if (s.getX() < 0 || s.getX() > size) s.setVelocityX(-s.getVelocityX());
+				if (s.getY() < 0 || s.getY() > size) s.setVelocityY(-s.getVelocityY());
+			}
+			
+			long start = System.nanoTime();
+			for (int i=0; i<count; i++)
+			{
+				for (int j=i+1; j<count; j++)
+				{
+					bruteChecks++;
+					if (Collision.circlesOverlap(sprites[i], sprites[j])) bruteHits++;
+				}
+			}
+			bruteNanos += System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			grid.update();
+			int found = grid.findPairs(pairs);
+			for (int p=0; p<found; p++)
+			{
+				gridChecks++;
+				if (Collision.circlesOverlap(sprites[pairs[p*2]], sprites[pairs[p*2+1]])) gridHits++;
+			}
+			gridNanos += System.nanoTime() - start;
+		}
+		
+		System.out.println("Sprites: " + count + ", ticks: " + ticks);
+		System.out.printf("Brute force: %,d checks/tick, %.3f ms/tick, %d hits%n",
+				bruteChecks / ticks, bruteNanos / 1e6 / ticks, bruteHits);
+		System.out.printf("Grid:        %,d checks/tick, %.3f ms/tick, %d hits%n",
+				gridChecks / ticks, gridNanos / 1e6 / ticks, gridHits);
+	}
+}
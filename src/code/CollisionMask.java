@@ -0,0 +1,182 @@
+package code;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * A CollisionMask records which pixels of an image are solid (alpha of 128
+ * or more) as packed bits, 64 pixels to a long. Bit i of word w in a row is
+ * the pixel at column w*64 + i. Two masks can then be tested for overlap a
+ * row at a time by shifting and ANDing whole words, which takes a few dozen
+ * operations for sprites the size of ours.
+ *
+ * A mask can also be made for a rotated image, in which case it is bigger
+ * than the image and offsetX/offsetY say where its top left corner is
+ * relative to the top left of the unrotated image.
+ *
+ * @author Cameron Morrison
+ */
+public class CollisionMask {
+
+	private static final int ALPHA_THRESHOLD = 128;
+
+	private int width;			// Width in pixels
+	private int height;			// Height in pixels
+	private int wordsPerRow;	// Number of longs in each row
+	private long [] bits;		// The rows of the mask, one after the other
+	private int offsetX;		// Position of the mask relative to the unrotated image
+	private int offsetY;
+
+	private CollisionMask(int width, int height, int offsetX, int offsetY)
+	{
+		this.width = width;
+		this.height = height;
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+		wordsPerRow = (width + 63) >> 6;
+		bits = new long[wordsPerRow * height];
+	}
+
+	/**
+	 * Make a mask from the alpha channel of 'img', which must be loaded.
+	 *
+	 * @param img The image
+	 * @return The mask, or null if the image has no size yet
+	 */
+	public static CollisionMask fromImage(Image img)
+	{
+		return rotated(img, 0);
+	}
+
+	/**
+	 * Make a mask for 'img' rotated by 'degrees' around its centre, the
+	 * same way Sprite.drawTransformed rotates it.
+	 *
+	 * @param img		The image, which must be loaded
+	 * @param degrees	The rotation in degrees
+	 * @return The mask, or null if the image has no size yet
+	 */
+	public static CollisionMask rotated(Image img, double degrees)
+	{
+		int w = img.getWidth(null);
+		int h = img.getHeight(null);
+		if (w <= 0 || h <= 0) return null;
+
+		double theta = Math.toRadians(degrees);
+		double sin = Math.abs(Math.sin(theta));
+		double cos = Math.abs(Math.cos(theta));
+		int rw = (int)Math.ceil(w * cos + h * sin - 1e-9);
+		int rh = (int)Math.ceil(w * sin + h * cos - 1e-9);
+
+		BufferedImage pixels;
+		if (degrees == 0 && img instanceof BufferedImage)
+		{
+			pixels = (BufferedImage)img;
+		}
+		else
+		{
+			pixels = new BufferedImage(rw, rh, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = pixels.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			AffineTransform transform = new AffineTransform();
+			transform.translate(rw / 2.0, rh / 2.0);
+			transform.rotate(theta);
+			transform.translate(-w / 2.0, -h / 2.0);
+			g.drawImage(img, transform, null);
+			g.dispose();
+		}
+
+		CollisionMask mask = new CollisionMask(rw, rh,
+				(int)Math.round((w - rw) / 2.0), (int)Math.round((h - rh) / 2.0));
+		for (int y=0; y<rh; y++)
+		{
+			int row = y * mask.wordsPerRow;
+			for (int x=0; x<rw; x++)
+			{
+				if ((pixels.getRGB(x, y) >>> 24) >= ALPHA_THRESHOLD)
+					mask.bits[row + (x >> 6)] |= 1L << x;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Checks if mask 'a' with its image's top left at 'ax,ay' overlaps
+	 * mask 'b' with its image's top left at 'bx,by'.
+	 *
+	 * @return true if any solid pixels overlap
+	 */
+	public static boolean overlaps(CollisionMask a, int ax, int ay, CollisionMask b, int bx, int by)
+	{
+		ax += a.offsetX;
+		ay += a.offsetY;
+		bx += b.offsetX;
+		by += b.offsetY;
+
+		// The overlapping rectangle, relative to a
+		int left = Math.max(0, bx - ax);
+		int right = Math.min(a.width, bx + b.width - ax);
+		int top = Math.max(0, by - ay);
+		int bottom = Math.min(a.height, by + b.height - ay);
+		if (left >= right || top >= bottom) return false;
+
+		int dx = bx - ax;	// Position of b's columns in a's columns
+		int firstWord = left >> 6;
+		int lastWord = (right - 1) >> 6;
+
+		for (int y=top; y<bottom; y++)
+		{
+			int aRow = y * a.wordsPerRow;
+			int bRow = (y + ay - by) * b.wordsPerRow;
+
+			for (int w=firstWord; w<=lastWord; w++)
+			{
+				long aBits = a.bits[aRow + w];
+				if (aBits == 0) continue;
+				if ((aBits & b.wordAt(bRow, (w << 6) - dx)) != 0) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets 64 bits of row 'row' of this mask starting at column 'x', which
+	 * may be off either side of the mask (missing bits are 0).
+	 */
+	private long wordAt(int row, int x)
+	{
+		int word = x >> 6;		// Rounds down for negative x too
+		int shift = x & 63;
+
+		long lo = (word >= 0 && word < wordsPerRow) ? bits[row + word] : 0;
+		if (shift == 0) return lo;
+		long hi = (word + 1 >= 0 && word + 1 < wordsPerRow) ? bits[row + word + 1] : 0;
+		return (lo >>> shift) | (hi << (64 - shift));
+	}
+
+	/**
+	 * @return The width of the mask in pixels
+	 */
+	public int getWidth() { return width; }
+
+	/**
+	 * @return The height of the mask in pixels
+	 */
+	public int getHeight() { return height; }
+
+	/**
+	 * Checks if the pixel at 'x,y' of the mask is solid.
+	 *
+	 * @param x	The column, relative to the mask
+	 * @param y	The row, relative to the mask
+	 * @return true if the pixel is solid
+	 */
+	public boolean isSolid(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height) return false;
+		return (bits[y * wordsPerRow + (x >> 6)] & (1L << x)) != 0;
+	}
+}
@@ -0,0 +1,69 @@
+package code;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * CompatibleImages creates images in the same format as the screen so that
+ * Java2D can cache them in video memory and draw them without converting
+ * pixels every frame. When there is no screen (java.awt.headless=true)
+ * plain BufferedImages in an equivalent format are used instead.
+ * 
+ * @author Cameron Morrison
+ */
+public class CompatibleImages {
+
+	/**
+	 * @return The configuration of the default screen, or null if headless
+	 */
+	public static GraphicsConfiguration getConfiguration()
+	{
+		if (GraphicsEnvironment.isHeadless()) return null;
+		return GraphicsEnvironment.getLocalGraphicsEnvironment()
+			.getDefaultScreenDevice().getDefaultConfiguration();
+	}
+	
+	/**
+	 * Create an empty image compatible with the screen.
+	 * 
+	 * @param w				Width in pixels
+	 * @param h				Height in pixels
+	 * @param transparency	One of Transparency.OPAQUE, BITMASK or TRANSLUCENT
+	 * @return The new image
+	 */
+	public static BufferedImage create(int w, int h, int transparency)
+	{
+		GraphicsConfiguration gc = getConfiguration();
+		if (gc != null) return gc.createCompatibleImage(w, h, transparency);
+		
+		if (transparency == Transparency.OPAQUE)
+			return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+	
+	/**
+	 * Copy 'img' into a new compatible image, scaling it to 'w' by 'h'.
+	 * Scaling is done once here with bilinear filtering so the result
+	 * can then be drawn with a plain blit.
+	 * 
+	 * @param img			The image to copy
+	 * @param w				Width of the copy in pixels
+	 * @param h				Height of the copy in pixels
+	 * @param transparency	One of Transparency.OPAQUE, BITMASK or TRANSLUCENT
+	 * @return The copy
+	 */
+	public static BufferedImage copyOf(Image img, int w, int h, int transparency)
+	{
+		BufferedImage copy = create(w, h, transparency);
+		Graphics2D g = copy.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(img, 0, 0, w, h, null);
+		g.dispose();
+		return copy;
+	}
+}
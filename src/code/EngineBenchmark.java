@@ -0,0 +1,360 @@
+package code;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Map;
+
+/**
+ * EngineBenchmark times the engine's hot paths with a BenchmarkRunner so
+ * that performance changes can be measured rather than guessed at:
+ *
+ *  tilemap.draw					Drawing the scrolling tile map into an offscreen image
+ *  tilemap.loadMap					Loading a level that is already in the LevelCache
+ *  tilemap.loadMap.uncached		Loading a level from disk, including its tile images
+ *  sprite.update					Moving and animating one sprite
+ *  sprite.drawTransformed			Drawing a spinning rock from its RotationCache
+ *  sprite.drawTransformed.affine	Drawing a rotated sprite with an AffineTransform
+ *  animation.update				Animation.update followed by getImage
+ *  world.checkTileCollision		Sweeping a bird through the gap of a pipe
+ *  world.boundingBoxCollision.far	Testing the bird against a rock that is nowhere near
+ *  world.boundingBoxCollision.near	Testing the bird against a rock whose circle overlaps it
+ *  velocity.add					Adding one Velocity to another
+ *  macro.frames					Updating and drawing whole frames headless, per frame
+ *
+ * Every result is in nanoseconds per operation. The results can be saved as
+ * JSON and compared with a file from an earlier run. The collision
+ * benchmarks cycle through a set of sprites placed up front, as the JIT can
+ * work out a call on the same unchanging sprites once and take it out of
+ * the loop.
+ *
+ * Usage: java -Djava.awt.headless=true code.EngineBenchmark [jsonFile|-] [filter|-] [baselineJson|-] [frames]
+ *
+ * Only benchmarks whose name contains 'filter' are run. 'frames' is how many
+ * frames each call of the macro benchmark draws.
+ *
+ * @author Cameron Morrison
+ */
+public class EngineBenchmark {
+
+	static final int WARMUP_ITERATIONS = 5;
+	static final int MEASURE_ITERATIONS = 10;
+	static final long ITERATION_MILLIS = 200;
+	static final long TICK_MILLIS = 10;	// Same tick length as GameCore's default
+	static final int POSITIONS = 256;	// Sprites the collision benchmarks cycle through, a power of 2
+
+	private static String filter = null;
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		File json = args.length > 0 && !args[0].equals("-") ? new File(args[0]) : null;
+		filter = args.length > 1 && !args[1].equals("-") ? args[1] : null;
+		File baselineFile = args.length > 2 && !args[2].equals("-") ? new File(args[2]) : null;
+		int frames = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+		final GameAssets assets = GameAssets.get();
+		final GameWorld world = new GameSettings(1).createWorld(false);
+		if (assets == null || world == null)
+		{
+			System.err.println("Failed to load the game");
+			return;
+		}
+
+		int width = world.getScreenWidth();
+		int height = world.getScreenHeight();
+		BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = screen.createGraphics();
+		g.setClip(0, 0, width, height);
+
+		BenchmarkRunner runner = new BenchmarkRunner(WARMUP_ITERATIONS, MEASURE_ITERATIONS, ITERATION_MILLIS);
+
+		// The tile map
+
+		final TileMap tmap = new TileMap();
+		tmap.loadMap("src/maps", world.getMapFile());
+		final int scroll = Math.max(1, tmap.getPixelWidth() - width);
+		if (selected("tilemap.draw"))
+			runner.run("tilemap.draw", new BenchmarkRunner.Benchmark() {
+				int x = 0;
+				@Override
+				public long run(int ops) {
+					for (int i=0; i<ops; i++)
+						tmap.draw(g, -(x++ % scroll), 0);
+					return x;
+				}
+			});
+
+		final String mapFile = world.getMapFile();
+		if (selected("tilemap.loadMap"))
+			runner.run("tilemap.loadMap", new BenchmarkRunner.Benchmark() {
+				TileMap map = new TileMap();
+				@Override
+				public long run(int ops) {
+					long n = 0;
+					for (int i=0; i<ops; i++)
+						if (map.loadMap("src/maps", mapFile)) n += map.getMapWidth();
+					return n;
+				}
+			});
+
+		if (selected("tilemap.loadMap.uncached"))
+		{
+			runner.run("tilemap.loadMap.uncached", new BenchmarkRunner.Benchmark() {
+				TileMap map = new TileMap();
+				@Override
+				public long run(int ops) {
+					long n = 0;
+					for (int i=0; i<ops; i++)
+					{
+						LevelCache.clear();
+						if (map.loadMap("src/maps", mapFile)) n += map.getMapWidth();
+					}
+					return n;
+				}
+			});
+			// Put back what the game would have cached
+			LevelCache.preload("src/maps", mapFile);
+		}
+
+		// Sprites and animations
+
+		final Sprite [] birds = new Sprite[1024];
+		for (int i=0; i<birds.length; i++)
+		{
+			birds[i] = new Sprite(new Animation(assets.bird));
+			birds[i].setPosition(i % width, i % height);
+			birds[i].setVelocity(0.01f, -0.01f);
+		}
+		if (selected("sprite.update"))
+			runner.run("sprite.update", new BenchmarkRunner.Benchmark() {
+				int next = 0;
+				@Override
+				public long run(int ops) {
+					for (int i=0; i<ops; i++)
+						birds[next++ & (birds.length - 1)].update(TICK_MILLIS);
+					return (long)birds[0].getX();
+				}
+			});
+
+		final Sprite rock = new Sprite(assets.rock);
+		rock.setRotationCache(assets.rockRotations);
+		rock.setPosition(width / 2, height / 2);
+		if (selected("sprite.drawTransformed"))
+			runner.run("sprite.drawTransformed", new BenchmarkRunner.Benchmark() {
+				int rotation = 0;
+				@Override
+				public long run(int ops) {
+					for (int i=0; i<ops; i++)
+					{
+						rock.setRotation(rotation++);
+						rock.drawTransformed(g, 1.0f);
+					}
+					return rotation;
+				}
+			});
+
+		final Sprite spinningBird = new Sprite(new Animation(assets.bird));
+		spinningBird.setPosition(width / 2, height / 2);
+		if (selected("sprite.drawTransformed.affine"))
+			runner.run("sprite.drawTransformed.affine", new BenchmarkRunner.Benchmark() {
+				int rotation = 0;
+				@Override
+				public long run(int ops) {
+					for (int i=0; i<ops; i++)
+					{
+						spinningBird.setRotation(rotation++);
+						spinningBird.drawTransformed(g, 1.0f);
+					}
+					return rotation;
+				}
+			});
+
+		final Animation flapping = new Animation(assets.bird);
+		if (selected("animation.update"))
+			runner.run("animation.update", new BenchmarkRunner.Benchmark() {
+				@Override
+				public long run(int ops) {
+					long frames = 0;
+					Object last = null;
+					for (int i=0; i<ops; i++)
+					{
+						flapping.update(TICK_MILLIS);
+						Object image = flapping.getImage();
+						if (image != last) frames++;
+						last = image;
+					}
+					return frames;
+				}
+			});
+
+		// Collisions, with birds spread through the gaps of the level's pipes
+
+		final Sprite player = world.getPlayer();
+		final TileMap worldMap = world.getTileMap();
+		final Sprite [] flyers = new Sprite[POSITIONS];
+		for (int i=0; i<flyers.length; i++)
+			flyers[i] = new Sprite(new Animation(assets.bird));
+		if (!placeInGaps(world, flyers))
+			System.err.println("No pipe found, checkTileCollision will only test empty space");
+		if (selected("world.checkTileCollision"))
+		{
+			runner.run("world.checkTileCollision", new BenchmarkRunner.Benchmark() {
+				int next = 0;
+				@Override
+				public long run(int ops) {
+					for (int i=0; i<ops; i++)
+						world.checkTileCollision(flyers[next++ & (flyers.length - 1)], worldMap);
+					return world.getCrashCount();
+				}
+			});
+			if (world.getCrashCount() > 0)
+				System.err.println("A bird hit a pipe, so checkTileCollision was not timed as intended");
+		}
+
+		// Rocks all around the player, either well clear of it or with their
+		// circles overlapping it so the masks are checked
+		float reach = player.getRadius() + assets.rock.getRadius();
+		final Sprite [] farRocks = placeAround(player, assets.rock, 200, 260);
+		final Sprite [] nearRocks = placeAround(player, assets.rock, (reach - 4) * 0.4f, (reach - 4) * 0.9f);
+		if (selected("world.boundingBoxCollision.far"))
+			runner.run("world.boundingBoxCollision.far", new BenchmarkRunner.Benchmark() {
+				int next = 0;
+				@Override
+				public long run(int ops) {
+					long hits = 0;
+					for (int i=0; i<ops; i++)
+						if (world.boundingBoxCollision(player, farRocks[next++ & (farRocks.length - 1)])) hits++;
+					return hits;
+				}
+			});
+
+		if (selected("world.boundingBoxCollision.near"))
+			runner.run("world.boundingBoxCollision.near", new BenchmarkRunner.Benchmark() {
+				int next = 0;
+				@Override
+				public long run(int ops) {
+					long hits = 0;
+					for (int i=0; i<ops; i++)
+						if (world.boundingBoxCollision(player, nearRocks[next++ & (nearRocks.length - 1)])) hits++;
+					return hits;
+				}
+			});
+
+		final Velocity velocity = new Velocity(0.1, 30);
+		final Velocity there = new Velocity(0.05, 200);
+		final Velocity back = new Velocity(0.05, 20);
+		if (selected("velocity.add"))
+			runner.run("velocity.add", new BenchmarkRunner.Benchmark() {
+				@Override
+				public long run(int ops) {
+					for (int i=0; i<ops; i++)
+						velocity.add((i & 1) == 0 ? there : back);
+					return (long)(velocity.getdx() * 1000);
+				}
+			});
+
+		// Whole frames: what the game does every tick, without a window
+
+		if (selected("macro.frames"))
+		{
+			final GameWorld game = new GameSettings(2).createWorld(false);
+			final OffscreenRenderer renderer = new OffscreenRenderer(width, height);
+			final Policy autopilot = new AutopilotPolicy();
+			game.applyInput(GameWorld.INPUT_RESUME);
+			runner.run("macro.frames", frames, new BenchmarkRunner.Benchmark() {
+				@Override
+				public long run(int ops) {
+					for (int i=0; i<ops; i++)
+					{
+						game.applyInput(autopilot.act(game));
+						game.update(TICK_MILLIS);
+						renderer.render(game, 1.0f);
+					}
+					return game.getTotal();
+				}
+			});
+			renderer.dispose();
+		}
+
+		g.dispose();
+
+		if (json != null && runner.writeJson(json))
+			System.out.println("Saved " + json);
+		if (baselineFile != null)
+		{
+			Map<String, Double> baseline = BenchmarkRunner.readJson(baselineFile);
+			if (baseline != null) runner.compare(baseline);
+		}
+		// Make sure nothing left running keeps the JVM alive
+		System.exit(0);
+	}
+
+	/**
+	 * @return true if the benchmark called 'name' should be run
+	 */
+	private static boolean selected(String name)
+	{
+		return filter == null || name.contains(filter);
+	}
+
+	/**
+	 * Spread 'birds' through the gaps of the pipes on the map, without moving
+	 * the map, each at a different height in its gap and moving a little up
+	 * or down so there is something to sweep.
+	 *
+	 * @return true if a pipe was found
+	 */
+	private static boolean placeInGaps(GameWorld world, Sprite [] birds)
+	{
+		TileMap tmap = world.getTileMap();
+		int [] runs = new int[tmap.getMapHeight() + 1];
+		int [] pipes = new int[tmap.getMapWidth()];
+		int count = 0;
+		for (int col=0; col<tmap.getMapWidth(); col++)
+		{
+			// A pipe has a run from the top and a run from the bottom
+			if (tmap.getSolidIntervals(col, runs) == 2) pipes[count++] = col;
+		}
+		if (count == 0) return false;
+
+		for (int i=0; i<birds.length; i++)
+		{
+			Sprite bird = birds[i];
+			float r = bird.getRadius();
+			int col = pipes[i % count];
+			tmap.getSolidIntervals(col, runs);
+			float gapMiddle = (runs[1] + runs[2]) * tmap.getTileHeight() / 2.0f;
+			// Keep the circle and its move clear of the pipe
+			float room = Math.max(0, (runs[2] - runs[1]) * tmap.getTileHeight() / 2.0f - r - 2);
+			float y = gapMiddle + room * ((i * 37 % 64) / 32.0f - 1);
+			float pipeMiddle = col * tmap.getTileWidth() + tmap.getTileWidth() / 2.0f;
+			bird.setPosition(pipeMiddle - r + world.getOffsetMapX(), y - r);
+			bird.setVelocity(0, (i & 1) == 0 ? 0.1f : -0.1f);
+			bird.update(TICK_MILLIS);
+		}
+		return true;
+	}
+
+	/**
+	 * Make POSITIONS sprites of 'anim' with their centres between 'minDistance'
+	 * and 'maxDistance' from the centre of 'player', all the way around it.
+	 */
+	private static Sprite [] placeAround(Sprite player, Animation anim, float minDistance, float maxDistance)
+	{
+		float cx = player.getX() + player.getRadius();
+		float cy = player.getY() + player.getRadius();
+		Sprite [] sprites = new Sprite[POSITIONS];
+		for (int i=0; i<sprites.length; i++)
+		{
+			Sprite s = new Sprite(anim);
+			double angle = i * 2 * Math.PI * 0.618034;
+			float d = minDistance + (maxDistance - minDistance) * (i * 97 % POSITIONS) / POSITIONS;
+			s.setPosition(cx + d * (float)Math.cos(angle) - s.getRadius(), cy + d * (float)Math.sin(angle) - s.getRadius());
+			s.update(0);
+			sprites[i] = s;
+		}
+		return sprites;
+	}
+}
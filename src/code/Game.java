@@ -2,21 +2,10 @@ package code;
 
 
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.MouseInfo;
-import java.awt.Point;
 import java.awt.event.KeyEvent;
-import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import javax.imageio.ImageIO;
 
 // Game demonstrates how we can override the GameCore class
 // to create our own 'game'. We usually need to implement at
@@ -33,118 +22,76 @@ import javax.imageio.ImageIO;
 
 public class Game extends GameCore
 {
-	// Useful game constants
-	static int screenWidth = 512; 
-	static int screenHeight = 384;
-
-    float 	lift = 0.05f;
-    float	gravity = 0.0001f;
-    
-    // Game state flags
-    private boolean flap = false;
-    private boolean pause = true;
-    private boolean debugMode = true;
-    private boolean checkCollision;
+    // The game state and logic, which does not depend on this window
+    GameWorld world = new GameWorld();
     
-    // Game resources
-    Animation bird;
-    Animation coin;
-    Animation rockAnim;
-    
-    Sprite	player = null;
-    ArrayList<Sprite> rocks = new ArrayList<Sprite>();
-
-    TileMap tmap = new TileMap();	// Our tile map, note that we load it in init()
+    private boolean endless = false;	// Play an endless generated level
+    private long seed = 0;				// The seed for the endless level
     
-    long total = 0;  // The score will be the total time elapsed since a crash
-       
-    /*Parallax images taken from free licensing publisher 
-    https://digitalmoons.itch.io/free-parallax-desert-background-seamless and a pause button*/
-    private Image bgImage1, bgImage2, bgImage3, bgImage4, playBtn; 
-    //Used to move background at different speeds to create realistic illusion 
-    private int bg1location = 0, fg1location = 0;
-    private int bg2location = screenWidth, fg2location = screenWidth;
+    // Key presses arrive on the event thread and are handed to the world at
+    // the start of the next tick, so the game only changes inside update()
+    private volatile boolean flapHeld = false;
+    private int pressed = 0;	// INPUT_ bits pressed since the last tick
     
-    private double rotation = 90;
-    private static int offsetMapX;
+    private String recordFile = null;	// Where to save a replay of the game, if anywhere
+    private ReplayRecorder recorder = null;
+    private Policy bot = null;			// Plays the game instead of the keyboard, if set
    
     /**
 	 * The obligatory main method that creates
      * an instance of our class and starts it running
      * 
-     * @param args	The list of parameters this program might use (ignored)
+     * @param args	Pass "endless" to play an endless level, optionally followed
+     * 				by a seed, and/or "hard" for hard mode, and/or "record"
+     * 				followed by a file to save a replay of the game to,
+     * 				and/or "bot" followed by a BotTrainer checkpoint to let
+     * 				the trained bot play, and/or "buffer" followed by the
+     * 				frames of sound to buffer if the default stutters
      */
     public static void main(String[] args) {
 
         Game gct = new Game();
-        gct.init();
-        gct.run(false,screenWidth,screenHeight);   
+        gct.seed = System.currentTimeMillis();
+        for (int i = 0; i < args.length; i++) {
+        	if (args[i].equals("endless")) gct.endless = true;
+        	else if (args[i].equals("hard")) gct.world.setWavesFile("src/waves/hard.txt");
+        	else if (args[i].equals("record") && i + 1 < args.length) gct.recordFile = args[++i];
+        	else if (args[i].equals("bot") && i + 1 < args.length) {
+        		gct.bot = NeuralPolicy.load(new File(args[i + 1]));
+        		// Don't quietly hand the game to the keyboard instead
+        		if (gct.bot == null) {
+        			System.err.println("Failed to load the bot from '" + args[i + 1] + "'");
+        			return;
+        		}
+        		i++;
+        	}
+        	else if (args[i].equals("buffer") && i + 1 < args.length) gct.world.setSoundBufferFrames(Integer.parseInt(args[++i]));
+        	else gct.seed = Long.parseLong(args[i]);
+        }
+        if (!gct.init()) return;
+        gct.run(false,gct.world.getScreenWidth(),gct.world.getScreenHeight());   
       
     } 
 
     /**
      * Initialise the class, e.g. set up variables, load images,
      * create animations, register event handlers
+     * 
+     * @return true if the game loaded
      */
-    public void init()
+    public boolean init()
     {         
-        Sprite s;	// Temporary reference to a sprite
-        // Load the tile map and print it out so we can check it is valid
-        tmap.loadMap("src/maps", "map.txt");
+        if (!world.init() || (endless && !world.setEndless(seed))) {
+        	System.err.println("Failed to load the game");
+        	return false;
+        }
+        if (recordFile != null) startRecording(new File(recordFile));
         
-        setSize(tmap.getPixelWidth()/4, tmap.getPixelHeight());
+        setSize(world.getScreenWidth(), world.getScreenHeight());
         setVisible(true);
         setResizable(false);
         setLocationRelativeTo(null);
-
-      	//Parallax vector images from https://raventale.itch.io/parallax-background
-		try {
-			//Width + 3 to avoid cutting when repeating image, loaded in here to reduce lag in draw method
-			bgImage1 = ImageIO.read(new File("src/images/Sky.png"));
-			bgImage1 = bgImage1.getScaledInstance(screenWidth + 3, screenHeight, Image.SCALE_FAST);
-			bgImage2 = ImageIO.read(new File("src/images/Moon.png"));
-			bgImage2 = bgImage2.getScaledInstance(screenWidth + 3, screenHeight, Image.SCALE_FAST);
-			bgImage3 = ImageIO.read(new File("src/images/Mountains.png"));
-			bgImage3 = bgImage3.getScaledInstance(screenWidth + 3, screenHeight, Image.SCALE_FAST);
-			bgImage4 = ImageIO.read(new File("src/images/Desert.png"));
-			bgImage4 = bgImage4.getScaledInstance(screenWidth + 3, screenHeight, Image.SCALE_FAST);
-			playBtn = ImageIO.read(new File("src/images/PlayButton.png"));
-			playBtn = playBtn.getScaledInstance(screenWidth/5, screenHeight/8, Image.SCALE_SMOOTH);
-		} catch (IOException e) {}
-		
-        bird = new Animation();
-        bird.loadAnimationFromSheet("src/images/landbird.png", 4, 1, 60);
-        player = new Sprite(bird);
-
-        rockAnim = new Animation();
-        rockAnim.addFrame(loadImage("src/images/rock.png"), 1000);
-        // Create 3 rocks at random positions off the screen to the right
-        for (int i = 0; i < 3; i++)
-        {
-        	s = new Sprite(rockAnim);
-        	
-        	rocks.add(s);
-        }
-        initialiseGame();
-    }
-
-    /**
-     * You will probably want to put code to restart a game in
-     * a separate method so that you can call it to restart
-     * the game.
-     */
-    public void initialiseGame()
-    {
-    	offsetMapX = 200;
-        player.setX(64);
-        player.setY(200);
-        player.setVelocityX(0);
-        player.setVelocityY(0);
-        player.show();
-        checkCollision = true;
-        for(Sprite s : rocks) {
-        	deployAsteroid(s);
-        }
+        return true;
     }
     
     /**
@@ -152,72 +99,20 @@ public class Game extends GameCore
      */
     public void draw(Graphics2D g)
     {    	
-        //Parallax background
-        g.drawImage(bgImage1, 0, 0, null); 
-        g.drawImage(bgImage2, 0, 0, null);
-        
-        g.drawImage(bgImage3, bg1location, 0, null);
-        g.drawImage(bgImage3, bg2location, 0, null);
-        
-        g.drawImage(bgImage4, fg1location, 0, null);
-        g.drawImage(bgImage4, fg2location, 0, null);
-         
-        for (Sprite s: rocks){
-	    	s.setRotation(rotation);
-	    	s.drawTransformed(g);
-	    	
-        	if(s.getX() < -50) {
-        		deployAsteroid(s);
-        	}
-        }
-        
-        player.draw(g);
-           
-        // Apply offsets to tile map and draw  it, move background left
-        tmap.draw(g,offsetMapX,0); 
-        
-        if(pause == false) {
-        	offsetMapX--;
-        	
-    	    bg1location--; bg2location--;
-    	    fg1location-=3; fg2location-=3;
-            
-            if(bg1location<-screenWidth) bg1location = screenWidth;
-            if(bg2location<-screenWidth) bg2location = screenWidth;
-            if(fg1location<-screenWidth) fg1location = screenWidth;
-            if(fg2location<-screenWidth) fg2location = screenWidth;
-        }
-          
-        // Show score and status information
-        String msg = String.format("Score: %d", total/100);
-        g.setFont(new Font("Verdana", Font.BOLD, 18)); 
-        g.setColor(Color.WHITE);
-        g.drawString(msg, screenWidth - 120, 50);
-        
+    	// How far we are between the last two updates
+    	world.draw(g, getInterpolation());
 
-        if(debugMode) {
-        	player.drawBoundingCircle(g);
+        if(world.isDebugMode()) {
 	        String debug = "FPS: " + (int)getFPS();
+	        SoftwareMixer mixer = world.getMixer();
+	        if (mixer != null)
+	        	debug += String.format("  Sound latency: %.1f ms (max %.1f)",
+	        			mixer.getAverageLatencyMillis(), mixer.getMaxLatencyMillis());
 	        g.setColor(Color.white);
 	        g.drawString(debug, 40, 50);
-	        for(Sprite s: rocks) {
-	        	s.drawBoundingCircle(g);
-	        	g.drawString("X:"+(int)s.getX(), s.getX(), s.getY());
-	        }
-	        g.drawString("Y:"+(int)player.getY(), player.getX(), player.getY());
         }  
-    	if(pause == true) {
-    		g.drawImage(playBtn, 200, 200, null); 
-    	}
     }
 
-    private void deployAsteroid(Sprite s) {
-    	s.setX(screenWidth + (int)(Math.random()*200.0f));
-    	s.setY((int)Math.floor(Math.random()*(screenHeight-s.getHeight())+0));
-    	s.setVelocityX(-0.1f);
-    	s.show();
-	}
-
 	/**
      * Update any sprite's and check for collisions
      * 
@@ -225,66 +120,53 @@ public class Game extends GameCore
      */    
     public void update(long elapsed)
     {
-    	player.setAnimationSpeed(1.0f);
-        // Now update the sprite's animation and position
-        player.update(elapsed);
-        
-    	if(pause == false) {	
-    		//Increase score
-    		total++;
-	        // Make adjustments to the speed of the sprite due to gravity
-	        player.setVelocityY(player.getVelocityY()+(gravity*elapsed));   	
-	       
-	       	if (flap) 
-	       	{
-	       		player.setAnimationSpeed(1.8f);
-	       		player.setVelocityY(-0.075f);
-	       	}
-	                
-	       	for (Sprite s: rocks) {
-	       		s.update(elapsed);
-	       		if(boundingBoxCollision(player, s)) {
-	       			if(checkCollision) {
-		       			handleCollison(player);
-		       			s.hide();
-		       			deployAsteroid(s);
-	       			}
-	       		}
-	       	}
-	       	rotation++;
-	       	
-	        // Then check for any collisions that may have occurred
-	        handleScreenEdge(player, tmap, elapsed);
-	        checkTileCollision(player, tmap);    
+    	int input = takePressed();
+    	if (flapHeld) input |= GameWorld.INPUT_FLAP;
+    	if (bot != null) input |= bot.act(world);
+    	
+    	if (recorder != null) {
+    		recorder.tick(input, elapsed);
+    	} else {
+    		world.applyInput(input);
+    		world.update(elapsed);
     	}
     }
     
     /**
-     * Checks and handles collisions with the edge of the screen
+     * Record every tick from now on and save the replay to 'file' when the
+     * game exits.
      * 
-     * @param s			The Sprite to check collisions for
-     * @param tmap		The tile map to check 
-     * @param elapsed	How much time has gone by since the last call
+     * @param file Where to save the replay
      */
-    public void handleScreenEdge(Sprite s, TileMap tmap, long elapsed)
+    private void startRecording(final File file)
     {
-    	// This method just checks if the sprite has gone off the bottom screen.
-    	// Ideally you should use tile collision instead of this approach
-    	
-    	//If player is too low
-        if (s.getY() + s.getHeight() > tmap.getPixelHeight())
-        {
-        	// Put the player back on the map 1 pixel above the bottom
-        	s.setY(tmap.getPixelHeight() - s.getHeight() - 1); 
-        	
-        	// and make them bounce
-        	s.setVelocityY(-s.getVelocityY());
-        }
-        //If player is too high
-        if(s.getY() - s.getHeight() < 0) {
-        	//don't let player go above map
-        	s.setY(0 + s.getHeight() + 1); 
-        }
+    	recorder = new ReplayRecorder(world);
+    	Runtime.getRuntime().addShutdownHook(new Thread() {
+    		@Override
+    		public void run() {
+    			recorder.getLog().save(file);
+    		}
+    	});
+    }
+    
+    /**
+     * Remember that a key was pressed until the next tick.
+     * 
+     * @param input The GameWorld.INPUT_ bit for the key
+     */
+    private synchronized void press(int input)
+    {
+    	pressed |= input;
+    }
+    
+    /**
+     * @return The keys pressed since the last tick, which are then forgotten
+     */
+    private synchronized int takePressed()
+    {
+    	int input = pressed;
+    	pressed = 0;
+    	return input;
     }
     
     /**
@@ -297,115 +179,20 @@ public class Game extends GameCore
     { 
     	switch(e.getKeyCode()) {
     	case KeyEvent.VK_ESCAPE	: stop(); return;
-    	case KeyEvent.VK_UP     : flap = true; return;
-    	case KeyEvent.VK_SPACE  : pause = false; return;	
+    	// A tap shorter than a tick still flaps for one tick
+    	case KeyEvent.VK_UP     : flapHeld = true; press(GameWorld.INPUT_FLAP); return;
+    	case KeyEvent.VK_SPACE  : press(GameWorld.INPUT_RESUME); return;	
     	default					: return;	
     	}
     }
-    
-    //Makes a bird noise
-    public void caw() {
-		Sound s = new Sound("src/sounds/caw.wav");
-		s.start();
-    }
-    
-    public boolean boundingBoxCollision(Sprite s1, Sprite s2)
-    {
-    	 int dx,dy,minimum;   
-    	   
-    	  dx = (int) (s1.getX() - s2.getX()); 
-    	  dy = (int) (s1.getY() - s2.getY()); 
-    	  minimum = (int) (s1.getRadius() + s2.getRadius()); 
-    	    
-    	  return (((dx * dx) + (dy * dy)) < (minimum * minimum));
-    }
-    
-    /**
-     * Check and handles collisions with a tile map for the
-     * given sprite 's'. Initial functionality is limited...
-     * 
-     * @param s			The Sprite to check collisions for
-     * @param tmap		The tile map to check 
-     */
-
-	public void checkTileCollision(Sprite s, TileMap tmap)
-    {    	
-    	float sx = s.getX() + s.getRadius() - offsetMapX;
-    	float sy = s.getY() + s.getRadius();  
-    	int xtile, ytile;
-    	double x, y;
-    	
-    	for(int angle = 0; angle < 6; angle++) {
-    		x = sx + (s.getRadius() * Math.cos(Math.toRadians(angle * 60)));
-    		y = sy + (s.getRadius() * Math.sin(Math.toRadians(angle * 60)));
-    		// Find out how wide and how tall a tile is
-        	xtile = (int)(x /  tmap.getTileWidth());
-        	ytile = (int)(y / tmap.getTileHeight());
-
-    		switch(tmap.getTileChar(xtile, ytile)) {
-	    		case '.':
-	    			continue;
-	    		case 'p':
-	    		case 'b':
-	    		case 't':
-	        		handleCollison(s);
-	    	        return;
-	    		case '?':
-					if(offsetMapX > -500) {
-						return;
-					}
-					checkCollision = false;
-		    		s.setVelocityY(0);
-		    		s.setVelocityX(0.3f);
-		            TimerTask timerTask = new TimerTask() {
-		                @Override
-		                public void run() {
-		                	//Start new level once animation done
-		                	changeLevel();
-		                	initialiseGame();
-		                	pause = false;
-		                	cancel();	
-		                }
-		            };
-		            Timer timer = new Timer("MyTimer");
-		            //After two seconds, execute timer function
-		            timer.scheduleAtFixedRate(timerTask, 2000, 1000);
-		            pause = true;
-					return;	
-    		}
-        }
-    }
-
-    //If collision happens
-    private void handleCollison(Sprite s) {	
-		caw();
-		pause = true;
-		total = 0;
-		for(Sprite rock : rocks)
-			deployAsteroid(rock);
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-            	//resume sprite
-            	pause = false;
-            }
-        };
-        Timer timer = new Timer("MyTimer");
-        //After one seconds, execute timer function
-        timer.scheduleAtFixedRate(timerTask, 1000, 30000);
-		s.stop();
-		offsetMapX = offsetMapX + s.getWidth() * 3;
-		s.setY(screenWidth/2 - s.getHeight());
-    }
-
 
 	public void keyReleased(KeyEvent e) { 
 		
 		switch (e.getKeyCode()){
 			case KeyEvent.VK_ESCAPE : stop(); return;
-			case KeyEvent.VK_UP     : flap = false; return;
-			case KeyEvent.VK_1 		: debugMode = !debugMode; return;
-			case KeyEvent.VK_2 		: offsetMapX = -1650; return;
+			case KeyEvent.VK_UP     : flapHeld = false; return;
+			case KeyEvent.VK_1 		: press(GameWorld.INPUT_DEBUG); return;
+			case KeyEvent.VK_2 		: press(GameWorld.INPUT_SKIP); return;
 			default 				: return;
 		}
 	}
@@ -415,8 +202,4 @@ public class Game extends GameCore
         //Point p = e.getPoint();
         //TODO Sprite blastWind = new Sprite();
 	}
-	
-	public void changeLevel() {
-		tmap.loadMap("src/maps", "map2.txt");
-	}
 }
@@ -0,0 +1,150 @@
+package code;
+
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * GameAssets holds the images and animations every GameWorld uses. They are
+ * loaded once, the first time get() is called, and then shared by every
+ * world in the program, so many worlds can be created at once (e.g. by
+ * RolloutRunner) without each one reading and decoding the files again.
+ *
+ * The background images are much bigger than the screen, so they are
+ * scaled once per screen size by getBackground() and getPlayButton()
+ * rather than by every world.
+ *
+ * Nothing here is changed after loading. Worlds make their own playback
+ * copies of the animations (see Animation's copy constructor), and the
+ * rotation cache is synchronized, so the assets can be used from any
+ * number of threads.
+ *
+ * @author Cameron Morrison
+ */
+public class GameAssets {
+
+	private static GameAssets shared = null;
+
+	/*Parallax images taken from free licensing publisher
+	https://digitalmoons.itch.io/free-parallax-desert-background-seamless and a pause button*/
+	final BufferedImage sky;
+	final BufferedImage moon;
+	final BufferedImage mountains;
+	final BufferedImage desert;
+	final BufferedImage playButton;
+
+	final SpriteSheet birdSheet;
+	final Animation bird;				// Copy this for each bird, don't play it
+	final Animation rock;				// Copy this for each rock, don't play it
+	final RotationCache rockRotations;	// Pre-rotated rock images for drawing
+
+	private ParallaxBackground background = null;	// Scaled to the last size asked for
+	private Image scaledPlayButton = null;
+	private int playButtonWidth, playButtonHeight;
+
+	private GameAssets(BufferedImage [] images, SpriteSheet birdSheet, Animation bird,
+			Animation rock, RotationCache rockRotations)
+	{
+		sky = images[0];
+		moon = images[1];
+		mountains = images[2];
+		desert = images[3];
+		playButton = images[4];
+		this.birdSheet = birdSheet;
+		this.bird = bird;
+		this.rock = rock;
+		this.rockRotations = rockRotations;
+	}
+
+	/**
+	 * Gets the shared assets, loading them the first time.
+	 *
+	 * @return The assets, or null if the bird couldn't be loaded
+	 */
+	public static synchronized GameAssets get()
+	{
+		if (shared == null) shared = load();
+		return shared;
+	}
+
+	/**
+	 * Gets a background made from the parallax images, scaled to the given
+	 * size. The scaled images are kept and shared by every background of
+	 * that size, but each one scrolls on its own.
+	 *
+	 * @param width		Width in pixels, usually the screen width
+	 * @param height	Height in pixels, usually the screen height
+	 * @return A new background
+	 */
+	public synchronized ParallaxBackground getBackground(int width, int height)
+	{
+		if (background == null || background.getWidth() != width || background.getHeight() != height)
+		{
+			background = new ParallaxBackground(width, height);
+			background.addStaticLayer(sky);
+			background.addStaticLayer(moon);
+			background.addScrollingLayer(mountains, 0.1f);
+			background.addScrollingLayer(desert, 0.3f);
+			background.build();
+		}
+		return new ParallaxBackground(background);
+	}
+
+	/**
+	 * Gets the play button scaled to the given size, which is shared by
+	 * every caller asking for that size.
+	 *
+	 * @param width		Width in pixels
+	 * @param height	Height in pixels
+	 * @return The scaled button, or null if it couldn't be loaded
+	 */
+	public synchronized Image getPlayButton(int width, int height)
+	{
+		if (playButton == null) return null;
+		if (scaledPlayButton == null || playButtonWidth != width || playButtonHeight != height)
+		{
+			scaledPlayButton = CompatibleImages.copyOf(playButton, width, height, Transparency.TRANSLUCENT);
+			playButtonWidth = width;
+			playButtonHeight = height;
+		}
+		return scaledPlayButton;
+	}
+
+	/**
+	 * Load the assets. A background image that fails to load is left out
+	 * (null) rather than stopping the game.
+	 */
+	private static GameAssets load()
+	{
+		//Parallax vector images from https://raventale.itch.io/parallax-background
+		String [] files = { "Sky.png", "Moon.png", "Mountains.png", "Desert.png", "PlayButton.png" };
+		BufferedImage [] images = new BufferedImage[files.length];
+		for (int i=0; i<files.length; i++)
+		{
+			try {
+				images[i] = ImageIO.read(new File("src/images/" + files[i]));
+			} catch (IOException e) {
+				System.err.println("Failed to read image '" + files[i] + "':" + e);
+			}
+		}
+
+		Animation bird = new Animation();
+		SpriteSheet birdSheet = bird.loadAnimationFromSheet("src/images/landbird.png", 4, 1, 60);
+		if (birdSheet == null) return null;
+		bird.buildRotatedMasks(36);
+
+		Animation rock = new Animation();
+		rock.addFrame(new ImageIcon("src/images/rock.png").getImage(), 1000);
+		rock.buildRotatedMasks(72);
+		// Draw the spinning rocks from pre-rotated copies, using the same steps as their masks
+		RotationCache rockRotations = new RotationCache(72, 72);
+		rockRotations.preload(rock, 1.0);
+
+		return new GameAssets(images, birdSheet, bird, rock, rockRotations);
+	}
+}
@@ -7,7 +7,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.awt.image.BufferedImage;
+import java.awt.image.BufferStrategy;
 
 import javax.swing.*;
 
@@ -30,8 +30,13 @@ public abstract class GameCore extends JFrame implements KeyListener, MouseListe
     
     private long frames;				// Used to calculate frames per second (FPS)
     
-    private BufferedImage buffer=null;	// buffer is used as a buffered image for drawing offscreen
-    private Graphics2D 	  bg=null;    		// The virtual Graphics2D device associated with the above image
+    // Fixed timestep settings. When fixedTimestep is true, update() is always
+    // called with exactly tickMillis and the number of updates per frame is
+    // capped at maxTicksPerFrame so that a slow frame can't snowball.
+    private boolean fixedTimestep = true;
+    private long tickMillis = 10;		// Length of a simulation tick in ms (100Hz)
+    private int maxTicksPerFrame = 5;	// Spiral-of-death cap
+    private float interpolation = 1.0f;	// How far we are between the last two ticks (0-1)
     
     
     /**
@@ -42,6 +47,9 @@ public abstract class GameCore extends JFrame implements KeyListener, MouseListe
     {
     	stop = false;
     	
+    	// We draw the window ourselves in gameLoop, so ignore paint requests from the OS
+    	setIgnoreRepaint(true);
+    	
         frames = 1;
         startTime = 1;
         currTime = 1;
@@ -110,51 +118,152 @@ public abstract class GameCore extends JFrame implements KeyListener, MouseListe
     	return new ImageIcon(fileName).getImage(); 
     }
 
+    /**
+     * Sets the rate at which update() is called when running with a fixed
+     * timestep. The tick length is rounded down to whole milliseconds so that
+     * every call to update() receives the same elapsed time.
+     * 
+     * @param ticksPerSecond The number of simulation ticks per second
+     */
+    public void setTickRate(int ticksPerSecond)
+    {
+    	if (ticksPerSecond <= 0) return;
+    	tickMillis = Math.max(1, 1000 / ticksPerSecond);
+    }
+    
+    /**
+     * @return The length of a simulation tick in milliseconds
+     */
+    public long getTickMillis() { return tickMillis; }
+    
+    /**
+     * Sets the maximum number of simulation ticks that will be run before
+     * a frame is drawn. If the game falls further behind than this the
+     * remaining time is dropped rather than trying to catch up.
+     * 
+     * @param max The maximum number of ticks per frame
+     */
+    public void setMaxTicksPerFrame(int max)
+    {
+    	if (max > 0) maxTicksPerFrame = max;
+    }
+    
+    /**
+     * Choose between a fixed timestep (the default) and the original
+     * variable timestep where update() gets the raw time since the last frame.
+     * 
+     * @param fixed True to use a fixed timestep
+     */
+    public void setFixedTimestep(boolean fixed) { fixedTimestep = fixed; }
+    
+    /**
+     * Gets how far the current frame is between the previous and the
+     * current simulation tick. Use this in draw() to interpolate positions.
+     * Always 1 when running with a variable timestep.
+     * 
+     * @return A value between 0 and 1
+     */
+    public float getInterpolation() { return interpolation; }
+
     /**
      *  Runs through the game loop until stop() is called. 
      *  
      *  This method will call your update() method followed by your draw()
-     *  method to display the updated game state. It implements double buffering
-     *  for both full screen and windowed mode.
+     *  method to display the updated game state. Drawing goes straight into
+     *  the back buffer of a 2 buffer BufferStrategy (see render()). With a fixed timestep, update()
+     *  is called zero or more times per frame with exactly getTickMillis()
+     *  and draw() can use getInterpolation() to smooth between ticks.
      */
     public void gameLoop() {
-        startTime = System.currentTimeMillis();
+        long lastTime = System.nanoTime();
+        long accumulator = 0;
+        long tickNanos;
+        int ticks;
+        
+        startTime = lastTime / 1000000L;
         currTime = startTime;
         frames = 1;		// Keep a note of frames for performance measure
 
-        Graphics2D g;
         stop = false;
         
-        // Create our own buffer
-        buffer = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-        bg = (Graphics2D)buffer.createGraphics();
-        bg.setClip(0, 0, getWidth(), getHeight());
+        // Create a double buffered strategy to draw into
+        ScreenManager.createBufferStrategy(this, 2);
+        BufferStrategy strategy = getBufferStrategy();
         
         while (!stop) {
-            elapsedTime = System.currentTimeMillis() - currTime;
-            currTime += elapsedTime;
-
-            // Call the overridden update method
-            update(elapsedTime);
+            long now = System.nanoTime();
+            long frameNanos = now - lastTime;
+            lastTime = now;
+            elapsedTime = frameNanos / 1000000L;
+            currTime = now / 1000000L;
 
-	        // Get the current graphics device 	            
-            g = (Graphics2D)getGraphics();
-            
-            
-	        if (g != null)
-	        {
-	            	draw(bg);
-	            	g.drawImage(buffer,null,0,0);
+            if (fixedTimestep)
+            {
+            	tickNanos = tickMillis * 1000000L;
+            	accumulator += frameNanos;
+            	
+            	// Call the overridden update method once per whole tick
+            	ticks = 0;
+            	while (accumulator >= tickNanos && ticks < maxTicksPerFrame)
+            	{
+            		update(tickMillis);
+            		accumulator -= tickNanos;
+            		ticks++;
+            	}
+            	
+            	// Too far behind, so drop the time we couldn't simulate
+            	if (accumulator >= tickNanos) accumulator = accumulator % tickNanos;
+            	
+            	interpolation = (float)accumulator / tickNanos;
+            }
+            else
+            {
+            	// Call the overridden update method
+            	update(elapsedTime);
+            	interpolation = 1.0f;
             }
+
+            if (strategy != null) render(strategy);
             
             frames++;
 
-            // take a nap
-            try { Thread.sleep(10); } catch (InterruptedException ex) { }
+            // take a short nap so we don't hog the CPU
+            try { Thread.sleep(1); } catch (InterruptedException ex) { }
         }
         System.exit(0);
     }
     
+    /**
+     * Draws a frame into the back buffer of 'strategy' and shows it. If the
+     * buffer contents are restored or lost while we are drawing (e.g. the
+     * display mode changed) the frame is drawn again.
+     * 
+     * @param strategy The BufferStrategy to draw with
+     */
+    private void render(BufferStrategy strategy)
+    {
+    	Graphics2D g;
+    	
+    	do {
+    		do {
+    			g = (Graphics2D)strategy.getDrawGraphics();
+    			try {
+    				g.setClip(0, 0, getWidth(), getHeight());
+    				draw(g);
+    			}
+    			finally {
+    				g.dispose();
+    			}
+    		} while (strategy.contentsRestored());
+    		
+    		strategy.show();
+    	} while (strategy.contentsLost());
+    	
+        // Sync the display on some systems.
+        // (on Linux, this fixes event queue problems)
+    	Toolkit.getDefaultToolkit().sync();
+    }
+    
     /**
      * @return The current frames per second (FPS)
      */
@@ -0,0 +1,377 @@
+package code;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * GameEnv wraps a GameWorld in the reset/step/observe interface that
+ * reinforcement learning tools expect. reset() starts a new game from a
+ * seed, step() applies an action for a number of ticks and observe() writes
+ * what the bird can see into a FloatBuffer. The buffer is direct and in the
+ * machine's byte order, so it can be shared with another process or native
+ * code without copying. Each observation is, in order:
+ *
+ *  4 numbers for the bird: the x and y of its centre, as fractions of the
+ *    screen size, and its x and y speed, as fractions of the speed a flap gives
+ *  3 numbers for each of the next 'pipes' pipes, nearest first: how far
+ *    ahead it is, as a fraction of the screen width, and the top and bottom
+ *    of its gap relative to the bird's centre, as fractions of the screen
+ *    height. A missing pipe is 1, and a gap the height of the map.
+ *  4 numbers for each of the nearest 'rocks' rocks that haven't gone past
+ *    the bird, nearest first: across and down to it, as fractions of the
+ *    screen size, and its x and y speed as above. A missing rock is 1, 0, 0, 0.
+ *
+ * An action is a set of GameWorld.INPUT_ bits, usually just INPUT_FLAP or 0.
+ * Each step earns 1 for every tick survived, and the game is done when the
+ * bird first crashes or 'maxTicks' have been played.
+ *
+ * A frame of the game can also be drawn and shrunk into an int array of
+ * RGB pixels, for tools that learn from the screen.
+ *
+ * Observing allocates nothing, so the cost of a step is the game itself.
+ * An environment is not thread safe.
+ *
+ * @author Cameron Morrison
+ */
+public class GameEnv {
+
+	static final long TICK_MILLIS = RolloutRunner.TICK_MILLIS;
+	static final int BIRD_VALUES = 4;
+	static final int PIPE_VALUES = 3;
+	static final int ROCK_VALUES = 4;
+
+	private GameSettings settings;
+	private GameWorld world = null;
+	private int pipes;
+	private int rocks;
+	private int ticksPerStep = 1;
+	private int maxTicks = 0;
+
+	private FloatBuffer observation;
+	private BirdSensors sensors = new BirdSensors();
+	private float [] pipe;				// Pipes found by the sensors, 3 numbers each
+	private int [] nearRocks;			// Active indexes of the nearest rocks, nearest first
+	private float [] nearDistance;		// and how far away they are, squared
+
+	private int ticks;					// Ticks played since reset()
+	private boolean done = true;
+
+	private int screenWidth;
+	private int screenHeight;
+	private int frameScale = 0;			// How many pixels across each frame pixel covers
+	private OffscreenRenderer renderer = null;
+
+	/**
+	 * Create an environment with its own observation buffer.
+	 *
+	 * @param settings	How to set up each game, the seed is replaced by reset()
+	 * @param pipes		How many pipes ahead to observe
+	 * @param rocks		How many rocks to observe
+	 */
+	public GameEnv(GameSettings settings, int pipes, int rocks)
+	{
+		this(settings, pipes, rocks, createBuffer(getObservationSize(pipes, rocks)));
+	}
+
+	/**
+	 * Create an environment that writes its observations into 'observation',
+	 * from index 0. Give it a slice of a bigger buffer to have several
+	 * environments share one (see VectorEnv).
+	 *
+	 * @param settings		How to set up each game, the seed is replaced by reset()
+	 * @param pipes			How many pipes ahead to observe
+	 * @param rocks			How many rocks to observe
+	 * @param observation	Where to write observations, with room for
+	 * 						getObservationSize(pipes, rocks) numbers
+	 */
+	public GameEnv(GameSettings settings, int pipes, int rocks, FloatBuffer observation)
+	{
+		if (observation.capacity() < getObservationSize(pipes, rocks))
+			throw new IllegalArgumentException("The observation buffer is too small");
+		this.settings = settings.copy();
+		this.pipes = pipes;
+		this.rocks = rocks;
+		this.observation = observation;
+		pipe = new float[pipes * 3];
+		nearRocks = new int[rocks];
+		nearDistance = new float[rocks];
+		screenWidth = GameWorld.DEFAULT_SCREEN_WIDTH;
+		screenHeight = GameWorld.DEFAULT_SCREEN_HEIGHT;
+	}
+
+	/**
+	 * @param pipes	How many pipes ahead are observed
+	 * @param rocks	How many rocks are observed
+	 * @return How many numbers each observation has
+	 */
+	public static int getObservationSize(int pipes, int rocks)
+	{
+		return BIRD_VALUES + pipes * PIPE_VALUES + rocks * ROCK_VALUES;
+	}
+
+	/**
+	 * @param size How many floats it holds
+	 * @return A direct buffer in the machine's byte order
+	 */
+	static FloatBuffer createBuffer(int size)
+	{
+		return ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * @param ticks How many ticks each step() plays with the same action, 1 or more
+	 */
+	public void setTicksPerStep(int ticks) { ticksPerStep = Math.max(1, ticks); }
+
+	/**
+	 * @param ticks The most ticks a game lasts, or 0 to play until the first crash
+	 */
+	public void setMaxTicks(int ticks) { maxTicks = ticks; }
+
+	/**
+	 * Draw frames shrunk by 'scale', e.g. 4 gives 128x96 pixel frames.
+	 *
+	 * @param scale How many screen pixels across each frame pixel covers, or 0 for no frames
+	 */
+	public void setFrameScale(int scale) { frameScale = Math.max(0, scale); }
+
+	/**
+	 * @return The width of a frame in pixels, 0 if frames are turned off
+	 */
+	public int getFrameWidth() { return frameScale > 0 ? screenWidth / frameScale : 0; }
+
+	/**
+	 * @return The height of a frame in pixels, 0 if frames are turned off
+	 */
+	public int getFrameHeight() { return frameScale > 0 ? screenHeight / frameScale : 0; }
+
+	/**
+	 * Start a new game and observe it. The world is only made the first
+	 * time, after that it is restarted, which loads nothing.
+	 *
+	 * @param seed The seed for the game, and for the level if it is endless
+	 * @return true if the game loaded
+	 */
+	public boolean reset(long seed)
+	{
+		if (world == null)
+		{
+			GameSettings s = settings.copy();
+			s.setSeed(seed);
+			if (s.isEndless()) s.setEndless(seed);
+			world = s.createWorld(false);
+		}
+		else
+		{
+			if (world.getGenerator() != null) world.getGenerator().setSeed(seed);
+			if (!world.restart(seed)) world = null;
+		}
+		ticks = 0;
+		done = world == null;
+		if (done) return false;
+		world.applyInput(GameWorld.INPUT_RESUME);
+		observe();
+		return true;
+	}
+
+	/**
+	 * Play 'action' for getTicksPerStep() ticks, or until the game is done,
+	 * and observe the result.
+	 *
+	 * @param action The GameWorld.INPUT_ bits to hold down
+	 * @return The reward, the number of ticks survived
+	 */
+	public float step(int action)
+	{
+		if (done) return 0;
+		int crashes = world.getCrashCount();
+		int played = 0;
+		while (played < ticksPerStep)
+		{
+			world.applyInput(action);
+			world.update(TICK_MILLIS);
+			ticks++;
+			if (world.getCrashCount() != crashes)
+			{
+				done = true;
+				break;
+			}
+			played++;
+			if (maxTicks > 0 && ticks >= maxTicks)
+			{
+				done = true;
+				break;
+			}
+		}
+		observe();
+		return played;
+	}
+
+	/**
+	 * @return true once the bird has crashed or the game has run out of
+	 * ticks, until the next reset()
+	 */
+	public boolean isDone() { return done; }
+
+	/**
+	 * Write the observation of the game as it is now into the buffer.
+	 */
+	public void observe()
+	{
+		if (world == null) return;
+		Sprite bird = world.getPlayer();
+		float width = world.getScreenWidth();
+		float height = world.getScreenHeight();
+		float lift = world.getLift();
+		float cx = bird.getX() + bird.getWidth() / 2.0f;
+		float cy = bird.getY() + bird.getHeight() / 2.0f;
+		FloatBuffer o = observation;
+		int i = 0;
+
+		o.put(i++, cx / width);
+		o.put(i++, cy / height);
+		o.put(i++, bird.getVelocityX() / lift);
+		o.put(i++, bird.getVelocityY() / lift);
+
+		int found = sensors.findPipes(world, pipes, pipe, 0);
+		float mapHeight = world.getTileMap().getPixelHeight();
+		for (int p=0; p<pipes; p++)
+		{
+			boolean present = p < found;
+			o.put(i++, present ? Math.max(0, pipe[p * 3]) / width : 1);
+			o.put(i++, ((present ? pipe[p * 3 + 1] : 0) - cy) / height);
+			o.put(i++, ((present ? pipe[p * 3 + 2] : mapHeight) - cy) / height);
+		}
+
+		ObstaclePool pool = world.getRocks();
+		int near = findNearestRocks(pool, bird, cx, cy);
+		for (int r=0; r<rocks; r++)
+		{
+			if (r < near)
+			{
+				Sprite rock = pool.getActive(nearRocks[r]);
+				o.put(i++, (rock.getX() + rock.getWidth() / 2.0f - cx) / width);
+				o.put(i++, (rock.getY() + rock.getHeight() / 2.0f - cy) / height);
+				o.put(i++, rock.getVelocityX() / lift);
+				o.put(i++, rock.getVelocityY() / lift);
+			}
+			else
+			{
+				o.put(i++, 1);
+				o.put(i++, 0);
+				o.put(i++, 0);
+				o.put(i++, 0);
+			}
+		}
+	}
+
+	/**
+	 * Sort the closest rocks that haven't gone past the bird into
+	 * 'nearRocks', nearest first.
+	 *
+	 * @return How many were found, up to 'rocks'
+	 */
+	private int findNearestRocks(ObstaclePool pool, Sprite bird, float cx, float cy)
+	{
+		int found = 0;
+		for (int a=0; a<pool.getActiveCount(); a++)
+		{
+			Sprite r = pool.getActive(a);
+			if (r.getX() + r.getWidth() < bird.getX()) continue;
+			float dx = r.getX() + r.getWidth() / 2.0f - cx;
+			float dy = r.getY() + r.getHeight() / 2.0f - cy;
+			float d = dx * dx + dy * dy;
+
+			// Insert it in order, dropping the furthest if there are too many
+			int k = found < rocks ? found++ : rocks;
+			while (k > 0 && nearDistance[k - 1] > d)
+			{
+				if (k < rocks)
+				{
+					nearDistance[k] = nearDistance[k - 1];
+					nearRocks[k] = nearRocks[k - 1];
+				}
+				k--;
+			}
+			if (k < rocks)
+			{
+				nearDistance[k] = d;
+				nearRocks[k] = a;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Draw the game and shrink it into 'out' as RGB pixels, a row at a time
+	 * from the top. Each pixel is the average of the screen pixels it covers.
+	 * Frames must have been turned on with setFrameScale().
+	 *
+	 * @param out		Where to write the pixels
+	 * @param offset	Where in 'out' to write the first one
+	 */
+	public void renderFrame(int [] out, int offset)
+	{
+		if (world == null || frameScale == 0) return;
+		if (renderer == null)
+			renderer = new OffscreenRenderer(screenWidth, screenHeight);
+		BufferedImage image = renderer.render(world, 1.0f);
+		int [] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		int stride = image.getWidth();
+		int fw = getFrameWidth();
+		int fh = getFrameHeight();
+		int area = frameScale * frameScale;
+
+		for (int y=0; y<fh; y++)
+		{
+			for (int x=0; x<fw; x++)
+			{
+				int r = 0, g = 0, b = 0;
+				int row = y * frameScale * stride + x * frameScale;
+				for (int sy=0; sy<frameScale; sy++, row+=stride)
+				{
+					for (int sx=0; sx<frameScale; sx++)
+					{
+						int p = pixels[row + sx];
+						r += (p >> 16) & 0xff;
+						g += (p >> 8) & 0xff;
+						b += p & 0xff;
+					}
+				}
+				out[offset + y * fw + x] = (r / area) << 16 | (g / area) << 8 | (b / area);
+			}
+		}
+	}
+
+	/**
+	 * @return The observation buffer, which every observe() overwrites
+	 */
+	public FloatBuffer getObservation() { return observation; }
+
+	/**
+	 * @return How many numbers each observation has
+	 */
+	public int getObservationSize() { return getObservationSize(pipes, rocks); }
+
+	/**
+	 * @return The ticks played since reset()
+	 */
+	public int getTicks() { return ticks; }
+
+	/**
+	 * @return The game being played, null before reset()
+	 */
+	public GameWorld getWorld() { return world; }
+
+	/**
+	 * Stop drawing frames and release what was used to draw them.
+	 */
+	public void dispose()
+	{
+		if (renderer != null) renderer.dispose();
+		renderer = null;
+	}
+}
@@ -0,0 +1,85 @@
+package code;
+
+/**
+ * GameRandom is the random number generator used for everything in the
+ * game that changes how it plays. Unlike java.util.Random its whole state
+ * is one long that can be read and put back, so a saved game or a replay
+ * keyframe carries on with exactly the same numbers.
+ *
+ * It is a SplitMix64 generator: the state moves on by a fixed odd constant
+ * each call and is then scrambled into the result.
+ *
+ * @author Cameron Morrison
+ */
+public class GameRandom {
+
+	private long state;
+
+	/**
+	 * @param seed The seed, the same seed always gives the same numbers
+	 */
+	public GameRandom(long seed)
+	{
+		setSeed(seed);
+	}
+
+	/**
+	 * Start again from 'seed'.
+	 *
+	 * @param seed The seed, the same seed always gives the same numbers
+	 */
+	public void setSeed(long seed) { state = seed; }
+
+	/**
+	 * @return The whole state of the generator
+	 */
+	public long getState() { return state; }
+
+	/**
+	 * Carry on from a state returned by getState().
+	 *
+	 * @param state The state to carry on from
+	 */
+	public void setState(long state) { this.state = state; }
+
+	/**
+	 * @return The next random long
+	 */
+	public long nextLong()
+	{
+		long z = (state += 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param bound How many values to choose from, greater than 0
+	 * @return A random int from 0 to bound - 1
+	 */
+	public int nextInt(int bound)
+	{
+		// Scale the top 32 bits into range, which is even enough for small bounds
+		return (int)(((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * @return A random float from 0 (inclusive) to 1 (exclusive)
+	 */
+	public float nextFloat()
+	{
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * @return A random number from a normal distribution with mean 0 and
+	 * standard deviation 1
+	 */
+	public float nextGaussian()
+	{
+		// Box-Muller, using 1 - u so that the log is never of 0
+		double u = 1.0 - (nextLong() >>> 11) * 0x1.0p-53;
+		double v = (nextLong() >>> 11) * 0x1.0p-53;
+		return (float)(Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v));
+	}
+}
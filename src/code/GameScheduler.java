@@ -0,0 +1,210 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * GameScheduler runs delayed and repeating game events on the game loop
+ * thread, counting time in game ticks rather than wall clock time. It is
+ * driven by calling update() once per tick with the tick's length, so
+ * events happen in the same place in the game every time it is played and
+ * never race with the game loop.
+ *
+ * Each event uses one of two clocks. The REAL clock counts every tick.
+ * The PLAY clock stops while the game is paused, so a PLAY event scheduled
+ * for 5 seconds from now happens after 5 seconds of actual play.
+ *
+ * Events are kept in a priority queue ordered by when they are due, with
+ * events due at the same time run in the order they were scheduled.
+ *
+ * @author Cameron Morrison
+ */
+public class GameScheduler {
+
+	/**
+	 * The clocks events can be timed by.
+	 */
+	public enum Clock {
+		REAL,	// Runs whether or not the game is paused
+		PLAY	// Stops while the game is paused
+	}
+
+	private PriorityQueue<Event> realQueue = new PriorityQueue<Event>();
+	private PriorityQueue<Event> playQueue = new PriorityQueue<Event>();
+	private long realTime = 0;		// Milliseconds of game ticks so far
+	private long playTime = 0;		// Milliseconds of unpaused game ticks so far
+	private long scheduled = 0;		// Number of events scheduled, used to keep them in order
+	private ArrayList<Event> held = new ArrayList<Event>();	// Events runDue has set aside until the next update
+
+	/**
+	 * Run 'task' once after 'delay' milliseconds of game time, whether
+	 * or not the game is paused.
+	 *
+	 * @param task	What to do
+	 * @param delay	How long to wait in milliseconds
+	 * @return The event, which can be cancelled
+	 */
+	public Event schedule(Runnable task, long delay)
+	{
+		return schedule(task, delay, 0, Clock.REAL);
+	}
+
+	/**
+	 * Run 'task' after 'delay' milliseconds of game time on 'clock', then
+	 * again every 'period' milliseconds if 'period' is greater than 0.
+	 *
+	 * @param task		What to do
+	 * @param delay		How long to wait before the first run in milliseconds
+	 * @param period	How long to wait between runs in milliseconds, 0 to run once
+	 * @param clock		Which clock to time the event by
+	 * @return The event, which can be cancelled
+	 */
+	public Event schedule(Runnable task, long delay, long period, Clock clock)
+	{
+		Event e = new Event(task, period, clock);
+		e.due = now(clock) + Math.max(0, delay);
+		e.order = scheduled++;
+		queue(clock).add(e);
+		return e;
+	}
+
+	/**
+	 * Move time on by one tick and run every event that is now due.
+	 * Events scheduled while this is running are not run until the
+	 * next update, even if they have no delay.
+	 *
+	 * @param elapsed	The length of the tick in milliseconds
+	 * @param paused	true if the game is paused, which stops the PLAY clock
+	 */
+	public void update(long elapsed, boolean paused)
+	{
+		long last = scheduled;
+		realTime += elapsed;
+		if (!paused) playTime += elapsed;
+
+		runDue(realQueue, realTime, last);
+		runDue(playQueue, playTime, last);
+	}
+
+	private void runDue(PriorityQueue<Event> queue, long now, long last)
+	{
+		while (!queue.isEmpty())
+		{
+			Event e = queue.peek();
+			if (e.due > now) break;
+			queue.poll();
+			if (e.cancelled) continue;
+
+			// Set aside events scheduled during this update, including repeats
+			// of ones that have just run, without holding up older events
+			if (e.order >= last)
+			{
+				held.add(e);
+				continue;
+			}
+
+			if (e.period > 0)
+			{
+				// Fixed rate, measured from when it was due rather than now
+				e.due += e.period;
+				e.order = scheduled++;
+				queue.add(e);
+			}
+			else
+			{
+				e.done = true;
+			}
+			e.task.run();
+		}
+		queue.addAll(held);
+		held.clear();
+	}
+
+	/**
+	 * Cancel every event.
+	 */
+	public void cancelAll()
+	{
+		for (Event e : realQueue) e.cancelled = true;
+		for (Event e : playQueue) e.cancelled = true;
+		for (Event e : held) e.cancelled = true;
+		realQueue.clear();
+		playQueue.clear();
+		held.clear();
+	}
+
+	/**
+	 * @return The number of events waiting to run, including cancelled ones not yet removed
+	 */
+	public int size() { return realQueue.size() + playQueue.size(); }
+
+	/**
+	 * @return true if any event is still waiting to run
+	 */
+	public boolean hasPending()
+	{
+		for (Event e : realQueue)
+			if (!e.cancelled) return true;
+		for (Event e : playQueue)
+			if (!e.cancelled) return true;
+		return false;
+	}
+
+	/**
+	 * @param clock The clock to read
+	 * @return The time on 'clock' in milliseconds
+	 */
+	public long now(Clock clock)
+	{
+		return clock == Clock.REAL ? realTime : playTime;
+	}
+
+	private PriorityQueue<Event> queue(Clock clock)
+	{
+		return clock == Clock.REAL ? realQueue : playQueue;
+	}
+
+	/**
+	 * An event that has been scheduled. Keep it to cancel the event later.
+	 */
+	public static class Event implements Comparable<Event> {
+
+		private Runnable task;
+		private long period;
+		private Clock clock;
+		private long due;			// Time on the event's clock when it should next run
+		private long order;			// Breaks ties between events due at the same time
+		private boolean cancelled = false;
+		private boolean done = false;
+
+		private Event(Runnable task, long period, Clock clock)
+		{
+			this.task = task;
+			this.period = period;
+			this.clock = clock;
+		}
+
+		/**
+		 * Stop the event from running again. Cancelled events are removed
+		 * from the queue when they come to the front of it.
+		 */
+		public void cancel() { cancelled = true; }
+
+		/**
+		 * @return true if the event has been cancelled or has run and won't run again
+		 */
+		public boolean isFinished() { return cancelled || done; }
+
+		/**
+		 * @return The clock the event is timed by
+		 */
+		public Clock getClock() { return clock; }
+
+		@Override
+		public int compareTo(Event other)
+		{
+			if (due != other.due) return due < other.due ? -1 : 1;
+			return Long.compare(order, other.order);
+		}
+	}
+}
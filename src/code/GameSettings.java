@@ -0,0 +1,193 @@
+package code;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * GameSettings is everything needed to set up a GameWorld so that, with the
+ * same input each tick, it plays exactly the same game: the seed, the level
+ * and waves files and the tunable physics. A replay saves these with its
+ * input, and RolloutRunner sessions use them to try out changes to the
+ * tuning. The defaults are the ones a new GameWorld starts with.
+ *
+ * @author Cameron Morrison
+ */
+public class GameSettings {
+
+	private long seed;
+	private String wavesFile;
+	private String mapFile;
+	private float gravity;
+	private float lift;
+	private float rockSpeed;
+	private boolean endless = false;
+	private long endlessSeed = 0;
+
+	/**
+	 * Default settings with the given seed.
+	 *
+	 * @param seed The seed for everything random in the game
+	 */
+	public GameSettings(long seed)
+	{
+		this.seed = seed;
+		wavesFile = GameWorld.DEFAULT_WAVES_FILE;
+		mapFile = GameWorld.DEFAULT_MAP_FILE;
+		gravity = GameWorld.DEFAULT_GRAVITY;
+		lift = GameWorld.DEFAULT_LIFT;
+		rockSpeed = GameWorld.DEFAULT_ROCK_SPEED;
+	}
+
+	private GameSettings() { }
+
+	/**
+	 * Gets the settings 'world' was set up with. Call this before the world
+	 * has been updated, as the level it is on can change during play.
+	 *
+	 * @param world A world that has been set up
+	 * @return Its settings
+	 */
+	public static GameSettings of(GameWorld world)
+	{
+		GameSettings s = new GameSettings();
+		s.seed = world.getSeed();
+		s.wavesFile = world.getWavesFile();
+		s.mapFile = world.getMapFile();
+		s.gravity = world.getGravity();
+		s.lift = world.getLift();
+		s.rockSpeed = world.getRockSpeed();
+		LevelGenerator generator = world.getGenerator();
+		if (generator != null) s.setEndless(generator.getSeed());
+		return s;
+	}
+
+	/**
+	 * Create and initialise a world with these settings.
+	 *
+	 * @param sound	false to keep the world quiet, e.g. for simulations
+	 * @return The world, or null if it failed to load
+	 */
+	public GameWorld createWorld(boolean sound)
+	{
+		GameWorld world = new GameWorld();
+		world.setSoundEnabled(sound);
+		world.setSeed(seed);
+		world.setWavesFile(wavesFile);
+		world.setMapFile(mapFile);
+		world.setGravity(gravity);
+		world.setLift(lift);
+		world.setRockSpeed(rockSpeed);
+		if (!world.init()) return null;
+		if (endless && !world.setEndless(endlessSeed)) return null;
+		return world;
+	}
+
+	/**
+	 * @param out Where to write the settings
+	 * @throws IOException If the settings could not be written
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeLong(seed);
+		out.writeUTF(wavesFile);
+		out.writeUTF(mapFile);
+		out.writeFloat(gravity);
+		out.writeFloat(lift);
+		out.writeFloat(rockSpeed);
+		out.writeBoolean(endless);
+		out.writeLong(endlessSeed);
+	}
+
+	/**
+	 * @param in Where to read settings written by write() from
+	 * @return The settings
+	 * @throws IOException If the settings could not be read
+	 */
+	public static GameSettings read(DataInput in) throws IOException
+	{
+		GameSettings s = new GameSettings();
+		s.seed = in.readLong();
+		s.wavesFile = in.readUTF();
+		s.mapFile = in.readUTF();
+		s.gravity = in.readFloat();
+		s.lift = in.readFloat();
+		s.rockSpeed = in.readFloat();
+		s.endless = in.readBoolean();
+		s.endlessSeed = in.readLong();
+		return s;
+	}
+
+	public long getSeed() { return seed; }
+
+	public void setSeed(long seed) { this.seed = seed; }
+
+	public String getWavesFile() { return wavesFile; }
+
+	/**
+	 * @param path The waves file, e.g. src/waves/hard.txt
+	 */
+	public void setWavesFile(String path) { wavesFile = path; }
+
+	public String getMapFile() { return mapFile; }
+
+	/**
+	 * @param mapfile The level to start on in src/maps, e.g. map2.txt
+	 */
+	public void setMapFile(String mapfile) { mapFile = mapfile; }
+
+	public float getGravity() { return gravity; }
+
+	public void setGravity(float gravity) { this.gravity = gravity; }
+
+	public float getLift() { return lift; }
+
+	public void setLift(float lift) { this.lift = lift; }
+
+	public float getRockSpeed() { return rockSpeed; }
+
+	/**
+	 * @param scale What to multiply the speed of every rock by
+	 */
+	public void setRockSpeed(float scale) { rockSpeed = scale; }
+
+	public boolean isEndless() { return endless; }
+
+	public long getEndlessSeed() { return endlessSeed; }
+
+	/**
+	 * Play an endless level made from 'seed' instead of the map file.
+	 *
+	 * @param seed The seed for the level
+	 */
+	public void setEndless(long seed)
+	{
+		endless = true;
+		endlessSeed = seed;
+	}
+
+	/**
+	 * @return A copy of these settings, which can be changed separately
+	 */
+	public GameSettings copy()
+	{
+		GameSettings s = new GameSettings();
+		s.seed = seed;
+		s.wavesFile = wavesFile;
+		s.mapFile = mapFile;
+		s.gravity = gravity;
+		s.lift = lift;
+		s.rockSpeed = rockSpeed;
+		s.endless = endless;
+		s.endlessSeed = endlessSeed;
+		return s;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("seed %d, %s, %s, gravity %g, lift %g, rock speed x%.2f",
+				seed, endless ? "endless level " + endlessSeed : mapFile, wavesFile,
+				gravity, lift, rockSpeed);
+	}
+}
@@ -0,0 +1,808 @@
+package code;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * GameWorld holds the state of a game and the logic used to update it, kept
+ * apart from any window. Game wraps a GameWorld in a JFrame for normal play,
+ * while HeadlessRunner steps one directly so that rounds can be simulated on
+ * a machine without a display (run with -Djava.awt.headless=true).
+ *
+ * Given the same seed, the same tick lengths and the same input each tick,
+ * a GameWorld always plays out exactly the same way. All randomness comes
+ * from one GameRandom and all timing from update(), which is what lets
+ * ReplayRecorder and ReplayPlayer record and re-run a game.
+ *
+ * @author Cameron Morrison
+ */
+public class GameWorld
+{
+	// Bits of the input for one tick, see applyInput()
+	public static final int INPUT_FLAP = 1;		// The flap key is held down
+	public static final int INPUT_RESUME = 2;	// Start or un-pause the game
+	public static final int INPUT_DEBUG = 4;	// Turn the debug overlay on or off
+	public static final int INPUT_SKIP = 8;		// Jump to the end of the level
+
+	static final int STATE_VERSION = 1;		// Changes whenever writeState() does
+
+	// Frames of sound the output line buffers, about 12ms, which is most of the latency
+	public static final int DEFAULT_SOUND_BUFFER_FRAMES = 512;
+
+	// What a new world starts with, so settings can use them without making one
+	public static final int DEFAULT_SCREEN_WIDTH = 512;
+	public static final int DEFAULT_SCREEN_HEIGHT = 384;
+	public static final float DEFAULT_LIFT = 0.075f;
+	public static final float DEFAULT_GRAVITY = 0.0001f;
+	public static final float DEFAULT_ROCK_SPEED = 1.0f;	// Rocks move at the speeds in the waves file
+	public static final String DEFAULT_WAVES_FILE = "src/waves/normal.txt";
+	public static final String DEFAULT_MAP_FILE = "map.txt";
+
+	// Useful game constants
+	int screenWidth = DEFAULT_SCREEN_WIDTH;
+	int screenHeight = DEFAULT_SCREEN_HEIGHT;
+
+    float 	lift = DEFAULT_LIFT;		// Upward speed of a flap in pixels per ms
+    float	gravity = DEFAULT_GRAVITY;	// Downward acceleration in pixels per ms per ms
+
+    /**
+     * What the bird crashed into.
+     */
+    public enum Crash {
+    	ROCK,
+    	PIPE
+    }
+
+    // Game state flags
+    private boolean flap = false;
+    private boolean pause = true;
+    private boolean debugMode = true;
+    private boolean checkCollision;
+    private boolean soundEnabled = true;	// Headless runs turn this off
+    private SoftwareMixer mixer;			// Started the first time a sound is played
+    private int soundBufferFrames = DEFAULT_SOUND_BUFFER_FRAMES;
+
+    // Delayed game events, run from update() on the game loop thread
+    private GameScheduler scheduler = new GameScheduler();
+    private GameScheduler.Event resumeEvent;	// Un-pauses the game after a crash
+
+    // Game resources
+    Animation bird;
+    Animation rockAnim;
+    SpriteSheet birdSheet;
+
+    Sprite	player = null;
+    ObstaclePool rocks = null;		// Created in init() once we know how many are needed
+    private int [] nearbyRocks;		// Rocks found near the player by the broadphase
+    WaveSpawner waves = new WaveSpawner();
+    String wavesFile = DEFAULT_WAVES_FILE;
+    private long seed = System.nanoTime();	// Seed for everything random in the game
+    GameRandom random = new GameRandom(seed);
+
+    TileMap tmap = new TileMap();	// Our tile map, note that we load it in init()
+    private String mapFile = DEFAULT_MAP_FILE;	// The level tmap was loaded from
+    private String startMapFile;		// The level init() loaded, which restart() goes back to
+    LevelGenerator generator = null;	// Fills the map in endless mode, otherwise null
+
+    long total = 0;  // The score will be the total time elapsed since a crash
+
+    // Statistics, which are not part of the saved state
+    private int [] crashes = new int[Crash.values().length];	// Crashes of each kind
+    private int crashCount = 0;
+    private int levelsCompleted = 0;
+
+    /*Parallax images taken from free licensing publisher
+    https://digitalmoons.itch.io/free-parallax-desert-background-seamless and a pause button*/
+    private ParallaxBackground background;
+    private Image playBtn;
+
+    private double rotation = 90;
+    private int offsetMapX;
+    private int prevOffsetMapX;		// offsetMapX before the last tick, for interpolation
+
+    /**
+     * Load the tile map, images and animations used by the game and
+     * set up a new game. None of this needs a window.
+     *
+     * @return true if the tile map loaded successfully
+     */
+    public boolean init()
+    {
+        // Load the tile map and print it out so we can check it is valid
+        boolean loaded = tmap.loadMap("src/maps", mapFile);
+        startMapFile = mapFile;
+        // and get the next level ready so that switching to it is quick
+        LevelCache.preload("src/maps", "map2.txt");
+        if (soundEnabled) SampleCache.preload("src/sounds/caw.wav");
+
+        // Images and animations are loaded once and shared by every world
+        GameAssets assets = GameAssets.get();
+        if (assets == null) return false;
+
+		// Sky and moon never move so they are composited into one image, the mountains
+		// and desert scroll at different speeds to create a realistic illusion
+        background = assets.getBackground(screenWidth, screenHeight);
+        playBtn = assets.getPlayButton(screenWidth/5, screenHeight/8);
+
+        birdSheet = assets.birdSheet;
+        bird = new Animation(assets.bird);
+        player = new Sprite(bird);
+
+        rockAnim = assets.rock;
+        // Create enough rocks for the biggest wave, they are all kept in a pool
+        if (!waves.load(wavesFile)) waves.addWave(0, 3, 0.1f, 0.1f, 0);
+        rocks = new ObstaclePool(rockAnim, waves.getMaxPopulation());
+        // Grid cells must be at least as big as the player and a rock's radii added together
+        rocks.createGrid(64);
+        for (int i = 0; i < rocks.getCapacity(); i++)
+        	rocks.getSprite(i).setRotationCache(assets.rockRotations);
+        nearbyRocks = new int[rocks.getCapacity()];
+        initialiseGame();
+        return loaded;
+    }
+
+    /**
+     * Put the player and rocks back to their starting positions
+     * so that a new game can begin.
+     */
+    public void initialiseGame()
+    {
+    	offsetMapX = 200;
+    	prevOffsetMapX = offsetMapX;
+    	if (generator != null) {
+    		generator.reset(tmap);
+    		generator.update(tmap, offsetMapX, screenWidth);
+    	}
+        player.setX(64);
+        player.setY(200);
+        player.setVelocityX(0);
+        player.setVelocityY(0);
+        player.show();
+        checkCollision = true;
+        resetRocks();
+    }
+
+    /**
+     * Start a brand new game with 'seed', playing exactly as a new world
+     * set up the same way would, but without loading anything again. This
+     * is much quicker than making a new world, e.g. for playing many games
+     * one after another. Call this after init().
+     *
+     * @param seed The seed for everything random in the game, as for setSeed()
+     * @return true if the level loaded
+     */
+    public boolean restart(long seed)
+    {
+    	setSeed(seed);
+    	scheduler.cancelAll();
+    	resumeEvent = null;
+    	boolean loaded = true;
+    	if (generator == null) {
+    		// From the LevelCache, which also undoes any level change
+    		loaded = tmap.loadMap("src/maps", startMapFile);
+    		mapFile = startMapFile;
+    	}
+
+    	// A new player, so its animation starts from the beginning too
+    	bird = new Animation(GameAssets.get().bird);
+    	player = new Sprite(bird);
+    	background.reset();
+    	rotation = 90;
+    	total = 0;
+    	flap = false;
+    	pause = true;
+    	debugMode = true;
+    	Arrays.fill(crashes, 0);
+    	crashCount = 0;
+    	levelsCompleted = 0;
+
+    	// The same steps as init() and then setEndless(), so the rocks come
+    	// from the same random numbers as in a new world
+    	initialiseGame();
+    	if (generator != null) initialiseGame();
+    	return loaded;
+    }
+
+    /**
+     * Draw the current state of the game
+     *
+     * @param g		The graphics object to draw to
+     * @param alpha	How far between the previous and current tick to draw (0-1)
+     */
+    public void draw(Graphics2D g, float alpha)
+    {
+        //Parallax background
+        background.draw(g, alpha);
+
+        for (int i = 0; i < rocks.getActiveCount(); i++){
+        	rocks.getActive(i).drawTransformed(g, alpha);
+        }
+
+        player.draw(g, alpha);
+
+        // Apply offsets to tile map and draw it
+        tmap.draw(g,Math.round(prevOffsetMapX + (offsetMapX - prevOffsetMapX) * alpha),0);
+
+        // Show score and status information
+        String msg = String.format("Score: %d", total/100);
+        g.setFont(new Font("Verdana", Font.BOLD, 18));
+        g.setColor(Color.WHITE);
+        g.drawString(msg, screenWidth - 120, 50);
+
+
+        if(debugMode) {
+        	player.drawBoundingCircle(g);
+	        g.setColor(Color.white);
+	        for (int i = 0; i < rocks.getActiveCount(); i++) {
+	        	Sprite s = rocks.getActive(i);
+	        	s.drawBoundingCircle(g);
+	        	g.drawString("X:"+(int)s.getX(), s.getX(), s.getY());
+	        }
+	        g.drawString("Y:"+(int)player.getY(), player.getX(), player.getY());
+        }
+    	if(pause == true) {
+    		g.drawImage(playBtn, 200, 200, null);
+    	}
+    }
+
+    /**
+     * Take every rock out of play and start the waves again, which
+     * puts a fresh set of rocks off the screen to the right.
+     */
+    private void resetRocks() {
+    	rocks.clear();
+    	waves.reset();
+    	waves.update(0, rocks, random, screenWidth, screenHeight);
+	}
+
+	/**
+     * Update any sprite's and check for collisions
+     *
+     * @param elapsed The elapsed time between this call and the previous call of elapsed
+     */
+    public void update(long elapsed)
+    {
+    	prevOffsetMapX = offsetMapX;
+    	background.hold();
+    	scheduler.update(elapsed, pause);
+    	player.setAnimationSpeed(1.0f);
+        // Now update the sprite's animation and position
+        player.update(elapsed);
+
+    	if(pause == false) {
+    		//Increase score
+    		total++;
+	        // Make adjustments to the speed of the sprite due to gravity
+	        player.setVelocityY(player.getVelocityY()+(gravity*elapsed));
+
+	       	if (flap)
+	       	{
+	       		player.setAnimationSpeed(1.8f);
+	       		player.setVelocityY(-lift);
+	       	}
+
+	       	// Move the rocks, replacing any that have gone off the left of the screen
+	       	rocks.update(elapsed, -50);
+	       	waves.update(elapsed, rocks, random, screenWidth, screenHeight);
+	       	if (checkCollision) checkRockCollision(player);
+	       	rotation++;
+	       	for (int i = 0; i < rocks.getActiveCount(); i++)
+	       		rocks.getActive(i).setRotation(rotation);
+
+	       	// Move the tile map and background left
+        	offsetMapX--;
+        	if (generator != null) generator.update(tmap, offsetMapX, screenWidth);
+        	background.update(elapsed);
+
+	        // Then check for any collisions that may have occurred
+	        handleScreenEdge(player, tmap, elapsed);
+	        checkTileCollision(player, tmap);
+    	}
+    }
+
+    /**
+     * Checks and handles collisions with the edge of the screen
+     *
+     * @param s			The Sprite to check collisions for
+     * @param tmap		The tile map to check
+     * @param elapsed	How much time has gone by since the last call
+     */
+    public void handleScreenEdge(Sprite s, TileMap tmap, long elapsed)
+    {
+    	// This method just checks if the sprite has gone off the bottom screen.
+    	// Ideally you should use tile collision instead of this approach
+
+    	//If player is too low
+        if (s.getY() + s.getHeight() > tmap.getPixelHeight())
+        {
+        	// Put the player back on the map 1 pixel above the bottom
+        	s.setY(tmap.getPixelHeight() - s.getHeight() - 1);
+
+        	// and make them bounce
+        	s.setVelocityY(-s.getVelocityY());
+        }
+        //If player is too high
+        if(s.getY() - s.getHeight() < 0) {
+        	//don't let player go above map
+        	s.setY(0 + s.getHeight() + 1);
+        }
+    }
+
+    //Makes a bird noise
+    public void caw() {
+    	if (!soundEnabled) return;
+    	if (mixer == null)
+    	{
+    		mixer = new SoftwareMixer(new LineOutput(), 8, 256, soundBufferFrames);
+    		// If there's no sound card, give up on sound
+    		if (!mixer.start()) { soundEnabled = false; return; }
+    	}
+    	mixer.play(SampleCache.get("src/sounds/caw.wav"), 1.0f, 0);
+    }
+
+    /**
+     * Checks and handles collisions between the given sprite and the rocks.
+     * The sprite is swept along its move for this tick so a long tick can't
+     * carry it through a rock, and is put back where it first hit one.
+     *
+     * @param s	The Sprite to check collisions for
+     */
+    public void checkRockCollision(Sprite s)
+    {
+    	// Only check the rocks the grid says are near the sprite's path. The
+    	// grid files rocks where they are now, so the path is grown by the
+    	// furthest a rock moved this tick to find any that crossed it earlier
+    	float cx = s.getWidth() / 2.0f;
+    	float cy = s.getHeight() / 2.0f;
+    	float move = rocks.getMaxMove();
+    	int nearby = rocks.getGrid().query(
+    			Math.min(s.getPrevX(), s.getX()) + cx - move, Math.min(s.getPrevY(), s.getY()) + cy - move,
+    			Math.max(s.getPrevX(), s.getX()) + cx + move, Math.max(s.getPrevY(), s.getY()) + cy + move, nearbyRocks);
+
+    	float hit = -1;
+    	for (int i = 0; i < nearby; i++)
+    		hit = Collision.earliest(hit, Collision.sweep(s, rocks.getSprite(nearbyRocks[i])));
+
+    	if (hit >= 0) {
+    		s.rewindTo(hit);
+    		handleCollison(s, Crash.ROCK);
+    	}
+    }
+
+    public boolean boundingBoxCollision(Sprite s1, Sprite s2)
+    {
+    	// The circles are a cheap first test, the masks give exact hits
+    	return Collision.circlesOverlap(s1, s2) && Collision.masksOverlap(s1, s2);
+    }
+
+    /**
+     * Check and handles collisions with a tile map for the
+     * given sprite 's'. Initial functionality is limited...
+     *
+     * @param s			The Sprite to check collisions for
+     * @param tmap		The tile map to check
+     */
+
+	public void checkTileCollision(Sprite s, TileMap tmap)
+    {
+    	// Sweep the sprite's circle along its move through the map this tick,
+    	// which includes the map scrolling, so it can't pass through a pipe
+    	float r = s.getRadius();
+    	float sx = s.getX() + r - offsetMapX;
+    	float sy = s.getY() + r;
+    	float hit = tmap.sweepCircle(s.getPrevX() + r - prevOffsetMapX, s.getPrevY() + r, sx, sy, r);
+
+    	if (hit >= 0)
+    	{
+    		s.rewindTo(hit);
+    		handleCollison(s, Crash.PIPE);
+    		return;
+    	}
+
+    	// The end of the level is reached when the bird flies off the right of the map
+    	if (tmap.isWrapped() || sx + r < tmap.getPixelWidth()) return;
+		if(offsetMapX > -500) {
+			return;
+		}
+		checkCollision = false;
+		levelsCompleted++;
+		s.setVelocityY(0);
+		s.setVelocityX(0.3f);
+		// Don't let a pending resume from a crash interrupt the level change
+		if (resumeEvent != null) resumeEvent.cancel();
+		//After two seconds, once the animation is done, start the new level
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				changeLevel();
+				initialiseGame();
+				pause = false;
+			}
+		}, 2000);
+		pause = true;
+    }
+
+    //If collision happens
+    private void handleCollison(Sprite s, Crash cause) {
+		crashes[cause.ordinal()]++;
+		crashCount++;
+		caw();
+		pause = true;
+		total = 0;
+		resetRocks();
+		//After one second, resume
+		if (resumeEvent != null) resumeEvent.cancel();
+		resumeEvent = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				pause = false;
+			}
+		}, 1000);
+		s.stop();
+		offsetMapX = offsetMapX + s.getWidth() * 3;
+		prevOffsetMapX = offsetMapX;
+		s.setY(screenWidth/2 - s.getHeight());
+    }
+
+	/**
+	 * Use the spawn waves in 'path' (see WaveSpawner). Call this before init().
+	 *
+	 * @param path The waves file, e.g. src/waves/hard.txt
+	 */
+	public void setWavesFile(String path) { wavesFile = path; }
+
+	/**
+	 * @return The waves file the rocks are spawned from
+	 */
+	public String getWavesFile() { return wavesFile; }
+
+	/**
+	 * Start on the level in 'mapfile' in src/maps. Call this before init().
+	 *
+	 * @param mapfile The level, e.g. map.txt
+	 */
+	public void setMapFile(String mapfile) { mapFile = mapfile; }
+
+	/**
+	 * @return The level currently being played
+	 */
+	public String getMapFile() { return mapFile; }
+
+	/**
+	 * @param gravity Downward acceleration of the bird in pixels per ms per ms
+	 */
+	public void setGravity(float gravity) { this.gravity = gravity; }
+
+	public float getGravity() { return gravity; }
+
+	/**
+	 * @param lift Upward speed a flap gives the bird in pixels per ms
+	 */
+	public void setLift(float lift) { this.lift = lift; }
+
+	public float getLift() { return lift; }
+
+	/**
+	 * @param scale What to multiply the speed of every rock by, 1 for the waves file's speeds
+	 */
+	public void setRockSpeed(float scale) { waves.setSpeedScale(scale); }
+
+	public float getRockSpeed() { return waves.getSpeedScale(); }
+
+	/**
+	 * @param cause What the bird crashed into
+	 * @return The number of times the bird has crashed into 'cause'
+	 */
+	public int getCrashes(Crash cause) { return crashes[cause.ordinal()]; }
+
+	/**
+	 * @return The number of times the bird has crashed into anything
+	 */
+	public int getCrashCount() { return crashCount; }
+
+	/**
+	 * @return The number of times the end of a level has been reached
+	 */
+	public int getLevelsCompleted() { return levelsCompleted; }
+
+	/**
+	 * @return The pool of rocks
+	 */
+	public ObstaclePool getRocks() { return rocks; }
+
+	/**
+	 * Switch to an endless level made by a LevelGenerator with the given
+	 * seed and start a new game on it. Call this after init(). The level
+	 * takes its tile size, height and pipe images from the map file.
+	 *
+	 * @param seed The seed for the level, the same seed gives the same level
+	 * @return true if it worked, false if the map file couldn't be loaded, in
+	 * 			which case the world is left as it was
+	 */
+	public boolean setEndless(long seed) {
+		LevelGenerator levelGenerator = new LevelGenerator(seed);
+		TileMap map = levelGenerator.createMap("src/maps", mapFile);
+		if (map == null) return false;
+		generator = levelGenerator;
+		tmap = map;
+		initialiseGame();
+		return true;
+	}
+
+	public void changeLevel() {
+		mapFile = "map2.txt";
+		tmap.loadMap("src/maps", mapFile);
+	}
+
+	/**
+	 * Apply the player's input for the next tick. Everything the player can
+	 * do to the game goes through here so that it can be recorded.
+	 *
+	 * @param input The INPUT_ bits for the tick
+	 */
+	public void applyInput(int input) {
+		flap = (input & INPUT_FLAP) != 0;
+		if ((input & INPUT_RESUME) != 0) pause = false;
+		if ((input & INPUT_DEBUG) != 0) toggleDebugMode();
+		if ((input & INPUT_SKIP) != 0) skipToLevelEnd();
+	}
+
+	/**
+	 * Use 'seed' for everything random in the game. Call this before init().
+	 *
+	 * @param seed The seed, the same seed and input give the same game
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		random.setSeed(seed);
+	}
+
+	/**
+	 * @return The seed everything random in the game came from
+	 */
+	public long getSeed() { return seed; }
+
+	/**
+	 * @return true if writeState() can be used now. It can't while a delayed
+	 * event (e.g. resuming after a crash) is waiting to run.
+	 */
+	public boolean canSaveState() { return !scheduler.hasPending(); }
+
+	/**
+	 * Save everything about the game that changes as it is played, so that
+	 * readState() can carry on from exactly this point. Images, sounds and
+	 * settings such as the waves file are not saved.
+	 *
+	 * @param out Where to write the state
+	 * @throws IOException If the state could not be written
+	 * @throws IllegalStateException If canSaveState() is false
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		if (!canSaveState()) throw new IllegalStateException("Can't save while events are pending");
+		out.writeInt(STATE_VERSION);
+		out.writeUTF(mapFile);
+		out.writeBoolean(generator != null);
+		if (generator != null) generator.writeState(out);
+		tmap.writeState(out);
+		out.writeLong(random.getState());
+		player.writeState(out);
+		rocks.writeState(out);
+		waves.writeState(out);
+		background.writeState(out);
+		out.writeInt(offsetMapX);
+		out.writeInt(prevOffsetMapX);
+		out.writeDouble(rotation);
+		out.writeLong(total);
+		out.writeBoolean(flap);
+		out.writeBoolean(pause);
+		out.writeBoolean(debugMode);
+		out.writeBoolean(checkCollision);
+	}
+
+	/**
+	 * Carry on from a state saved by writeState(). The world must have been
+	 * set up the same way (init(), setEndless() and the waves file) as the
+	 * one that saved it. If this fails the world is left part way between.
+	 *
+	 * @param in Where to read the state from
+	 * @throws IOException If the state could not be read
+	 */
+	public void readState(DataInput in) throws IOException {
+		if (in.readInt() != STATE_VERSION) throw new IOException("Saved state is from a different version");
+		String savedMap = in.readUTF();
+		if (in.readBoolean() != (generator != null)) throw new IOException("Saved state is from a different kind of level");
+		if (generator != null) {
+			generator.readState(in);
+		} else if (!savedMap.equals(mapFile)) {
+			if (!tmap.loadMap("src/maps", savedMap)) throw new IOException("Failed to load " + savedMap);
+			mapFile = savedMap;
+		}
+		tmap.readState(in);
+		scheduler.cancelAll();
+		resumeEvent = null;
+		random.setState(in.readLong());
+		player.readState(in);
+		rocks.readState(in);
+		waves.readState(in);
+		background.readState(in);
+		offsetMapX = in.readInt();
+		prevOffsetMapX = in.readInt();
+		rotation = in.readDouble();
+		total = in.readLong();
+		flap = in.readBoolean();
+		pause = in.readBoolean();
+		debugMode = in.readBoolean();
+		checkCollision = in.readBoolean();
+	}
+
+	/**
+	 * @return The state of the game as an array, see writeState()
+	 * @throws IllegalStateException If canSaveState() is false
+	 */
+	public byte [] saveState() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			writeState(new DataOutputStream(bytes));
+		} catch (IOException e) {
+			// Can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Carry on from a state returned by saveState().
+	 *
+	 * @param state The saved state
+	 * @return true if the state was loaded
+	 */
+	public boolean loadState(byte [] state) {
+		try {
+			readState(new DataInputStream(new ByteArrayInputStream(state)));
+			return true;
+		} catch (IOException e) {
+			System.err.println("Failed to load game state:" + e);
+			return false;
+		}
+	}
+
+	/**
+	 * A hash of the parts of the game state that matter for how it plays.
+	 * Two runs with the same seed and input should have the same hash after
+	 * every tick; the first tick they differ on is where they went apart.
+	 *
+	 * @return The hash
+	 */
+	public int stateHash() {
+		long h = 0;
+		h = mix(h, random.getState());
+		h = mix(h, Float.floatToIntBits(player.getX()));
+		h = mix(h, Float.floatToIntBits(player.getY()));
+		h = mix(h, Float.floatToIntBits(player.getVelocityX()));
+		h = mix(h, Float.floatToIntBits(player.getVelocityY()));
+		h = mix(h, offsetMapX);
+		h = mix(h, total);
+		h = mix(h, (pause ? 1 : 0) | (flap ? 2 : 0) | (checkCollision ? 4 : 0));
+		h = mix(h, rocks.getActiveCount());
+		for (int i = 0; i < rocks.getActiveCount(); i++) {
+			Sprite s = rocks.getActive(i);
+			h = mix(h, Float.floatToIntBits(s.getX()));
+			h = mix(h, Float.floatToIntBits(s.getY()));
+		}
+		return (int)(h ^ (h >>> 32));
+	}
+
+	private static long mix(long h, long v) {
+		h = (h ^ v) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	/**
+	 * @param flapping True while the player is holding the flap key
+	 */
+	public void setFlap(boolean flapping) { flap = flapping; }
+
+	/**
+	 * @param paused True to pause the game, false to (re)start it
+	 */
+	public void setPaused(boolean paused) { pause = paused; }
+
+	/**
+	 * @return True if the game is currently paused
+	 */
+	public boolean isPaused() { return pause; }
+
+	/**
+	 * Turn the debug overlay (bounding circles and positions) on or off
+	 */
+	public void toggleDebugMode() { debugMode = !debugMode; }
+
+	/**
+	 * @return True if the debug overlay is being drawn
+	 */
+	public boolean isDebugMode() { return debugMode; }
+
+	/**
+	 * @param enabled False to stop the game making any sounds
+	 */
+	public void setSoundEnabled(boolean enabled) { soundEnabled = enabled; }
+
+	/**
+	 * Set how much sound the output line buffers. Smaller is quicker to
+	 * hear but more likely to stutter on a slow machine. Only affects a
+	 * mixer that hasn't been started yet.
+	 *
+	 * @param frames Frames to buffer, at least the mixer's 256 frame block
+	 */
+	public void setSoundBufferFrames(int frames) { soundBufferFrames = frames; }
+
+	/**
+	 * Debug helper that jumps the map to just before the end of the level
+	 */
+	public void skipToLevelEnd() { offsetMapX = prevOffsetMapX = -1650; }
+
+	/**
+	 * @return The player's sprite
+	 */
+	public Sprite getPlayer() { return player; }
+
+	/**
+	 * @return The scheduler for delayed game events, which is driven by update()
+	 */
+	public GameScheduler getScheduler() { return scheduler; }
+
+	/**
+	 * @return The mixer sounds are played through, or null if no sound has been played yet
+	 */
+	public SoftwareMixer getMixer() { return mixer; }
+
+	/**
+	 * @return The sheet the bird was loaded from, which records how long it took to load
+	 */
+	public SpriteSheet getBirdSheet() { return birdSheet; }
+
+	/**
+	 * @return The generator making the level in endless mode, otherwise null
+	 */
+	public LevelGenerator getGenerator() { return generator; }
+
+	/**
+	 * @return The tile map currently being played
+	 */
+	public TileMap getTileMap() { return tmap; }
+
+	/**
+	 * @return How far the tile map has been shifted in pixels
+	 */
+	public int getOffsetMapX() { return offsetMapX; }
+
+	/**
+	 * @return The number of ticks since the last crash
+	 */
+	public long getTotal() { return total; }
+
+	/**
+	 * @return The score shown on screen
+	 */
+	public long getScore() { return total/100; }
+
+	/**
+	 * @return The width of the game screen in pixels
+	 */
+	public int getScreenWidth() { return screenWidth; }
+
+	/**
+	 * @return The height of the game screen in pixels
+	 */
+	public int getScreenHeight() { return screenHeight; }
+}
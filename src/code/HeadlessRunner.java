@@ -0,0 +1,91 @@
+package code;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * HeadlessRunner simulates a round of the game without opening a window,
+ * stepping the GameWorld as fast as the CPU allows. A very simple autopilot
+ * (AutopilotPolicy) flaps whenever the bird drops below the middle of the screen.
+ * 
+ * Usage: java -Djava.awt.headless=true code.HeadlessRunner [ticks] [renderEvery] [outFolder|-] [seed|-] [replayFile]
+ * 
+ * If a seed is given the round is played on an endless level generated from it,
+ * with the rocks spawned from the same seed, so every run is the same. If a
+ * replay file is given the run is recorded into it (see ReplayPlayer).
+ * If 'renderEvery' is greater than 0, every n'th tick is also drawn with an
+ * OffscreenRenderer and, if 'outFolder' is given, saved as a PNG.
+ * 
+ * @author Cameron Morrison
+ */
+public class HeadlessRunner {
+
+	static final long TICK_MILLIS = 10;	// Same tick length as GameCore's default
+	
+	public static void main(String[] args) throws IOException
+	{
+		System.setProperty("java.awt.headless", "true");
+		
+		int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int renderEvery = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		File outFolder = args.length > 2 && !args[2].equals("-") ? new File(args[2]) : null;
+		
+		boolean endless = args.length > 3 && !args[3].equals("-");
+		long seed = endless ? Long.parseLong(args[3]) : 0;
+		
+		GameWorld world = new GameWorld();
+		world.setSoundEnabled(false);
+		if (endless) world.setSeed(seed);
+		if (!world.init() || (endless && !world.setEndless(seed)))
+		{
+			System.err.println("Failed to load the game");
+			return;
+		}
+		System.out.println("Loaded " + world.getBirdSheet());
+		ReplayRecorder recorder = args.length > 4 ? new ReplayRecorder(world) : null;
+		
+		OffscreenRenderer renderer = null;
+		if (renderEvery > 0)
+		{
+			renderer = new OffscreenRenderer(world.getScreenWidth(), world.getScreenHeight());
+			if (outFolder != null) outFolder.mkdirs();
+		}
+		
+		Policy autopilot = new AutopilotPolicy();
+		long bestScore = 0;
+		long start = System.nanoTime();
+		for (int t=0; t<ticks; t++)
+		{
+			int input = autopilot.act(world);
+			if (t == 0) input |= GameWorld.INPUT_RESUME;
+			if (recorder != null)
+			{
+				recorder.tick(input, TICK_MILLIS);
+			}
+			else
+			{
+				world.applyInput(input);
+				world.update(TICK_MILLIS);
+			}
+			bestScore = Math.max(bestScore, world.getScore());
+			
+			if (renderer != null && t % renderEvery == 0)
+			{
+				renderer.render(world, 1.0f);
+				if (outFolder != null)
+					renderer.save(new File(outFolder, String.format("frame%07d.png", t)));
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		
+		System.out.println("Ticks: " + ticks);
+		System.out.println("Best score: " + bestScore);
+		System.out.printf("Time: %.1f ms (%.0f ticks/sec)%n", nanos / 1e6, ticks / (nanos / 1e9));
+		
+		if (recorder != null && recorder.getLog().save(new File(args[4])))
+			System.out.println("Recorded " + args[4] + " (" + new File(args[4]).length() + " bytes)");
+		if (renderer != null) renderer.dispose();
+		// Make sure nothing left running keeps the JVM alive
+		System.exit(0);
+	}
+}
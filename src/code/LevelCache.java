@@ -0,0 +1,84 @@
+package code;
+
+import java.awt.Image;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.ImageIcon;
+
+/**
+ * LevelCache keeps every level that has been loaded, along with the tile
+ * images they use, for the life of the program. Loading a level that has
+ * already been seen then only costs a copy of its grid rather than reading
+ * the file and decoding its images again. Tile images are shared between
+ * all levels and maps that use the same file.
+ * 
+ * @author Cameron Morrison
+ */
+public class LevelCache {
+
+	private static final ConcurrentHashMap<String,LevelData> levels = new ConcurrentHashMap<String,LevelData>();
+	private static final ConcurrentHashMap<String,Image> images = new ConcurrentHashMap<String,Image>();
+	
+	/**
+	 * Gets the level in 'mapfile' in 'folder', reading it the first time it is
+	 * asked for. Files ending in ".lvl" are read as compiled levels, anything
+	 * else as a text tile map.
+	 * 
+	 * @param folder	The folder the level and its images are in
+	 * @param mapfile	The name of the level file in 'folder'
+	 * @return The level, or null if it could not be loaded
+	 */
+	public static LevelData get(String folder, String mapfile)
+	{
+		String path = folder + "/" + mapfile;
+		LevelData level = levels.get(path);
+		if (level != null) return level;
+		
+		if (mapfile.endsWith(LevelFile.EXTENSION))
+			level = LevelFile.readBinary(folder, mapfile);
+		else
+			level = LevelFile.readText(folder, mapfile);
+		
+		// Failed loads aren't cached so they can be retried
+		if (level == null) return null;
+		LevelData existing = levels.putIfAbsent(path, level);
+		return existing != null ? existing : level;
+	}
+	
+	/**
+	 * Load a level ahead of time so that switching to it later is quick.
+	 * 
+	 * @param folder	The folder the level and its images are in
+	 * @param mapfile	The name of the level file in 'folder'
+	 * @return true if the level loaded successfully
+	 */
+	public static boolean preload(String folder, String mapfile)
+	{
+		return get(folder, mapfile) != null;
+	}
+	
+	/**
+	 * Gets the decoded image in file 'path', decoding it the first time.
+	 * 
+	 * @param path The path to the image file
+	 * @return The image
+	 */
+	public static Image getImage(String path)
+	{
+		Image img = images.get(path);
+		if (img != null) return img;
+		
+		img = new ImageIcon(path).getImage();
+		Image existing = images.putIfAbsent(path, img);
+		return existing != null ? existing : img;
+	}
+	
+	/**
+	 * Forget all of the levels and images, e.g. after a map file has changed.
+	 */
+	public static void clear()
+	{
+		levels.clear();
+		images.clear();
+	}
+}
@@ -0,0 +1,56 @@
+package code;
+
+import java.awt.Image;
+
+/**
+ * LevelData is a parsed tile map level: its dimensions, the table of tile
+ * types (character, image file and decoded image for each tile id) and the
+ * grid of tile ids, stored column by column. It is produced by LevelFile,
+ * shared through LevelCache and copied into a TileMap by TileMap.load().
+ * Treat it as read only once it has been built.
+ * 
+ * @author Cameron Morrison
+ */
+public class LevelData {
+
+	final int mapWidth;			// The maps width in tiles
+	final int mapHeight;		// The maps height in tiles
+	final int tileWidth;		// The width of a tile in pixels
+	final int tileHeight;		// The height of a tile in pixels
+	
+	final char [] tileChars;	// The character for each tile id, id 0 is always '.'
+	final String [] tileFiles;	// The image file for each tile id, null if it has none
+	final Image [] tileImages;	// The decoded image for each tile id, null if it has none
+	final byte [] grid;			// The tile id of each cell, the cell at x,y is at x*mapHeight + y
+	
+	/**
+	 * Create a level from its parts. The arrays are kept, not copied.
+	 */
+	LevelData(int mapWidth, int mapHeight, int tileWidth, int tileHeight,
+			char [] tileChars, String [] tileFiles, Image [] tileImages, byte [] grid)
+	{
+		this.mapWidth = mapWidth;
+		this.mapHeight = mapHeight;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.tileChars = tileChars;
+		this.tileFiles = tileFiles;
+		this.tileImages = tileImages;
+		this.grid = grid;
+	}
+	
+	/**
+	 * @return The number of different tile types in the level
+	 */
+	public int getTileTypes() { return tileChars.length; }
+	
+	/**
+	 * @return The map width in tiles
+	 */
+	public int getMapWidth() { return mapWidth; }
+	
+	/**
+	 * @return The map height in tiles
+	 */
+	public int getMapHeight() { return mapHeight; }
+}
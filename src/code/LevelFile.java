@@ -0,0 +1,355 @@
+package code;
+
+import java.awt.Image;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * LevelFile reads and writes levels. Levels can be stored either in the
+ * text format described in TileMap or in a compiled binary format that
+ * can be memory mapped and read without any parsing:
+
+int   magic			'F' 'B' 'L' 'V'
+short version		Currently 1
+int   mapWidth, mapHeight, tileWidth, tileHeight
+short tileTypes		Then for each tile id, starting at 0:
+  char  character
+  short length of image file name in bytes (0 if the tile has no image)
+  byte  image file name, UTF-8
+byte  grid[mapWidth*mapHeight]	Tile id of each cell, column by column
+
+ * All values are big endian. Image file names are relative to the folder
+ * the level is in. Run main() to compile a text map:
+ *
+ * java code.LevelFile src/maps map.txt map.lvl
+ *
+ * @author Cameron Morrison
+ */
+public class LevelFile {
+
+	static final int MAGIC = ('F' << 24) | ('B' << 16) | ('L' << 8) | 'V';
+	static final short VERSION = 1;
+	static final String EXTENSION = ".lvl";
+
+	/**
+	 * Compile a text map into a binary level.
+	 *
+	 * @param args	The folder, the text map file and the binary file to write
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: java code.LevelFile <folder> <map.txt> <map" + EXTENSION + ">");
+			return;
+		}
+
+		LevelData level = readText(args[0], args[1]);
+		if (level == null) return;
+		try
+		{
+			writeBinary(level, args[0], args[2]);
+			System.out.println("Wrote " + args[0] + "/" + args[2]);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to write level '" + args[2] + "':" + e);
+		}
+	}
+
+	/**
+	 * Reads a text tile map (see TileMap for the format) called 'mapfile'
+	 * from 'folder', whose images are also in 'folder'.
+	 *
+	 * @param folder	The folder the tile map and images are located in
+	 * @param mapfile	The name of the map file in the map folder
+	 * @return The level, or null if it failed to load
+	 */
+	public static LevelData readText(String folder, String mapfile)
+	{
+		// Create a full path to the tile map by sticking the folder and mapfile together
+		String path = folder + "/" + mapfile;
+		int row=0;
+		int mapWidth, mapHeight, tileWidth, tileHeight;
+		byte [] grid = null;
+		TileTable table = new TileTable();
+
+		try
+		{
+			BufferedReader in = new BufferedReader(new FileReader(path));
+			String line="";
+			String trimmed="";
+			String [] vals;
+
+			// Read the first line of the tile map to find out
+			// the relevant dimensions of the map plus the tiles
+			line = in.readLine();
+			vals = line.split(" ");
+			// Check that we read 4 values
+			if (vals.length != 4)
+			{
+				System.err.println("Incorrect number of parameters in the TileMap header:" + vals.length);
+				in.close();
+				return null;
+			}
+
+			// Read in the map dimensions
+			mapWidth = Integer.parseInt(vals[0]);
+			mapHeight = Integer.parseInt(vals[1]);
+			tileWidth = Integer.parseInt(vals[2]);
+			tileHeight = Integer.parseInt(vals[3]);
+
+			// Now look for the character assignments
+			while ((line = in.readLine()) != null)
+			{
+				trimmed = line.trim();
+				// Skip the current line if it's a comment
+				if (trimmed.startsWith("//")) continue;
+				// Break out of the loop if we find the map
+				if (trimmed.startsWith("#map")) break;
+
+				if (trimmed.charAt(0) == '#') // Look for a character to image map
+				{
+					// Extract the character and it's file name
+					table.setFile(trimmed.charAt(1), trimmed.substring(3,trimmed.length()));
+				}
+			}
+
+			// Check the map dimensione are at least > 0
+			if ((mapWidth > 0) && (mapHeight > 0))
+			{
+				grid = new byte[mapWidth * mapHeight];
+			}
+			else
+			{
+				System.err.println("Incorrect image map dimensions.");
+				trimmed = "";
+			}
+
+			// Now read in the tile map structure
+			if (trimmed.startsWith("#map"))
+			{
+				row=0;
+				while ((line = in.readLine()) != null)
+				{
+					if (line.trim().startsWith("//")) continue;
+
+					if (line.length() != mapWidth)
+					{
+						System.err.println("Incorrect line length in map");
+						System.err.println(row + " : " + line);
+						continue;
+					}
+
+					for (int col=0; col<mapWidth; col++)
+						grid[col * mapHeight + row] = (byte)table.idFor(line.charAt(col));
+					row++;
+
+					if (row >= mapHeight) break;
+				}
+			}
+
+			in.close();
+
+		}
+		catch (Exception e)
+		{
+			System.err.println("Failed to read in tile map '" + path + "':" + e);
+			return null;
+		}
+
+		if (row != mapHeight)
+		{
+			System.err.println("Map failed to load. Incorrect rows in map");
+			return null;
+		}
+
+		return table.build(folder, mapWidth, mapHeight, tileWidth, tileHeight, grid);
+	}
+
+	/**
+	 * Reads a compiled level called 'mapfile' from 'folder' by memory mapping it.
+	 *
+	 * @param folder	The folder the level and its images are located in
+	 * @param mapfile	The name of the level file in the folder
+	 * @return The level, or null if it failed to load
+	 */
+	public static LevelData readBinary(String folder, String mapfile)
+	{
+		Path path = Paths.get(folder, mapfile);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buf.getInt() != MAGIC || buf.getShort() != VERSION)
+			{
+				System.err.println("'" + path + "' is not a compiled level");
+				return null;
+			}
+
+			int mapWidth = buf.getInt();
+			int mapHeight = buf.getInt();
+			int tileWidth = buf.getInt();
+			int tileHeight = buf.getInt();
+			if (mapWidth <= 0 || mapHeight <= 0 || tileWidth <= 0 || tileHeight <= 0
+					|| (long)mapWidth * mapHeight > Integer.MAX_VALUE)
+			{
+				System.err.println("Incorrect image map dimensions.");
+				return null;
+			}
+
+			int types = buf.getShort();
+			if (types <= 0 || types > TileMap.MAX_TILE_TYPES)
+			{
+				System.err.println("'" + path + "' has " + types + " tile types");
+				return null;
+			}
+			char [] chars = new char[types];
+			String [] files = new String[types];
+			for (int id=0; id<types; id++)
+			{
+				chars[id] = buf.getChar();
+				int len = buf.getShort();
+				if (len == 0) continue;
+				byte [] name = new byte[len];
+				buf.get(name);
+				files[id] = new String(name, StandardCharsets.UTF_8);
+			}
+
+			// Check the size before making the grid, so a bad header can't ask for gigabytes
+			if ((long)mapWidth * mapHeight > buf.remaining())
+			{
+				System.err.println("'" + path + "' is too short for its map");
+				return null;
+			}
+			byte [] grid = new byte[mapWidth * mapHeight];
+			buf.get(grid);
+			for (int cell=0; cell<grid.length; cell++)
+			{
+				if ((grid[cell] & 0xFF) >= types)
+				{
+					System.err.println("'" + path + "' uses unknown tile type " + (grid[cell] & 0xFF));
+					return null;
+				}
+			}
+
+			return new LevelData(mapWidth, mapHeight, tileWidth, tileHeight,
+					chars, files, loadImages(folder, files), grid);
+		}
+		catch (Exception e)
+		{
+			System.err.println("Failed to read in level '" + path + "':" + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes 'level' as a compiled level called 'mapfile' in 'folder'.
+	 *
+	 * @param level		The level to write
+	 * @param folder	The folder to write to
+	 * @param mapfile	The name of the level file
+	 * @throws IOException If the file could not be written
+	 */
+	public static void writeBinary(LevelData level, String folder, String mapfile) throws IOException
+	{
+		int types = level.tileChars.length;
+		byte [][] names = new byte[types][];
+		int size = 4 + 2 + 4*4 + 2 + level.grid.length;
+
+		for (int id=0; id<types; id++)
+		{
+			names[id] = level.tileFiles[id] == null ? new byte[0]
+					: level.tileFiles[id].getBytes(StandardCharsets.UTF_8);
+			size += 2 + 2 + names[id].length;
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		buf.putInt(MAGIC).putShort(VERSION);
+		buf.putInt(level.mapWidth).putInt(level.mapHeight);
+		buf.putInt(level.tileWidth).putInt(level.tileHeight);
+		buf.putShort((short)types);
+		for (int id=0; id<types; id++)
+		{
+			buf.putChar(level.tileChars[id]);
+			buf.putShort((short)names[id].length);
+			buf.put(names[id]);
+		}
+		buf.put(level.grid);
+		buf.flip();
+
+		try (FileChannel channel = FileChannel.open(Paths.get(folder, mapfile),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (buf.hasRemaining()) channel.write(buf);
+		}
+	}
+
+	/**
+	 * Gets the (shared) image for each file name, or null where there is no file.
+	 */
+	private static Image [] loadImages(String folder, String [] files)
+	{
+		Image [] images = new Image[files.length];
+		for (int id=0; id<files.length; id++)
+		{
+			if (files[id] == null) continue;
+			images[id] = LevelCache.getImage(folder + "/" + files[id]);
+			if (images[id] == null)
+				System.err.println("Failed to load image '" + folder + "/" + files[id] + "'");
+		}
+		return images;
+	}
+
+	/**
+	 * Gives each tile character an id as a map is read. Id 0 is always
+	 * the blank '.' tile.
+	 */
+	private static class TileTable {
+
+		char [] chars = new char[TileMap.MAX_TILE_TYPES];
+		String [] files = new String[TileMap.MAX_TILE_TYPES];
+		int count = 0;
+
+		TileTable()
+		{
+			idFor('.');
+		}
+
+		int idFor(char ch)
+		{
+			for (int id=0; id<count; id++)
+				if (chars[id] == ch) return id;
+			if (count == chars.length)
+				throw new IllegalStateException("Too many tile types");
+			chars[count] = ch;
+			return count++;
+		}
+
+		void setFile(char ch, String file)
+		{
+			int id = idFor(ch);
+			// The blank tile is never drawn
+			if (id > 0) files[id] = file;
+		}
+
+		LevelData build(String folder, int mapWidth, int mapHeight, int tileWidth, int tileHeight, byte [] grid)
+		{
+			char [] c = new char[count];
+			String [] f = new String[count];
+			System.arraycopy(chars, 0, c, 0, count);
+			System.arraycopy(files, 0, f, 0, count);
+			return new LevelData(mapWidth, mapHeight, tileWidth, tileHeight,
+					c, f, loadImages(folder, f), grid);
+		}
+	}
+}
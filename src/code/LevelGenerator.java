@@ -0,0 +1,167 @@
+package code;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * LevelGenerator makes an endless level. It writes pipe columns into a
+ * small wrapping TileMap just ahead of the camera, overwriting columns that
+ * have already scrolled off the left of the screen, so memory use and the
+ * cost of a frame stay the same however long a run lasts. Every pipe has a
+ * gap the bird can fly through, and the same seed always gives the same level.
+ *
+ * @author Cameron Morrison
+ */
+public class LevelGenerator {
+
+	static final int RING_COLUMNS = 32;		// Columns kept in the map, a multiple of TileMap.CHUNK_COLUMNS
+	static final int LOOKAHEAD = 2;			// Columns generated past the right of the screen
+	static final int FIRST_PIPE = 8;		// Leave the columns before this empty
+
+	private long seed;
+	private GameRandom random;
+
+	private int spacing = 8;		// Columns from one pipe to the next
+	private int gapSize = 4;		// Height of the gap in each pipe in tiles
+	private int maxGapMove = 3;		// How far the gap can move between pipes in tiles
+
+	private int nextColumn;			// The next column to generate
+	private int lastGap;			// The row the last gap started at
+
+	/**
+	 * Create a generator for the level with the given seed.
+	 *
+	 * @param seed The seed for the level
+	 */
+	public LevelGenerator(long seed)
+	{
+		this.seed = seed;
+		random = new GameRandom(seed);
+	}
+
+	/**
+	 * Create the wrapping map that this generator will fill. It uses the
+	 * same tile size, height and pipe images as the tile map in 'mapfile'.
+	 *
+	 * @param folder	The folder the tile map is in
+	 * @param mapfile	A tile map with 'p', 't' and 'b' pipe tiles
+	 * @return The new map, or null if 'mapfile' couldn't be loaded
+	 */
+	public TileMap createMap(String folder, String mapfile)
+	{
+		LevelData level = LevelCache.get(folder, mapfile);
+		if (level == null) return null;
+
+		TileMap map = new TileMap();
+		map.create(RING_COLUMNS, level.mapHeight, level.tileWidth, level.tileHeight);
+		for (int id=1; id<level.getTileTypes(); id++)
+			map.setTileImage(level.tileChars[id], level.tileImages[id]);
+		map.setWrap(true);
+		reset(map);
+		return map;
+	}
+
+	/**
+	 * Go back to the start of the level and clear 'map'.
+	 *
+	 * @param map The map being filled by this generator
+	 */
+	public void reset(TileMap map)
+	{
+		random.setSeed(seed);
+		nextColumn = 0;
+		lastGap = (map.getMapHeight() - gapSize) / 2;
+		for (int x=0; x<map.getMapWidth(); x++)
+			clearColumn(map, x);
+	}
+
+	/**
+	 * Generate any columns that are about to come on screen.
+	 *
+	 * @param map			The map being filled by this generator
+	 * @param offsetMapX	How far the map has been shifted in pixels
+	 * @param screenWidth	The width of the screen in pixels
+	 */
+	public void update(TileMap map, int offsetMapX, int screenWidth)
+	{
+		int lastNeeded = Math.floorDiv(screenWidth - offsetMapX, map.getTileWidth()) + LOOKAHEAD;
+
+		// Don't overwrite anything that is still on screen
+		int firstVisible = Math.floorDiv(-offsetMapX, map.getTileWidth());
+		lastNeeded = Math.min(lastNeeded, firstVisible + map.getMapWidth() - 1);
+
+		while (nextColumn <= lastNeeded)
+		{
+			generateColumn(map, nextColumn);
+			nextColumn++;
+		}
+	}
+
+	/**
+	 * Write column 'x' of the level into 'map', replacing whatever
+	 * was in that part of the ring before.
+	 */
+	private void generateColumn(TileMap map, int x)
+	{
+		clearColumn(map, x);
+		if (x < FIRST_PIPE || x % spacing != 0) return;
+
+		int rows = map.getMapHeight();
+		int lowest = Math.max(1, lastGap - maxGapMove);
+		int highest = Math.min(rows - gapSize - 1, lastGap + maxGapMove);
+		int gap = lowest + random.nextInt(highest - lowest + 1);
+		lastGap = gap;
+
+		// Pipe hanging down to the gap, then a pipe standing up from it
+		for (int y=0; y<gap; y++)
+			map.setTileChar(y == gap - 1 ? 'b' : 'p', x, y);
+		for (int y=gap + gapSize; y<rows; y++)
+			map.setTileChar(y == gap + gapSize ? 't' : 'p', x, y);
+	}
+
+	private void clearColumn(TileMap map, int x)
+	{
+		for (int y=0; y<map.getMapHeight(); y++)
+			map.setTileChar('.', x, y);
+	}
+
+	/**
+	 * Save where the generator has got to, for GameWorld.writeState().
+	 * The columns it has already written are saved with the map.
+	 *
+	 * @param out Where to write the state
+	 * @throws IOException If the state could not be written
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		out.writeLong(random.getState());
+		out.writeInt(nextColumn);
+		out.writeInt(lastGap);
+	}
+
+	/**
+	 * Carry on from a state saved by writeState().
+	 *
+	 * @param in Where to read the state from
+	 * @throws IOException If the state could not be read
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		random.setState(in.readLong());
+		nextColumn = in.readInt();
+		lastGap = in.readInt();
+	}
+
+	/**
+	 * @return The seed for this level
+	 */
+	public long getSeed() { return seed; }
+
+	/**
+	 * Switch to the level made from 'seed'. It starts at the next reset().
+	 *
+	 * @param seed The seed for the level
+	 */
+	public void setSeed(long seed) { this.seed = seed; }
+}
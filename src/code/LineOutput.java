@@ -0,0 +1,46 @@
+package code;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * LineOutput sends mixed sound to the sound card through a SourceDataLine.
+ *
+ * @author Cameron Morrison
+ */
+public class LineOutput implements AudioOutput {
+
+	private SourceDataLine line;
+	private int frameSize;
+
+	@Override
+	public void open(AudioFormat format, int bufferFrames) throws Exception
+	{
+		frameSize = format.getFrameSize();
+		line = AudioSystem.getSourceDataLine(format);
+		line.open(format, bufferFrames * frameSize);
+		line.start();
+	}
+
+	@Override
+	public void write(byte [] data, int length)
+	{
+		line.write(data, 0, length);
+	}
+
+	@Override
+	public int getQueuedFrames()
+	{
+		return (line.getBufferSize() - line.available()) / frameSize;
+	}
+
+	@Override
+	public void close()
+	{
+		if (line == null) return;
+		line.stop();
+		line.close();
+		line = null;
+	}
+}
@@ -0,0 +1,79 @@
+package code;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * MixerBenchmark measures the SoftwareMixer without a sound card. First it
+ * mixes blocks as fast as it can with 'voices' sounds playing and reports
+ * how many times faster than real time that is, and how many bytes the mix
+ * loop allocated. Then it runs the mixer thread into a real time NullOutput,
+ * triggering a sound every 20ms, and reports the trigger latency.
+ *
+ * Usage: java code.MixerBenchmark [voices] [blockFrames] [bufferFrames] [sound]
+ *
+ * @author Cameron Morrison
+ */
+public class MixerBenchmark {
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int voices = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int blockFrames = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+		int bufferFrames = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+		String sound = args.length > 3 ? args[3] : "src/sounds/caw.wav";
+
+		Sample sample = SampleCache.get(sound);
+		if (sample == null) return;
+
+		// Throughput: mix on this thread into nothing
+		SoftwareMixer mixer = new SoftwareMixer(new NullOutput(false), voices, blockFrames, bufferFrames);
+		for (int v=0; v<voices; v++)
+			mixer.play(sample, 1.0f, v * 2.0f / voices - 1);
+		for (int i=0; i<1000; i++)
+			mixer.mixBlock();	// Warm up
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocated = allocatedBytes(threads);
+		int blocks = 0;
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < 2000000000L)
+		{
+			// Keep every voice busy
+			if (mixer.getActiveVoices() < voices)
+				mixer.play(sample, 1.0f, 0);
+			mixer.mixBlock();
+			blocks++;
+		}
+		long nanos = System.nanoTime() - start;
+		allocated = allocatedBytes(threads) - allocated;
+
+		double audioSeconds = (double)blocks * blockFrames / SoftwareMixer.SAMPLE_RATE;
+		System.out.printf("Mixing %d voices: %.1f us per %d frame block, %.0fx real time%n",
+				voices, nanos / 1e3 / blocks, blockFrames, audioSeconds / (nanos / 1e9));
+		if (allocated >= 0)
+			System.out.println("Allocated while mixing " + blocks + " blocks: " + allocated + " bytes");
+
+		// Latency: let the mixer thread drive a pretend sound card
+		NullOutput card = new NullOutput(true);
+		mixer = new SoftwareMixer(card, voices, blockFrames, bufferFrames);
+		mixer.start();
+		for (int i=0; i<100; i++)
+		{
+			mixer.play(sample, 1.0f, 0);
+			Thread.sleep(20);
+		}
+		mixer.stop();
+		System.out.printf("Latency with a %d frame buffer: %.1f ms average, %.1f ms max (%d frames played)%n",
+				bufferFrames, mixer.getAverageLatencyMillis(), mixer.getMaxLatencyMillis(), card.getFramesWritten());
+	}
+
+	/**
+	 * @return The bytes this thread has allocated, or -1 if the JVM can't tell
+	 */
+	private static long allocatedBytes(ThreadMXBean threads)
+	{
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
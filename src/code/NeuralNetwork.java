@@ -0,0 +1,83 @@
+package code;
+
+/**
+ * NeuralNetwork is a small fully connected feed-forward network with tanh
+ * activations. The network only knows its shape; the weights are passed to
+ * forward() as part of a flat float array, so a whole population of
+ * networks can live in one array and be run without copying.
+ *
+ * For each layer after the first, and for each neuron in it, the weights
+ * are the neuron's bias followed by one weight per neuron in the layer
+ * before. The buffers for each layer's outputs are made up front, so
+ * forward() allocates nothing. A network is not thread safe.
+ *
+ * @author Cameron Morrison
+ */
+public class NeuralNetwork {
+
+	private int [] layers;			// Neurons in each layer, inputs first
+	private float [][] values;		// The outputs of each layer from the last forward()
+	private int weightCount;
+
+	/**
+	 * @param layers The number of neurons in each layer, starting with the inputs
+	 */
+	public NeuralNetwork(int [] layers)
+	{
+		if (layers.length < 2) throw new IllegalArgumentException("A network needs at least 2 layers");
+		this.layers = layers.clone();
+		values = new float[layers.length][];
+		for (int l=0; l<layers.length; l++)
+			values[l] = new float[layers[l]];
+		for (int l=1; l<layers.length; l++)
+			weightCount += layers[l] * (layers[l - 1] + 1);
+	}
+
+	/**
+	 * Run the network.
+	 *
+	 * @param weights	Holds the weights, see above
+	 * @param offset	Where in 'weights' this network's weights start
+	 * @param input		The inputs, getInputCount() of them
+	 * @return The outputs, which are overwritten by the next call
+	 */
+	public float [] forward(float [] weights, int offset, float [] input)
+	{
+		float [] in = input;
+		int w = offset;
+		for (int l=1; l<layers.length; l++)
+		{
+			float [] out = values[l];
+			int inputs = layers[l - 1];
+			for (int j=0; j<out.length; j++)
+			{
+				float sum = weights[w++];
+				for (int i=0; i<inputs; i++)
+					sum += weights[w++] * in[i];
+				out[j] = (float)Math.tanh(sum);
+			}
+			in = out;
+		}
+		return in;
+	}
+
+	/**
+	 * @return The number of weights (including biases) a network of this shape needs
+	 */
+	public int getWeightCount() { return weightCount; }
+
+	/**
+	 * @return The number of inputs
+	 */
+	public int getInputCount() { return layers[0]; }
+
+	/**
+	 * @return The number of outputs
+	 */
+	public int getOutputCount() { return layers[layers.length - 1]; }
+
+	/**
+	 * @return The number of neurons in each layer, starting with the inputs
+	 */
+	public int [] getLayers() { return layers.clone(); }
+}
@@ -0,0 +1,65 @@
+package code;
+
+import java.io.File;
+
+/**
+ * NeuralPolicy plays the game with a NeuralNetwork: it reads the
+ * BirdSensors, runs the network and flaps if the output is above 0. The
+ * weights are a slice of a flat array, e.g. one genome in BotTrainer's
+ * population. Deciding what to do allocates nothing.
+ *
+ * A policy keeps buffers between ticks, so give each game its own.
+ *
+ * @author Cameron Morrison
+ */
+public class NeuralPolicy implements Policy {
+
+	private NeuralNetwork network;
+	private float [] weights;
+	private int offset;
+	private BirdSensors sensors = new BirdSensors();
+	private float [] input = new float[BirdSensors.COUNT];
+
+	/**
+	 * @param layers	The shape of the network, which must have BirdSensors.COUNT
+	 * 					inputs and 1 output
+	 * @param weights	Holds the network's weights (see NeuralNetwork)
+	 * @param offset	Where in 'weights' they start
+	 */
+	public NeuralPolicy(int [] layers, float [] weights, int offset)
+	{
+		network = new NeuralNetwork(layers);
+		if (network.getInputCount() != BirdSensors.COUNT || network.getOutputCount() != 1)
+			throw new IllegalArgumentException("Network must have " + BirdSensors.COUNT + " inputs and 1 output");
+		this.weights = weights;
+		this.offset = offset;
+	}
+
+	/**
+	 * Load the best genome in a BotTrainer checkpoint.
+	 *
+	 * @param file The checkpoint
+	 * @return The policy, or null if the checkpoint couldn't be read or its
+	 * 			networks don't fit the BirdSensors
+	 */
+	public static NeuralPolicy load(File file)
+	{
+		BotTrainer.Checkpoint c = BotTrainer.readCheckpoint(file);
+		if (c == null || c.getGenomeCount() == 0) return null;
+		int [] layers = c.getLayers();
+		if (layers[0] != BirdSensors.COUNT || layers[layers.length - 1] != 1)
+		{
+			System.err.println("Failed to load bot '" + file + "': network has " + layers[0] + " inputs and "
+					+ layers[layers.length - 1] + " outputs, not " + BirdSensors.COUNT + " and 1");
+			return null;
+		}
+		return new NeuralPolicy(layers, c.getGenome(0), 0);
+	}
+
+	@Override
+	public int act(GameWorld world)
+	{
+		sensors.read(world, input, 0);
+		return network.forward(weights, offset, input)[0] > 0 ? GameWorld.INPUT_FLAP : 0;
+	}
+}
@@ -0,0 +1,70 @@
+package code;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * NullOutput throws away everything written to it. In real time mode it
+ * pretends to be a sound card, taking frames at the sample rate and
+ * blocking when its buffer is full, so latency can be measured without
+ * one. Otherwise it takes frames as fast as they come, for measuring how
+ * quickly the mixer can work.
+ *
+ * @author Cameron Morrison
+ */
+public class NullOutput implements AudioOutput {
+
+	private boolean realtime;
+	private float frameRate;
+	private int frameSize;
+	private int bufferFrames;
+	private long startNanos;
+	private volatile long framesWritten;
+
+	/**
+	 * @param realtime true to take frames at the sample rate like a sound card
+	 */
+	public NullOutput(boolean realtime)
+	{
+		this.realtime = realtime;
+	}
+
+	@Override
+	public void open(AudioFormat format, int bufferFrames)
+	{
+		frameRate = format.getFrameRate();
+		frameSize = format.getFrameSize();
+		this.bufferFrames = bufferFrames;
+		framesWritten = 0;
+		startNanos = System.nanoTime();
+	}
+
+	@Override
+	public void write(byte [] data, int length)
+	{
+		framesWritten += length / frameSize;
+		if (!realtime) return;
+
+		// Wait until the pretend card has played enough for this to fit in its buffer
+		while (getQueuedFrames() > bufferFrames)
+		{
+			try { Thread.sleep(1); }
+			catch (InterruptedException e) { return; }
+		}
+	}
+
+	@Override
+	public int getQueuedFrames()
+	{
+		if (!realtime) return 0;
+		long played = (long)((System.nanoTime() - startNanos) / 1e9 * frameRate);
+		return (int)Math.max(0, framesWritten - played);
+	}
+
+	/**
+	 * @return The number of frames written since the output was opened
+	 */
+	public long getFramesWritten() { return framesWritten; }
+
+	@Override
+	public void close() { }
+}
@@ -0,0 +1,250 @@
+package code;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * ObstaclePool holds a fixed number of obstacle sprites that are all created
+ * up front. Spawning takes a sprite from a free list and despawning puts it
+ * back, so nothing is allocated during play. The active sprites are kept
+ * packed at the front of an index array so that updating and drawing only
+ * visit obstacles that are actually in play.
+ * 
+ * @author Cameron Morrison
+ */
+public class ObstaclePool {
+
+	private Sprite [] sprites;		// Every obstacle, active or not
+	private int [] free;			// Stack of the indices of unused sprites
+	private int freeCount;
+	private int [] active;			// Indices of the active sprites, packed at the front
+	private int [] activePos;		// Where each sprite is in 'active', -1 if it is free
+	private int activeCount;
+	
+	private SpatialGrid grid = null;	// Kept up to date with the active obstacles, if set
+	private float maxMove = 0;			// Furthest any obstacle moved across or down in the last update
+	
+	/**
+	 * Create a pool of 'capacity' obstacles that all show the frames of
+	 * 'anim'. Each obstacle gets its own copy of the animation so they
+	 * play back separately while sharing the frames.
+	 * 
+	 * @param anim		The animation to use for the obstacles
+	 * @param capacity	The most obstacles that can be active at once
+	 */
+	public ObstaclePool(Animation anim, int capacity)
+	{
+		sprites = new Sprite[capacity];
+		free = new int[capacity];
+		active = new int[capacity];
+		activePos = new int[capacity];
+		for (int i=0; i<capacity; i++)
+			sprites[i] = new Sprite(new Animation(anim));
+		clear();
+	}
+	
+	/**
+	 * Despawn every obstacle.
+	 */
+	public void clear()
+	{
+		if (grid != null) grid.clear();
+		activeCount = 0;
+		freeCount = sprites.length;
+		for (int i=0; i<sprites.length; i++)
+		{
+			// Fill the stack so that low indices are handed out first
+			free[i] = sprites.length - 1 - i;
+			activePos[i] = -1;
+			sprites[i].hide();
+		}
+	}
+	
+	/**
+	 * Bring an unused obstacle into play.
+	 * 
+	 * @param x		Starting x position in pixels
+	 * @param y		Starting y position in pixels
+	 * @param dx	Horizontal velocity in pixels per millisecond
+	 * @param dy	Vertical velocity in pixels per millisecond
+	 * @return The index of the obstacle, or -1 if the pool is full
+	 */
+	public int spawn(float x, float y, float dx, float dy)
+	{
+		if (freeCount == 0) return -1;
+		
+		int index = free[--freeCount];
+		activePos[index] = activeCount;
+		active[activeCount++] = index;
+		
+		Sprite s = sprites[index];
+		s.setPosition(x, y);
+		s.setVelocity(dx, dy);
+		s.show();
+		if (grid != null) grid.add(index, s);
+		return index;
+	}
+	
+	/**
+	 * Move obstacle 'index' straight to 'x,y', e.g. just after spawning it.
+	 * 
+	 * @param index	The index of the obstacle
+	 * @param x		The new x position in pixels
+	 * @param y		The new y position in pixels
+	 */
+	public void moveTo(int index, float x, float y)
+	{
+		sprites[index].setPosition(x, y);
+		if (grid != null && activePos[index] >= 0) grid.update(index);
+	}
+	
+	/**
+	 * Take obstacle 'index' out of play and return it to the pool.
+	 * 
+	 * @param index The index of the obstacle (as returned by spawn)
+	 */
+	public void despawn(int index)
+	{
+		int pos = activePos[index];
+		if (pos < 0) return;
+		
+		// Move the last active obstacle into the gap
+		int last = active[--activeCount];
+		active[pos] = last;
+		activePos[last] = pos;
+		
+		activePos[index] = -1;
+		free[freeCount++] = index;
+		sprites[index].hide();
+		if (grid != null) grid.remove(index);
+	}
+	
+	/**
+	 * Update every active obstacle and despawn any that have moved
+	 * further left than 'minX'.
+	 * 
+	 * @param elapsed	The time since the last update
+	 * @param minX		Obstacles with an x position less than this are despawned
+	 */
+	public void update(long elapsed, float minX)
+	{
+		// Go backwards so that despawning doesn't skip anything
+		maxMove = 0;
+		for (int i=activeCount-1; i>=0; i--)
+		{
+			Sprite s = sprites[active[i]];
+			s.update(elapsed);
+			maxMove = Math.max(maxMove, Math.max(Math.abs(s.getX() - s.getPrevX()), Math.abs(s.getY() - s.getPrevY())));
+			if (s.getX() < minX) despawn(active[i]);
+			else if (grid != null) grid.update(active[i]);
+		}
+	}
+	
+	/**
+	 * Save which obstacles are in play and where they are. The order of
+	 * the free stack is saved too, so the same obstacles are handed out
+	 * by spawn() after readState().
+	 * 
+	 * @param out Where to write the state
+	 * @throws IOException If the state could not be written
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		out.writeInt(sprites.length);
+		out.writeInt(freeCount);
+		for (int i=0; i<freeCount; i++)
+			out.writeInt(free[i]);
+		out.writeInt(activeCount);
+		for (int i=0; i<activeCount; i++)
+		{
+			out.writeInt(active[i]);
+			sprites[active[i]].writeState(out);
+		}
+	}
+	
+	/**
+	 * Put the pool back how it was when writeState() was called. The pool
+	 * must have the same capacity.
+	 * 
+	 * @param in Where to read the state from
+	 * @throws IOException If the state could not be read
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		if (in.readInt() != sprites.length) throw new IOException("Obstacle pool is a different size");
+		clear();
+		freeCount = in.readInt();
+		for (int i=0; i<freeCount; i++)
+			free[i] = in.readInt();
+		activeCount = in.readInt();
+		for (int i=0; i<activeCount; i++)
+		{
+			int index = in.readInt();
+			active[i] = index;
+			activePos[index] = i;
+			sprites[index].readState(in);
+			if (grid != null) grid.add(index, sprites[index]);
+		}
+	}
+	
+	/**
+	 * Create a SpatialGrid that holds the active obstacles, using their pool
+	 * indices as ids, and keep it up to date from now on.
+	 * 
+	 * @param cellSize The size of a grid cell, at least the diameter of an obstacle
+	 * @return The grid
+	 */
+	public SpatialGrid createGrid(float cellSize)
+	{
+		grid = new SpatialGrid(cellSize, sprites.length);
+		for (int i=0; i<activeCount; i++)
+			grid.add(active[i], sprites[active[i]]);
+		return grid;
+	}
+	
+	/**
+	 * @return The grid holding the active obstacles, or null if there isn't one
+	 */
+	public SpatialGrid getGrid() { return grid; }
+
+	/**
+	 * @return The furthest any obstacle moved across or down in the last
+	 * update(), in pixels
+	 */
+	public float getMaxMove() { return maxMove; }
+	
+	/**
+	 * @return The number of obstacles in play
+	 */
+	public int getActiveCount() { return activeCount; }
+	
+	/**
+	 * @return The most obstacles that can be in play at once
+	 */
+	public int getCapacity() { return sprites.length; }
+	
+	/**
+	 * Gets the i'th obstacle in play.
+	 * 
+	 * @param i	A number from 0 to getActiveCount()-1
+	 * @return The sprite for the obstacle
+	 */
+	public Sprite getActive(int i) { return sprites[active[i]]; }
+	
+	/**
+	 * Gets the pool index of the i'th obstacle in play, for use with despawn().
+	 * 
+	 * @param i	A number from 0 to getActiveCount()-1
+	 * @return The index of the obstacle
+	 */
+	public int getActiveIndex(int i) { return active[i]; }
+	
+	/**
+	 * Gets an obstacle by its pool index.
+	 * 
+	 * @param index The index of the obstacle
+	 * @return The sprite for the obstacle
+	 */
+	public Sprite getSprite(int index) { return sprites[index]; }
+}
@@ -0,0 +1,71 @@
+package code;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * OffscreenRenderer draws a GameWorld into a BufferedImage rather than
+ * a window. This works with java.awt.headless=true so the draw code can be
+ * exercised (and frames saved) on machines without a display.
+ * 
+ * @author Cameron Morrison
+ */
+public class OffscreenRenderer {
+
+	private BufferedImage buffer;	// The image we draw into
+	private Graphics2D g;			// Graphics device for the above image
+	
+	/**
+	 * Create a renderer with an image of the given size.
+	 * 
+	 * @param width		Width of the image in pixels
+	 * @param height	Height of the image in pixels
+	 */
+	public OffscreenRenderer(int width, int height)
+	{
+		buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		g = buffer.createGraphics();
+		g.setClip(0, 0, width, height);
+	}
+	
+	/**
+	 * Draw the current state of 'world' into the image.
+	 * 
+	 * @param world	The game to draw
+	 * @param alpha	How far between the previous and current tick to draw (0-1)
+	 * @return The image that was drawn to
+	 */
+	public BufferedImage render(GameWorld world, float alpha)
+	{
+		world.draw(g, alpha);
+		return buffer;
+	}
+	
+	/**
+	 * @return The image that frames are drawn to
+	 */
+	public BufferedImage getImage() { return buffer; }
+	
+	/**
+	 * Save the last rendered frame as a PNG file.
+	 * 
+	 * @param file The file to write to
+	 * @throws IOException If the file could not be written
+	 */
+	public void save(File file) throws IOException
+	{
+		ImageIO.write(buffer, "png", file);
+	}
+	
+	/**
+	 * Release the graphics device used by this renderer.
+	 */
+	public void dispose()
+	{
+		g.dispose();
+	}
+}
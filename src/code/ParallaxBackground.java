@@ -0,0 +1,219 @@
+package code;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * ParallaxBackground draws a set of full screen background layers. Layers
+ * that never move are composited once into a single opaque image, while
+ * scrolling layers are kept as screen compatible images that move left at
+ * their own speed and wrap around seamlessly.
+ * 
+ * Add the layers back to front and then call build() before drawing.
+ * 
+ * @author Cameron Morrison
+ */
+public class ParallaxBackground {
+
+	private int width;		// Width of the background in pixels
+	private int height;		// Height of the background in pixels
+	
+	private ArrayList<Image> staticImages = new ArrayList<Image>();
+	private ArrayList<Layer> layers = new ArrayList<Layer>();
+	private BufferedImage staticLayer = null;	// All of the static images in one
+	
+	/**
+	 * Create an empty background of the given size.
+	 * 
+	 * @param width		Width in pixels, usually the screen width
+	 * @param height	Height in pixels, usually the screen height
+	 */
+	public ParallaxBackground(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Create a background that draws the same images as 'other', which
+	 * must have been built. The images are shared, not copied, so this is
+	 * cheap; the copy scrolls on its own starting from the beginning.
+	 * 
+	 * @param other The background to copy
+	 */
+	public ParallaxBackground(ParallaxBackground other)
+	{
+		width = other.width;
+		height = other.height;
+		staticLayer = other.staticLayer;
+		for (Layer l : other.layers)
+			layers.add(new Layer(l.image, l.speed));
+	}
+	
+	/**
+	 * Add a layer that never moves. It will be scaled to fill the background.
+	 * 
+	 * @param img The image for the layer
+	 */
+	public void addStaticLayer(Image img)
+	{
+		if (img != null) staticImages.add(img);
+	}
+	
+	/**
+	 * Add a layer that scrolls left at 'speed' pixels per millisecond.
+	 * It will be scaled to fill the background.
+	 * 
+	 * @param img	The image for the layer
+	 * @param speed	How fast the layer moves in pixels per millisecond
+	 */
+	public void addScrollingLayer(Image img, float speed)
+	{
+		if (img == null) return;
+		layers.add(new Layer(CompatibleImages.copyOf(img, width, height, Transparency.TRANSLUCENT), speed));
+	}
+	
+	/**
+	 * Composite all of the static layers added so far into one opaque image.
+	 */
+	public void build()
+	{
+		staticLayer = CompatibleImages.create(width, height, Transparency.OPAQUE);
+		Graphics2D g = staticLayer.createGraphics();
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, width, height);
+		for (Image img : staticImages)
+			g.drawImage(img, 0, 0, width, height, null);
+		g.dispose();
+		
+		// We don't need the original images any more
+		staticImages.clear();
+	}
+	
+	/**
+	 * Move the scrolling layers on by 'elapsed' milliseconds.
+	 * 
+	 * @param elapsed The time since the last update
+	 */
+	public void update(long elapsed)
+	{
+		for (Layer l : layers)
+			l.update(elapsed);
+	}
+	
+	/**
+	 * Keep the scrolling layers where they are for the next draw,
+	 * e.g. when the game is paused.
+	 */
+	public void hold()
+	{
+		for (Layer l : layers)
+			l.prevOffset = l.offset;
+	}
+	
+	/**
+	 * Put all of the scrolling layers back to their starting position.
+	 */
+	public void reset()
+	{
+		for (Layer l : layers)
+			l.offset = l.prevOffset = 0;
+	}
+	
+	/**
+	 * Save how far each scrolling layer has moved.
+	 * 
+	 * @param out Where to write the state
+	 * @throws IOException If the state could not be written
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		for (Layer l : layers)
+		{
+			out.writeFloat(l.offset);
+			out.writeFloat(l.prevOffset);
+		}
+	}
+	
+	/**
+	 * Move the scrolling layers back to where they were when writeState()
+	 * was called. The background must have the same layers.
+	 * 
+	 * @param in Where to read the state from
+	 * @throws IOException If the state could not be read
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		for (Layer l : layers)
+		{
+			l.offset = in.readFloat();
+			l.prevOffset = in.readFloat();
+		}
+	}
+	
+	/**
+	 * @return The width of the background in pixels
+	 */
+	public int getWidth() { return width; }
+	
+	/**
+	 * @return The height of the background in pixels
+	 */
+	public int getHeight() { return height; }
+	
+	/**
+	 * Draw the background.
+	 * 
+	 * @param g		The graphics object to draw to
+	 * @param alpha	How far between the previous and current update to draw (0-1)
+	 */
+	public void draw(Graphics2D g, float alpha)
+	{
+		if (staticLayer == null) build();
+		g.drawImage(staticLayer, 0, 0, null);
+		
+		for (Layer l : layers)
+		{
+			int x = -Math.round(l.prevOffset + (l.offset - l.prevOffset) * alpha) % width;
+			if (x > 0) x -= width;
+			g.drawImage(l.image, x, 0, null);
+			g.drawImage(l.image, x + width, 0, null);
+		}
+	}
+	
+	/**
+	 * A scrolling layer and how far it has moved.
+	 */
+	private class Layer {
+		
+		BufferedImage image;	// The (screen compatible) image for this layer
+		float speed;			// Pixels per millisecond
+		float offset;			// How far the layer has scrolled, 0 to width
+		float prevOffset;		// offset before the last update
+		
+		Layer(BufferedImage image, float speed)
+		{
+			this.image = image;
+			this.speed = speed;
+		}
+		
+		void update(long elapsed)
+		{
+			prevOffset = offset;
+			offset += speed * elapsed;
+			// Wrap both so that we still interpolate the right way across the seam
+			while (offset >= width)
+			{
+				offset -= width;
+				prevOffset -= width;
+			}
+		}
+	}
+}
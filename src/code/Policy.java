@@ -0,0 +1,19 @@
+package code;
+
+/**
+ * A Policy decides what to press each tick when a GameWorld is played by
+ * the computer, e.g. by RolloutRunner. A policy may keep state between
+ * ticks, so give each game its own policy unless it says it can be shared.
+ *
+ * @author Cameron Morrison
+ */
+public interface Policy {
+
+	/**
+	 * Decide the input for the next tick.
+	 *
+	 * @param world	The game, as it is after the last tick
+	 * @return The GameWorld.INPUT_ bits to apply
+	 */
+	int act(GameWorld world);
+}
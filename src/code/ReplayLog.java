@@ -0,0 +1,318 @@
+package code;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * ReplayLog is a recording of a game: how the GameWorld was set up, the
+ * input and length of every tick, a hash of the state after every tick and
+ * a full saved state (keyframe) every so often for seeking.
+ *
+ * Input hardly ever changes from one tick to the next, so ticks are stored
+ * as runs of the same input and tick length, written as varints (7 bits a
+ * byte, the top bit set on all but the last byte). A minute of play is
+ * usually a few hundred bytes of input plus 4 bytes of hash per tick.
+ *
+ * The file is laid out as:
+
+magic "FBRP", version
+settings (see GameSettings)
+run count, then for each run: input, tick length, ticks       (varints)
+tick count, then a hash for each tick                          (ints)
+keyframe count, then for each: tick, length, saved state      (varints, bytes)
+
+ * The methods are synchronized so that a game can be saved by another
+ * thread, e.g. a shutdown hook, while it is still being recorded.
+ *
+ * @author Cameron Morrison
+ */
+public class ReplayLog {
+
+	static final int MAGIC = 0x46425250;	// "FBRP"
+	static final int VERSION = 2;
+
+	private GameSettings settings;	// How the world was set up
+
+	// Runs of ticks with the same input and length
+	private int [] runInput = new int[64];
+	private int [] runElapsed = new int[64];
+	private int [] runStart = new int[64];	// The first tick of each run
+	private int runCount = 0;
+
+	private int [] hashes = new int[1024];
+	private int ticks = 0;
+
+	private ArrayList<Keyframe> keyframes = new ArrayList<Keyframe>();
+
+	/**
+	 * Start an empty log for a world set up with 'settings'.
+	 *
+	 * @param settings How the world was set up
+	 */
+	public ReplayLog(GameSettings settings)
+	{
+		this.settings = settings.copy();
+	}
+
+	/**
+	 * Add the next tick to the end of the log.
+	 *
+	 * @param input		The GameWorld.INPUT_ bits applied before the tick
+	 * @param elapsed	The tick length in milliseconds
+	 * @param hash		GameWorld.stateHash() after the tick
+	 */
+	public synchronized void addTick(int input, long elapsed, int hash)
+	{
+		int r = runCount - 1;
+		if (r < 0 || runInput[r] != input || runElapsed[r] != elapsed)
+		{
+			if (runCount == runInput.length)
+			{
+				runInput = Arrays.copyOf(runInput, runCount * 2);
+				runElapsed = Arrays.copyOf(runElapsed, runCount * 2);
+				runStart = Arrays.copyOf(runStart, runCount * 2);
+			}
+			runInput[runCount] = input;
+			runElapsed[runCount] = (int)elapsed;
+			runStart[runCount] = ticks;
+			runCount++;
+		}
+
+		if (ticks == hashes.length) hashes = Arrays.copyOf(hashes, ticks * 2);
+		hashes[ticks++] = hash;
+	}
+
+	/**
+	 * Add a keyframe. Keyframes must be added in tick order.
+	 *
+	 * @param tick	The number of ticks played before the state was saved
+	 * @param state	The state from GameWorld.saveState()
+	 */
+	public synchronized void addKeyframe(int tick, byte [] state)
+	{
+		keyframes.add(new Keyframe(tick, state));
+	}
+
+	/**
+	 * @return The number of ticks in the log
+	 */
+	public synchronized int getTicks() { return ticks; }
+
+	/**
+	 * @param tick A tick from 0 to getTicks() - 1
+	 * @return The input applied before 'tick'
+	 */
+	public synchronized int getInput(int tick) { return runInput[runAt(tick)]; }
+
+	/**
+	 * @param tick A tick from 0 to getTicks() - 1
+	 * @return The length of 'tick' in milliseconds
+	 */
+	public synchronized long getElapsed(int tick) { return runElapsed[runAt(tick)]; }
+
+	/**
+	 * @param tick A tick from 0 to getTicks() - 1
+	 * @return The state hash recorded after 'tick'
+	 */
+	public synchronized int getHash(int tick) { return hashes[tick]; }
+
+	/**
+	 * Find the run 'tick' is in, the last run starting at or before it.
+	 */
+	private int runAt(int tick)
+	{
+		if (tick < 0 || tick >= ticks) throw new IndexOutOfBoundsException("No tick " + tick);
+		int lo = 0;
+		int hi = runCount - 1;
+		while (lo < hi)
+		{
+			int mid = (lo + hi + 1) >>> 1;
+			if (runStart[mid] <= tick) lo = mid;
+			else hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * @param tick A tick to seek to
+	 * @return The last keyframe at or before 'tick', or null if there isn't one
+	 */
+	public synchronized Keyframe getKeyframeBefore(int tick)
+	{
+		Keyframe best = null;
+		for (Keyframe k : keyframes)
+		{
+			if (k.tick > tick) break;
+			best = k;
+		}
+		return best;
+	}
+
+	/**
+	 * @return The number of keyframes
+	 */
+	public synchronized int getKeyframeCount() { return keyframes.size(); }
+
+	/**
+	 * @return The number of runs of ticks with the same input and length
+	 */
+	public synchronized int getRunCount() { return runCount; }
+
+	/**
+	 * @return A copy of the settings the recorded world was set up with
+	 */
+	public GameSettings getSettings() { return settings.copy(); }
+
+	/**
+	 * Write the log to 'file'.
+	 *
+	 * @param file The file to write
+	 * @return true if the log was saved
+	 */
+	public synchronized boolean save(File file)
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			settings.write(out);
+
+			writeVarint(out, runCount);
+			for (int r=0; r<runCount; r++)
+			{
+				int end = r + 1 < runCount ? runStart[r + 1] : ticks;
+				writeVarint(out, runInput[r]);
+				writeVarint(out, runElapsed[r]);
+				writeVarint(out, end - runStart[r]);
+			}
+
+			writeVarint(out, ticks);
+			for (int t=0; t<ticks; t++)
+				out.writeInt(hashes[t]);
+
+			writeVarint(out, keyframes.size());
+			for (Keyframe k : keyframes)
+			{
+				writeVarint(out, k.tick);
+				writeVarint(out, k.state.length);
+				out.write(k.state);
+			}
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to save replay '" + file + "':" + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Read a log written by save().
+	 *
+	 * @param file The file to read
+	 * @return The log, or null if it couldn't be read
+	 */
+	public static ReplayLog load(File file)
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC) throw new IOException("Not a replay");
+			if (in.readInt() != VERSION) throw new IOException("Replay is from a different version");
+			ReplayLog log = new ReplayLog(GameSettings.read(in));
+
+			int runs = (int)readVarint(in);
+			for (int r=0; r<runs; r++)
+			{
+				int input = (int)readVarint(in);
+				long elapsed = readVarint(in);
+				long count = readVarint(in);
+				// Hashes are filled in below
+				for (long i=0; i<count; i++)
+					log.addTick(input, elapsed, 0);
+			}
+
+			int ticks = (int)readVarint(in);
+			if (ticks != log.ticks) throw new IOException("Replay has " + ticks + " hashes for " + log.ticks + " ticks");
+			for (int t=0; t<ticks; t++)
+				log.hashes[t] = in.readInt();
+
+			int count = (int)readVarint(in);
+			for (int i=0; i<count; i++)
+			{
+				int tick = (int)readVarint(in);
+				byte [] state = new byte[(int)readVarint(in)];
+				in.readFully(state);
+				log.addKeyframe(tick, state);
+			}
+			return log;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to load replay '" + file + "':" + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write 'value', which must not be negative, in as few bytes as it needs.
+	 */
+	static void writeVarint(DataOutput out, long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * Read a value written by writeVarint().
+	 */
+	static long readVarint(DataInput in) throws IOException
+	{
+		long value = 0;
+		for (int shift=0; shift<64; shift+=7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Varint is too long");
+	}
+
+	/**
+	 * A saved GameWorld state and the tick it was saved at.
+	 */
+	public static class Keyframe {
+
+		private final int tick;
+		private final byte [] state;
+
+		Keyframe(int tick, byte [] state)
+		{
+			this.tick = tick;
+			this.state = state;
+		}
+
+		/**
+		 * @return The number of ticks played before the state was saved
+		 */
+		public int getTick() { return tick; }
+
+		/**
+		 * @return The state, for GameWorld.loadState()
+		 */
+		public byte [] getState() { return state; }
+	}
+}
@@ -0,0 +1,197 @@
+package code;
+
+import java.io.File;
+
+/**
+ * ReplayPlayer re-runs a ReplayLog on a new GameWorld, checking the state
+ * hash after every tick against the one that was recorded. The first tick
+ * that doesn't match is where the game stopped being deterministic. It can
+ * seek to a tick by loading the last keyframe before it, and records how
+ * long each tick took so that slow ticks can be found and profiled.
+ *
+ * Usage: java -Djava.awt.headless=true code.ReplayPlayer file [fast|realtime] [fromTick]
+ *
+ * 'fast' (the default) runs the ticks as quickly as possible, 'realtime'
+ * runs them at the speed they were recorded at.
+ *
+ * @author Cameron Morrison
+ */
+public class ReplayPlayer {
+
+	private ReplayLog log;
+	private GameWorld world;
+	private int tick = 0;				// The next tick to play
+
+	private int mismatches = 0;
+	private int firstMismatch = -1;
+	private long slowestNanos = 0;
+	private int slowestTick = -1;
+
+	/**
+	 * @param log The recording to play
+	 */
+	public ReplayPlayer(ReplayLog log)
+	{
+		this.log = log;
+	}
+
+	/**
+	 * Set up a world the same way as the one that was recorded.
+	 *
+	 * @return true if the world loaded
+	 */
+	public boolean start()
+	{
+		world = log.getSettings().createWorld(false);
+		tick = 0;
+		return world != null;
+	}
+
+	/**
+	 * Move to just before 'target', starting from the nearest keyframe if
+	 * that is quicker than playing on from where we are.
+	 *
+	 * @param target The tick to play next
+	 * @return true if the replay is now at 'target'
+	 */
+	public boolean seek(int target)
+	{
+		ReplayLog.Keyframe k = log.getKeyframeBefore(target);
+		if (k != null && (k.getTick() > tick || target < tick))
+		{
+			if (!world.loadState(k.getState())) return false;
+			tick = k.getTick();
+		}
+		else if (target < tick)
+		{
+			// No keyframe to go back to, so start again
+			if (!start()) return false;
+		}
+
+		while (tick < target && hasNext())
+			step();
+		return tick == target;
+	}
+
+	/**
+	 * @return true if there are ticks left to play
+	 */
+	public boolean hasNext() { return tick < log.getTicks(); }
+
+	/**
+	 * Play the next tick and check its hash.
+	 *
+	 * @return true if the state after the tick matches the recording
+	 */
+	public boolean step()
+	{
+		long start = System.nanoTime();
+		world.applyInput(log.getInput(tick));
+		world.update(log.getElapsed(tick));
+		long nanos = System.nanoTime() - start;
+		if (nanos > slowestNanos)
+		{
+			slowestNanos = nanos;
+			slowestTick = tick;
+		}
+
+		boolean match = world.stateHash() == log.getHash(tick);
+		if (!match)
+		{
+			if (firstMismatch < 0) firstMismatch = tick;
+			mismatches++;
+		}
+		tick++;
+		return match;
+	}
+
+	/**
+	 * @return The world being played
+	 */
+	public GameWorld getWorld() { return world; }
+
+	/**
+	 * @return The next tick to play
+	 */
+	public int getTick() { return tick; }
+
+	/**
+	 * @return The number of ticks whose hash didn't match the recording
+	 */
+	public int getMismatches() { return mismatches; }
+
+	/**
+	 * @return The first tick whose hash didn't match, or -1 if they all have
+	 */
+	public int getFirstMismatch() { return firstMismatch; }
+
+	/**
+	 * @return The tick that took longest to play, or -1 if none have been played
+	 */
+	public int getSlowestTick() { return slowestTick; }
+
+	/**
+	 * @return How long the slowest tick took in milliseconds
+	 */
+	public double getSlowestMillis() { return slowestNanos / 1e6; }
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		if (args.length < 1)
+		{
+			System.err.println("Usage: java code.ReplayPlayer file [fast|realtime] [fromTick]");
+			return;
+		}
+		ReplayLog log = ReplayLog.load(new File(args[0]));
+		if (log == null) return;
+		boolean realtime = args.length > 1 && args[1].equals("realtime");
+		int from = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+		ReplayPlayer player = new ReplayPlayer(log);
+		if (!player.start())
+		{
+			System.err.println("Failed to load the game");
+			return;
+		}
+		System.out.println("Replay: " + log.getTicks() + " ticks, " + log.getRunCount()
+				+ " input runs, " + log.getKeyframeCount() + " keyframes");
+
+		long seekStart = System.nanoTime();
+		if (!player.seek(from))
+		{
+			System.err.println("Failed to seek to tick " + from);
+			return;
+		}
+		if (from > 0)
+			System.out.printf("Seeked to tick %d in %.1f ms%n", from, (System.nanoTime() - seekStart) / 1e6);
+
+		int played = 0;
+		long gameMillis = 0;
+		long start = System.nanoTime();
+		while (player.hasNext())
+		{
+			if (realtime)
+			{
+				// Wait until this tick would have started in the recording
+				long wait = gameMillis - (System.nanoTime() - start) / 1000000L;
+				if (wait > 0) Thread.sleep(wait);
+			}
+			gameMillis += log.getElapsed(player.getTick());
+			player.step();
+			played++;
+		}
+		long nanos = System.nanoTime() - start;
+
+		System.out.printf("Played %d ticks in %.1f ms (%.0f ticks/sec)%n", played, nanos / 1e6, played / (nanos / 1e9));
+		System.out.printf("Slowest tick: %d (%.3f ms)%n", player.getSlowestTick(), player.getSlowestMillis());
+		if (player.getMismatches() == 0)
+			System.out.println("Every tick matched the recording");
+		else
+			System.out.println(player.getMismatches() + " ticks didn't match, the first was tick " + player.getFirstMismatch());
+
+		// Make sure nothing left running keeps the JVM alive
+		System.exit(player.getMismatches() == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,60 @@
+package code;
+
+/**
+ * ReplayRecorder steps a GameWorld one tick at a time and records each
+ * tick's input, length and resulting state hash into a ReplayLog, with a
+ * keyframe every KEYFRAME_TICKS ticks. A keyframe can't be saved while a
+ * delayed event is waiting (e.g. just after a crash), so it is taken on
+ * the first tick after that instead.
+ *
+ * Start recording straight after the world has been set up (init() and
+ * setEndless() if wanted), and call tick() instead of GameWorld.update().
+ *
+ * @author Cameron Morrison
+ */
+public class ReplayRecorder {
+
+	static final int KEYFRAME_TICKS = 1000;	// 10 seconds of 10ms ticks
+
+	private GameWorld world;
+	private ReplayLog log;
+	private int sinceKeyframe = 0;
+
+	/**
+	 * Start recording 'world' from its current state.
+	 *
+	 * @param world The world to record, which should not have been updated yet
+	 */
+	public ReplayRecorder(GameWorld world)
+	{
+		this.world = world;
+		log = new ReplayLog(GameSettings.of(world));
+		if (world.canSaveState()) log.addKeyframe(0, world.saveState());
+		else sinceKeyframe = KEYFRAME_TICKS;
+	}
+
+	/**
+	 * Apply 'input', update the world by 'elapsed' and record the tick.
+	 *
+	 * @param input		The GameWorld.INPUT_ bits for the tick
+	 * @param elapsed	The tick length in milliseconds
+	 */
+	public void tick(int input, long elapsed)
+	{
+		world.applyInput(input);
+		world.update(elapsed);
+		log.addTick(input, elapsed, world.stateHash());
+
+		sinceKeyframe++;
+		if (sinceKeyframe >= KEYFRAME_TICKS && world.canSaveState())
+		{
+			log.addKeyframe(log.getTicks(), world.saveState());
+			sinceKeyframe = 0;
+		}
+	}
+
+	/**
+	 * @return The recording so far
+	 */
+	public ReplayLog getLog() { return log; }
+}
@@ -0,0 +1,355 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * RolloutRunner plays many games at once, one per Session, spread over the
+ * threads of a ForkJoinPool. Each session has its own GameWorld, settings
+ * and Policy; the worlds only share GameAssets and the level caches, which
+ * are never changed, so sessions don't wait on each other and throughput
+ * grows with the number of cores. Because a GameWorld is deterministic, a
+ * session gives the same result however many threads are used.
+ *
+ * It is used to try out changes to the tuning (see GameSettings) over
+ * thousands of rounds, e.g.
+ *
+ * Usage: java -Djava.awt.headless=true code.RolloutRunner [sessions] [ticks] [threads] [rockSpeed]
+ *
+ * @author Cameron Morrison
+ */
+public class RolloutRunner {
+
+	static final long TICK_MILLIS = 10;	// Same tick length as GameCore's default
+
+	private ForkJoinPool pool;
+
+	/**
+	 * @param threads How many sessions to play at once, e.g. the number of cores
+	 */
+	public RolloutRunner(int threads)
+	{
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Play every session and wait for them all to finish.
+	 *
+	 * @param sessions The games to play
+	 * @return The results, in the same order as 'sessions'
+	 */
+	public Results run(List<Session> sessions)
+	{
+		ArrayList<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+		for (final Session s : sessions)
+		{
+			tasks.add(new Callable<Result>() {
+				@Override
+				public Result call() { return s.play(); }
+			});
+		}
+
+		long start = System.nanoTime();
+		List<Future<Result>> futures = pool.invokeAll(tasks);
+		ArrayList<Result> results = new ArrayList<Result>();
+		for (int i=0; i<futures.size(); i++)
+		{
+			try {
+				results.add(futures.get(i).get());
+			} catch (InterruptedException | ExecutionException e) {
+				System.err.println("Failed to play a session:" + e);
+				// Keep the results lined up with the sessions
+				results.add(new Result(sessions.get(i).settings));
+			}
+		}
+		return new Results(results, System.nanoTime() - start, pool.getParallelism());
+	}
+
+	/**
+	 * Stop the pool's threads. The runner can't be used afterwards.
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * One game to play: how to set it up, who plays it and for how long.
+	 */
+	public static class Session {
+
+		private GameSettings settings;
+		private Policy policy;
+		private int ticks;
+		private boolean stopOnCrash = false;
+
+		/**
+		 * @param settings	How to set up the world
+		 * @param policy	What decides the input each tick, not shared with
+		 * 					another session unless it has no state
+		 * @param ticks		The most ticks to play
+		 */
+		public Session(GameSettings settings, Policy policy, int ticks)
+		{
+			this.settings = settings.copy();
+			this.policy = policy;
+			this.ticks = ticks;
+		}
+
+		/**
+		 * @param stop true to end the session at the first crash
+		 */
+		public void setStopOnCrash(boolean stop) { stopOnCrash = stop; }
+
+		/**
+		 * Play the session on the calling thread.
+		 *
+		 * @return What happened
+		 */
+		public Result play()
+		{
+			Result r = new Result(settings);
+			long start = System.nanoTime();
+			GameWorld world = settings.createWorld(false);
+			if (world == null) return r;
+			r.loaded = true;
+
+			for (int t=0; t<ticks; t++)
+			{
+				int input = policy.act(world);
+				if (t == 0) input |= GameWorld.INPUT_RESUME;
+				world.applyInput(input);
+				world.update(TICK_MILLIS);
+				r.ticks++;
+				r.bestScore = Math.max(r.bestScore, world.getScore());
+				if (stopOnCrash && world.getCrashCount() > 0) break;
+			}
+
+			for (GameWorld.Crash c : GameWorld.Crash.values())
+				r.crashes[c.ordinal()] = world.getCrashes(c);
+			r.levelsCompleted = world.getLevelsCompleted();
+			r.nanos = System.nanoTime() - start;
+			return r;
+		}
+	}
+
+	/**
+	 * What happened in one session.
+	 */
+	public static class Result {
+
+		private GameSettings settings;
+		private boolean loaded = false;
+		private int ticks = 0;
+		private long bestScore = 0;
+		private int [] crashes = new int[GameWorld.Crash.values().length];
+		private int levelsCompleted = 0;
+		private long nanos = 0;
+
+		private Result(GameSettings settings)
+		{
+			this.settings = settings;
+		}
+
+		/**
+		 * @return The settings the session was played with
+		 */
+		public GameSettings getSettings() { return settings.copy(); }
+
+		/**
+		 * @return false if the world failed to load or the session failed, so nothing was played
+		 */
+		public boolean isLoaded() { return loaded; }
+
+		/**
+		 * @return The number of ticks played
+		 */
+		public int getTicks() { return ticks; }
+
+		/**
+		 * @return The highest score reached
+		 */
+		public long getBestScore() { return bestScore; }
+
+		/**
+		 * @param cause What the bird crashed into
+		 * @return The number of crashes into 'cause'
+		 */
+		public int getCrashes(GameWorld.Crash cause) { return crashes[cause.ordinal()]; }
+
+		/**
+		 * @return The number of times the end of a level was reached
+		 */
+		public int getLevelsCompleted() { return levelsCompleted; }
+
+		/**
+		 * @return How long the session took, including setting up the world, in ms
+		 */
+		public double getMillis() { return nanos / 1e6; }
+	}
+
+	/**
+	 * The results of every session in a run, added up.
+	 */
+	public static class Results {
+
+		private List<Result> results;
+		private long nanos;
+		private int threads;
+
+		private Results(List<Result> results, long nanos, int threads)
+		{
+			this.results = results;
+			this.nanos = nanos;
+			this.threads = threads;
+		}
+
+		/**
+		 * @return The result of each session
+		 */
+		public List<Result> getResults() { return results; }
+
+		/**
+		 * @return The number of sessions whose world failed to load
+		 */
+		public int getFailed()
+		{
+			int n = 0;
+			for (Result r : results)
+				if (!r.loaded) n++;
+			return n;
+		}
+
+		/**
+		 * @return The ticks played by every session together
+		 */
+		public long getTotalTicks()
+		{
+			long n = 0;
+			for (Result r : results)
+				n += r.ticks;
+			return n;
+		}
+
+		/**
+		 * @return Ticks played per second of wall clock time, over every thread
+		 */
+		public double getTicksPerSecond()
+		{
+			return getTotalTicks() / (nanos / 1e9);
+		}
+
+		/**
+		 * @return How long the run took in ms
+		 */
+		public double getMillis() { return nanos / 1e6; }
+
+		/**
+		 * @return The average of the sessions' best scores
+		 */
+		public double getMeanBestScore()
+		{
+			long total = 0;
+			for (Result r : results)
+				total += r.bestScore;
+			return results.isEmpty() ? 0 : (double)total / results.size();
+		}
+
+		/**
+		 * @return The highest score in any session
+		 */
+		public long getMaxBestScore()
+		{
+			long best = 0;
+			for (Result r : results)
+				best = Math.max(best, r.bestScore);
+			return best;
+		}
+
+		/**
+		 * @param cause What the bird crashed into
+		 * @return The number of crashes into 'cause' in every session together
+		 */
+		public int getCrashes(GameWorld.Crash cause)
+		{
+			int n = 0;
+			for (Result r : results)
+				n += r.crashes[cause.ordinal()];
+			return n;
+		}
+
+		/**
+		 * @return The number of levels completed in every session together
+		 */
+		public int getLevelsCompleted()
+		{
+			int n = 0;
+			for (Result r : results)
+				n += r.levelsCompleted;
+			return n;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder b = new StringBuilder();
+			b.append(String.format("%d sessions on %d threads in %.1f ms, %.0f ticks/sec%n",
+					results.size(), threads, getMillis(), getTicksPerSecond()));
+			if (getFailed() > 0)
+				b.append(getFailed()).append(" sessions failed to load").append(System.lineSeparator());
+			b.append(String.format("Best score: mean %.1f, max %d%n", getMeanBestScore(), getMaxBestScore()));
+			b.append("Crashes:");
+			for (GameWorld.Crash c : GameWorld.Crash.values())
+				b.append(' ').append(c.name().toLowerCase()).append(' ').append(getCrashes(c));
+			b.append(", levels completed ").append(getLevelsCompleted());
+			return b.toString();
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		float rockSpeed = args.length > 3 ? Float.parseFloat(args[3]) : 1.0f;
+
+		// Load the shared assets up front so that it isn't timed
+		if (GameAssets.get() == null)
+		{
+			System.err.println("Failed to load the game");
+			return;
+		}
+
+		// Each session gets its own endless level and an autopilot aiming for its own height
+		ArrayList<Session> list = new ArrayList<Session>();
+		for (int i=0; i<sessions; i++)
+		{
+			GameSettings settings = new GameSettings(i + 1);
+			settings.setEndless(i + 1);
+			settings.setRockSpeed(rockSpeed);
+			list.add(new Session(settings, new AutopilotPolicy(0.3f + 0.4f * i / Math.max(1, sessions - 1)), ticks));
+		}
+
+		RolloutRunner single = new RolloutRunner(1);
+		// Warm up the JIT first, or the single thread run looks slow next to the others
+		single.run(list.subList(0, Math.min(8, sessions)));
+		Results one = single.run(list);
+		single.shutdown();
+		System.out.println(one);
+
+		if (threads > 1)
+		{
+			RolloutRunner runner = new RolloutRunner(threads);
+			Results many = runner.run(list);
+			runner.shutdown();
+			System.out.println(many);
+			System.out.printf("Speed up on %d threads: %.2fx%n", threads, many.getTicksPerSecond() / one.getTicksPerSecond());
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package code;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RotationCache keeps copies of images that have already been rotated and
+ * scaled, so that a rotating sprite can be drawn with a plain blit instead
+ * of asking Java2D to transform the image every frame. Rotations are
+ * rounded to one of 'steps' angles around a full turn and scales to the
+ * nearest 1/SCALE_STEPS. The copies are compatible images, made lazily the
+ * first time they are asked for (or up front with preload) and the least
+ * recently used ones are thrown away once there are more than maxEntries.
+ *
+ * One cache can be shared by any number of sprites.
+ *
+ * @author Cameron Morrison
+ */
+public class RotationCache {
+
+	static final int SCALE_STEPS = 16;
+
+	private int steps;
+	private Map<Key, Rotated> cache;
+	private Key probe = new Key(null, 0, 0);	// Reused for look ups so a hit doesn't allocate
+
+	/**
+	 * Create an empty cache.
+	 *
+	 * @param steps			The number of rotations in a full turn, e.g. 72 for 5 degree steps
+	 * @param maxEntries	The most rotated images to keep
+	 */
+	public RotationCache(int steps, final int maxEntries)
+	{
+		this.steps = steps;
+		cache = new LinkedHashMap<Key, Rotated>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Rotated> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets 'img' rotated by 'degrees' around its centre and scaled by
+	 * 'scale', making it if it isn't in the cache.
+	 *
+	 * @param img		The image, which must be loaded
+	 * @param degrees	The rotation in degrees
+	 * @param scale		The scale, where 1 is normal size
+	 * @return The rotated image
+	 */
+	public synchronized Rotated get(Image img, double degrees, double scale)
+	{
+		int step = Math.floorMod((int)Math.round(degrees * steps / 360.0), steps);
+		int scaleStep = Math.max(1, (int)Math.round(scale * SCALE_STEPS));
+
+		probe.image = img;
+		probe.step = step;
+		probe.scaleStep = scaleStep;
+		Rotated rotated = cache.get(probe);
+		probe.image = null;
+		if (rotated == null)
+		{
+			rotated = bake(img, step * 360.0 / steps, (double)scaleStep / SCALE_STEPS);
+			cache.put(new Key(img, step, scaleStep), rotated);
+		}
+		return rotated;
+	}
+
+	/**
+	 * Make every rotation of every frame of 'anim' at 'scale' now, so
+	 * that none have to be made while the game is running.
+	 *
+	 * @param anim	The animation
+	 * @param scale	The scale, where 1 is normal size
+	 */
+	public void preload(Animation anim, double scale)
+	{
+		for (int f=0; f<anim.getFrameCount(); f++)
+		{
+			for (int s=0; s<steps; s++)
+				get(anim.getFrameImage(f), s * 360.0 / steps, scale);
+		}
+	}
+
+	/**
+	 * @return The number of rotated images in the cache
+	 */
+	public synchronized int size() { return cache.size(); }
+
+	/**
+	 * Throw away all of the rotated images.
+	 */
+	public synchronized void clear() { cache.clear(); }
+
+	/**
+	 * Rotate and scale 'img' into a new compatible image big enough to
+	 * hold all of it. This matches the transform in Sprite.drawTransformed.
+	 */
+	private static Rotated bake(Image img, double degrees, double scale)
+	{
+		int w = img.getWidth(null);
+		int h = img.getHeight(null);
+		double theta = Math.toRadians(degrees);
+		double sin = Math.abs(Math.sin(theta));
+		double cos = Math.abs(Math.cos(theta));
+		int rw = Math.max(1, (int)Math.ceil(scale * (w * cos + h * sin) - 1e-9));
+		int rh = Math.max(1, (int)Math.ceil(scale * (w * sin + h * cos) - 1e-9));
+
+		BufferedImage image = CompatibleImages.create(rw, rh, Transparency.TRANSLUCENT);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		AffineTransform transform = new AffineTransform();
+		transform.translate(rw / 2.0, rh / 2.0);
+		transform.rotate(theta);
+		transform.scale(scale, scale);
+		transform.translate(-w / 2.0, -h / 2.0);
+		g.drawImage(img, transform, null);
+		g.dispose();
+
+		// Keep the centre of the image where the sprite would draw it
+		return new Rotated(image,
+				(int)Math.round(scale * w / 2.0 - rw / 2.0), (int)Math.round(scale * h / 2.0 - rh / 2.0));
+	}
+
+	/**
+	 * A rotated image and where to draw it relative to the position
+	 * the unrotated image would be drawn at.
+	 */
+	public static class Rotated {
+
+		public final BufferedImage image;
+		public final int offsetX;
+		public final int offsetY;
+
+		Rotated(BufferedImage image, int offsetX, int offsetY)
+		{
+			this.image = image;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+		}
+	}
+
+	/**
+	 * Cache key. Images are compared by identity.
+	 */
+	private static class Key {
+
+		Image image;
+		int step;
+		int scaleStep;
+
+		Key(Image image, int step, int scaleStep)
+		{
+			this.image = image;
+			this.step = step;
+			this.scaleStep = scaleStep;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return k.image == image && k.step == step && k.scaleStep == scaleStep;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (System.identityHashCode(image) * 31 + step) * 31 + scaleStep;
+		}
+	}
+}
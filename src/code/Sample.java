@@ -0,0 +1,93 @@
+package code;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * A Sample is a sound that has been fully decoded into memory as signed
+ * 16 bit little endian PCM, so it can be played any number of times
+ * without touching the disk. Use SampleCache to get one.
+ *
+ * @author Cameron Morrison
+ */
+public class Sample {
+
+	private AudioFormat format;
+	private byte [] data;
+	private short [] pcm;	// The same sound as 16 bit values, channels interleaved
+
+	private Sample(AudioFormat format, byte [] data)
+	{
+		this.format = format;
+		this.data = data;
+		pcm = new short[data.length / 2];
+		for (int i=0; i<pcm.length; i++)
+			pcm[i] = (short)((data[i * 2] & 0xFF) | (data[i * 2 + 1] << 8));
+	}
+
+	/**
+	 * Read and decode the sound in file 'path'.
+	 *
+	 * @param path	The path to the sound file
+	 * @return The sample, or null if it could not be read
+	 */
+	public static Sample load(String path)
+	{
+		try (AudioInputStream in = AudioSystem.getAudioInputStream(new File(path)))
+		{
+			AudioFormat source = in.getFormat();
+			AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+					source.getSampleRate(), 16, source.getChannels(),
+					source.getChannels() * 2, source.getSampleRate(), false);
+
+			AudioInputStream decoded = source.matches(pcm) ? in : AudioSystem.getAudioInputStream(pcm, in);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte [] buf = new byte[8192];
+			int n;
+			while ((n = decoded.read(buf)) > 0)
+				out.write(buf, 0, n);
+
+			return new Sample(pcm, out.toByteArray());
+		}
+		catch (Exception e)
+		{
+			System.err.println("Failed to load sound '" + path + "':" + e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return The format of the data, always signed 16 bit little endian PCM
+	 */
+	public AudioFormat getFormat() { return format; }
+
+	/**
+	 * @return The decoded sound. Don't change it, it is shared.
+	 */
+	public byte [] getData() { return data; }
+
+	/**
+	 * @return The decoded sound as 16 bit values with the channels
+	 * interleaved. Don't change it, it is shared.
+	 */
+	public short [] getPcm() { return pcm; }
+
+	/**
+	 * @return The number of channels, 1 for mono or 2 for stereo
+	 */
+	public int getChannels() { return format.getChannels(); }
+
+	/**
+	 * @return The length of the sound in frames (one sample for each channel)
+	 */
+	public int getFrames() { return data.length / format.getFrameSize(); }
+
+	/**
+	 * @return The length of the sound in milliseconds
+	 */
+	public double getMillis() { return getFrames() * 1000.0 / format.getFrameRate(); }
+}
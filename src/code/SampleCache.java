@@ -0,0 +1,52 @@
+package code;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SampleCache keeps every sound that has been loaded for the life of the
+ * program, so each file is read and decoded exactly once however many
+ * times it is played.
+ *
+ * @author Cameron Morrison
+ */
+public class SampleCache {
+
+	private static final ConcurrentHashMap<String,Sample> samples = new ConcurrentHashMap<String,Sample>();
+
+	/**
+	 * Gets the decoded sound in file 'path', decoding it the first time.
+	 *
+	 * @param path The path to the sound file
+	 * @return The sample, or null if it could not be loaded
+	 */
+	public static Sample get(String path)
+	{
+		Sample sample = samples.get(path);
+		if (sample != null) return sample;
+
+		// Failed loads aren't cached so they can be retried
+		sample = Sample.load(path);
+		if (sample == null) return null;
+		Sample existing = samples.putIfAbsent(path, sample);
+		return existing != null ? existing : sample;
+	}
+
+	/**
+	 * Load a sound ahead of time so that the first time it is played isn't slow.
+	 *
+	 * @param path The path to the sound file
+	 * @return true if the sound loaded successfully
+	 */
+	public static boolean preload(String path)
+	{
+		return get(path) != null;
+	}
+
+	/**
+	 * Forget all of the sounds.
+	 */
+	public static void clear()
+	{
+		samples.clear();
+	}
+}
@@ -131,13 +131,31 @@ public class ScreenManager {
             frame.setSize(displayMode.getWidth(),
                 displayMode.getHeight());
         }
+        createBufferStrategy(frame, 2);
+    }
+
+
+    /**
+        Creates a BufferStrategy with the given number of buffers
+        for 'window', which must already be displayable. This is
+        done on the event dispatch thread to avoid a potential
+        deadlock.
+    */
+    public static void createBufferStrategy(final Window window,
+        final int buffers)
+    {
         // avoid potential deadlock in 1.4.1_02
         try {
-            EventQueue.invokeAndWait(new Runnable() {
-                public void run() {
-                    frame.createBufferStrategy(2);
-                }
-            });
+            if (EventQueue.isDispatchThread()) {
+                window.createBufferStrategy(buffers);
+            }
+            else {
+                EventQueue.invokeAndWait(new Runnable() {
+                    public void run() {
+                        window.createBufferStrategy(buffers);
+                    }
+                });
+            }
         }
         catch (InterruptedException ex) {
             // ignore
@@ -145,8 +163,6 @@ public class ScreenManager {
         catch (InvocationTargetException  ex) {
             // ignore
         }
-
-
     }
 
 
@@ -0,0 +1,337 @@
+package code;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * SoftwareMixer plays any number of overlapping Samples through a single
+ * output line. One thread mixes the playing voices a block at a time into
+ * a float buffer, applying each voice's gain and pan, then applies the
+ * master (bus) gain, converts to 16 bit stereo and writes the block to the
+ * output. Writing blocks when the output's buffer is full is what paces
+ * the thread, so a small buffer gives low latency.
+ *
+ * All buffers and voices are made up front; the mix loop allocates
+ * nothing. Samples at other rates are resampled with linear interpolation.
+ *
+ * The time from play() to the voice's first block being handed to the
+ * output, plus whatever the output still had queued, is recorded as the
+ * latency of each sound.
+ *
+ * @author Cameron Morrison
+ */
+public class SoftwareMixer implements Runnable {
+
+	public static final float SAMPLE_RATE = 44100;
+	static final int CHANNELS = 2;
+
+	private AudioOutput output;
+	private AudioFormat format;
+	private int blockFrames;		// Frames mixed at a time
+	private int bufferFrames;		// Frames the output buffers
+	private float [] mix;			// The block being mixed, channels interleaved
+	private byte [] out;			// The block as 16 bit little endian stereo
+
+	// Voices, indexed by voice number. A voice is free if its sample is null.
+	private Sample [] samples;
+	private double [] position;		// Frame of the sample to play next
+	private double [] step;			// Frames of the sample to move on per output frame
+	private float [] left;			// Gain for each side, from the voice's gain and pan
+	private float [] right;
+	private long [] order;			// When each voice was started, used to pick one to steal
+	private long [] triggeredAt;	// System.nanoTime() of play(), 0 once it has been heard
+	private boolean [] firstBlock;	// true if the voice was first mixed into the current block
+	private long plays = 0;
+
+	private volatile float masterGain;
+	private volatile boolean running = false;
+	private Thread thread;
+
+	// Statistics
+	private long blocks = 0;
+	private long mixNanos = 0;
+	private int steals = 0;
+	private long latencyCount = 0;
+	private long latencyTotal = 0;
+	private long latencyMax = 0;
+
+	/**
+	 * Create a mixer. Call start() to open the output and start mixing.
+	 *
+	 * @param output		Where to send the mixed sound
+	 * @param voices		The most sounds that can play at once
+	 * @param blockFrames	Frames to mix at a time, e.g. 256 (about 6ms)
+	 * @param bufferFrames	Frames the output should buffer, at least blockFrames
+	 */
+	public SoftwareMixer(AudioOutput output, int voices, int blockFrames, int bufferFrames)
+	{
+		this.output = output;
+		this.blockFrames = blockFrames;
+		this.bufferFrames = Math.max(blockFrames, bufferFrames);
+		format = new AudioFormat(SAMPLE_RATE, 16, CHANNELS, true, false);
+		mix = new float[blockFrames * CHANNELS];
+		out = new byte[blockFrames * CHANNELS * 2];
+
+		samples = new Sample[voices];
+		position = new double[voices];
+		step = new double[voices];
+		left = new float[voices];
+		right = new float[voices];
+		order = new long[voices];
+		triggeredAt = new long[voices];
+		firstBlock = new boolean[voices];
+		setMasterGainDb(-10.0f);
+	}
+
+	/**
+	 * Open the output and start the mixing thread.
+	 *
+	 * @return true if the output opened
+	 */
+	public boolean start()
+	{
+		if (running) return true;
+		try
+		{
+			output.open(format, bufferFrames);
+		}
+		catch (Exception e)
+		{
+			System.err.println("Failed to open sound output:" + e);
+			return false;
+		}
+		running = true;
+		thread = new Thread(this, "SoftwareMixer");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+		return true;
+	}
+
+	/**
+	 * Stop the mixing thread and close the output.
+	 */
+	public void stop()
+	{
+		if (!running) return;
+		running = false;
+		try { thread.join(1000); }
+		catch (InterruptedException e) { }
+		output.close();
+	}
+
+	/**
+	 * The mixing thread. Don't call this directly, use start().
+	 */
+	@Override
+	public void run()
+	{
+		while (running)
+		{
+			long t = System.nanoTime();
+			mixBlock();
+			mixNanos += System.nanoTime() - t;
+			blocks++;
+
+			// Time the block from before the write, as any time spent blocked
+			// in it is frames of 'queued' playing out
+			long now = System.nanoTime();
+			int queued = output.getQueuedFrames();
+			output.write(out, out.length);
+			recordLatency(now, queued);
+		}
+	}
+
+	/**
+	 * Play 'sample' from the start. If every voice is busy the one that
+	 * was started longest ago is stopped to make room.
+	 *
+	 * @param sample	The sound to play
+	 * @param gain		The volume, where 1 is the sample's own volume
+	 * @param pan		-1 for the left speaker only, 0 for the middle, 1 for the right only
+	 * @return The voice the sound is playing on, or -1 if it couldn't be played
+	 */
+	public synchronized int play(Sample sample, float gain, float pan)
+	{
+		if (sample == null || samples.length == 0) return -1;
+
+		int v = 0;
+		for (int i=0; i<samples.length; i++)
+		{
+			if (samples[i] == null) { v = i; break; }
+			if (order[i] < order[v]) v = i;
+		}
+		if (samples[v] != null) steals++;
+
+		// Constant power pan
+		double angle = (Math.max(-1, Math.min(1, pan)) + 1) * Math.PI / 4;
+		left[v] = (float)(gain * Math.cos(angle) * Math.sqrt(2));
+		right[v] = (float)(gain * Math.sin(angle) * Math.sqrt(2));
+		position[v] = 0;
+		step[v] = sample.getFormat().getFrameRate() / SAMPLE_RATE;
+		order[v] = ++plays;
+		triggeredAt[v] = System.nanoTime();
+		firstBlock[v] = false;
+		samples[v] = sample;
+		return v;
+	}
+
+	/**
+	 * Stop everything that is playing.
+	 */
+	public synchronized void stopAll()
+	{
+		for (int v=0; v<samples.length; v++)
+			samples[v] = null;
+	}
+
+	/**
+	 * Mix the next block of every playing voice into 'out'.
+	 */
+	synchronized void mixBlock()
+	{
+		float [] mix = this.mix;
+		for (int i=0; i<mix.length; i++)
+			mix[i] = 0;
+
+		for (int v=0; v<samples.length; v++)
+		{
+			Sample sample = samples[v];
+			if (sample == null) continue;
+			if (triggeredAt[v] != 0) firstBlock[v] = true;
+
+			short [] pcm = sample.getPcm();
+			int channels = sample.getChannels();
+			int frames = pcm.length / channels;
+			double pos = position[v];
+			double inc = step[v];
+			float l = left[v];
+			float r = right[v];
+
+			for (int i=0; i<blockFrames; i++)
+			{
+				int f = (int)pos;
+				if (f >= frames)
+				{
+					samples[v] = null;
+					break;
+				}
+				float frac = (float)(pos - f);
+				int next = f + 1 < frames ? f + 1 : f;
+
+				if (channels == 1)
+				{
+					float s = pcm[f] + (pcm[next] - pcm[f]) * frac;
+					mix[i * 2] += s * l;
+					mix[i * 2 + 1] += s * r;
+				}
+				else
+				{
+					int a = f * channels;
+					int b = next * channels;
+					mix[i * 2] += (pcm[a] + (pcm[b] - pcm[a]) * frac) * l;
+					mix[i * 2 + 1] += (pcm[a + 1] + (pcm[b + 1] - pcm[a + 1]) * frac) * r;
+				}
+				pos += inc;
+			}
+			position[v] = pos;
+		}
+
+		// Apply the bus gain and convert to 16 bit little endian
+		float gain = masterGain;
+		for (int i=0; i<mix.length; i++)
+		{
+			int s = (int)(mix[i] * gain);
+			if (s > Short.MAX_VALUE) s = Short.MAX_VALUE;
+			else if (s < Short.MIN_VALUE) s = Short.MIN_VALUE;
+			out[i * 2] = (byte)s;
+			out[i * 2 + 1] = (byte)(s >> 8);
+		}
+	}
+
+	/**
+	 * Record the latency of the voices that were heard for the first time
+	 * in the block just written, which will be played after 'queued' frames.
+	 *
+	 * @param now		System.nanoTime() just before the block was written
+	 * @param queued	Frames the output still had to play at that time
+	 */
+	private synchronized void recordLatency(long now, int queued)
+	{
+		long buffered = (long)(queued * 1e9 / SAMPLE_RATE);
+		for (int v=0; v<firstBlock.length; v++)
+		{
+			if (!firstBlock[v]) continue;
+			firstBlock[v] = false;
+			long latency = now - triggeredAt[v] + buffered;
+			triggeredAt[v] = 0;
+			latencyCount++;
+			latencyTotal += latency;
+			latencyMax = Math.max(latencyMax, latency);
+		}
+	}
+
+	/**
+	 * Set the volume of everything the mixer plays.
+	 *
+	 * @param db The change in volume in decibels, e.g. -10
+	 */
+	public void setMasterGainDb(float db)
+	{
+		masterGain = (float)Math.pow(10, db / 20.0);
+	}
+
+	/**
+	 * @return The volume of everything the mixer plays in decibels
+	 */
+	public float getMasterGainDb()
+	{
+		return (float)(20 * Math.log10(masterGain));
+	}
+
+	/**
+	 * @return The format the mixer sends to its output
+	 */
+	public AudioFormat getFormat() { return format; }
+
+	/**
+	 * @return The number of voices playing now
+	 */
+	public synchronized int getActiveVoices()
+	{
+		int n = 0;
+		for (Sample s : samples)
+			if (s != null) n++;
+		return n;
+	}
+
+	/**
+	 * @return The number of blocks mixed so far
+	 */
+	public long getBlocks() { return blocks; }
+
+	/**
+	 * @return The average time taken to mix a block in microseconds
+	 */
+	public double getAverageMixMicros()
+	{
+		return blocks == 0 ? 0 : mixNanos / 1e3 / blocks;
+	}
+
+	/**
+	 * @return How many times a playing voice has been stopped to play something else
+	 */
+	public synchronized int getSteals() { return steals; }
+
+	/**
+	 * @return The average time from play() to the sound being heard in milliseconds
+	 */
+	public synchronized double getAverageLatencyMillis()
+	{
+		return latencyCount == 0 ? 0 : latencyTotal / 1e6 / latencyCount;
+	}
+
+	/**
+	 * @return The longest time from play() to the sound being heard in milliseconds
+	 */
+	public synchronized double getMaxLatencyMillis() { return latencyMax / 1e6; }
+}
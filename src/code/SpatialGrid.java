@@ -0,0 +1,312 @@
+package code;
+
+/**
+ * SpatialGrid is a broadphase for sprite collisions. Space is divided into
+ * square cells and each sprite is filed under the cell its centre is in,
+ * using a hash table of cells so the grid has no edges. Only sprites in the
+ * same or neighbouring cells can touch, so finding candidate pairs costs
+ * roughly the number of sprites rather than the number of sprites squared.
+ *
+ * Sprites are added with an id (0 to capacity-1) that is used to refer to
+ * them afterwards. Call update() once per tick after the sprites have moved;
+ * only sprites that have changed cell are re-filed. The cell size must be at
+ * least the diameter of the largest sprite. Nothing is allocated after the
+ * grid has been created.
+ *
+ * @author Cameron Morrison
+ */
+public class SpatialGrid {
+
+	private static final int NONE = -1;
+
+	private float cellSize;
+	private int mask;				// Number of buckets - 1, the bucket count is a power of 2
+	private int [] head;			// First entry in each bucket, NONE if empty
+
+	// Per entry state, indexed by id
+	private Sprite [] sprites;
+	private int [] next;			// Next entry in the same bucket
+	private int [] prev;			// Previous entry in the same bucket
+	private int [] cellX;			// The cell each entry is filed under
+	private int [] cellY;
+	private int [] bucket;			// The bucket each entry is in, NONE if not in the grid
+
+	// The ids in the grid, packed at the front
+	private int [] ids;
+	private int [] idPos;
+	private int count;
+
+	// Scratch space for queries
+	private int [] nearBuckets = new int[9];
+
+	/**
+	 * Create an empty grid.
+	 *
+	 * @param cellSize	The width and height of a cell in pixels
+	 * @param capacity	The highest id that will be used, plus one
+	 */
+	public SpatialGrid(float cellSize, int capacity)
+	{
+		this.cellSize = cellSize;
+
+		int buckets = Integer.highestOneBit(Math.max(16, capacity)) << 1;
+		mask = buckets - 1;
+		head = new int[buckets];
+
+		sprites = new Sprite[capacity];
+		next = new int[capacity];
+		prev = new int[capacity];
+		cellX = new int[capacity];
+		cellY = new int[capacity];
+		bucket = new int[capacity];
+		ids = new int[capacity];
+		idPos = new int[capacity];
+		clear();
+	}
+
+	/**
+	 * Remove everything from the grid.
+	 */
+	public void clear()
+	{
+		for (int b=0; b<head.length; b++)
+			head[b] = NONE;
+		for (int i=0; i<bucket.length; i++)
+		{
+			bucket[i] = NONE;
+			sprites[i] = null;
+		}
+		count = 0;
+	}
+
+	/**
+	 * Add sprite 's' to the grid with the given id.
+	 *
+	 * @param id	The id to use for the sprite
+	 * @param s		The sprite
+	 */
+	public void add(int id, Sprite s)
+	{
+		if (bucket[id] != NONE) remove(id);
+
+		sprites[id] = s;
+		idPos[id] = count;
+		ids[count++] = id;
+
+		cellX[id] = cellOf(centreX(s));
+		cellY[id] = cellOf(centreY(s));
+		link(id, hash(cellX[id], cellY[id]));
+	}
+
+	/**
+	 * Take the sprite with the given id out of the grid.
+	 *
+	 * @param id The id of the sprite
+	 */
+	public void remove(int id)
+	{
+		if (bucket[id] == NONE) return;
+		unlink(id);
+		sprites[id] = null;
+
+		int pos = idPos[id];
+		int last = ids[--count];
+		ids[pos] = last;
+		idPos[last] = pos;
+	}
+
+	/**
+	 * Re-file any sprites that have moved into a different cell.
+	 */
+	public void update()
+	{
+		for (int i=0; i<count; i++)
+			update(ids[i]);
+	}
+
+	/**
+	 * Re-file the sprite with the given id if it has moved into a different cell.
+	 *
+	 * @param id The id of the sprite
+	 */
+	public void update(int id)
+	{
+		Sprite s = sprites[id];
+		int cx = cellOf(centreX(s));
+		int cy = cellOf(centreY(s));
+		if (cx == cellX[id] && cy == cellY[id]) return;
+
+		cellX[id] = cx;
+		cellY[id] = cy;
+		int b = hash(cx, cy);
+		if (b == bucket[id]) return;
+		unlink(id);
+		link(id, b);
+	}
+
+	/**
+	 * Find every pair of sprites in the grid that are close enough that they
+	 * might be touching. Each pair is written once, as two ids, into 'pairs'.
+	 * Use Collision.circlesOverlap to check if they really touch.
+	 *
+	 * @param pairs	Where to write the pairs, two ids per pair
+	 * @return The number of pairs found, which stops when 'pairs' is full
+	 */
+	public int findPairs(int [] pairs)
+	{
+		int found = 0;
+
+		for (int i=0; i<count; i++)
+		{
+			int a = ids[i];
+			int buckets = nearBuckets(cellX[a], cellY[a]);
+
+			for (int n=0; n<buckets; n++)
+			{
+				for (int b=head[nearBuckets[n]]; b != NONE; b=next[b])
+				{
+					// Only report each pair once
+					if (b <= a) continue;
+					if (found * 2 + 1 >= pairs.length) return found;
+					pairs[found * 2] = a;
+					pairs[found * 2 + 1] = b;
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Find the sprites that might be touching a circle centred at 'x,y'
+	 * whose radius is no more than half the cell size.
+	 *
+	 * @param x			The x position of the centre of the circle
+	 * @param y			The y position of the centre of the circle
+	 * @param out		Where to write the ids of the sprites found
+	 * @return The number of ids found, which stops when 'out' is full
+	 */
+	public int query(float x, float y, int [] out)
+	{
+		int found = 0;
+		int buckets = nearBuckets(cellOf(x), cellOf(y));
+
+		for (int n=0; n<buckets; n++)
+		{
+			for (int b=head[nearBuckets[n]]; b != NONE; b=next[b])
+			{
+				if (found == out.length) return found;
+				out[found++] = b;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Find the sprites that might be touching anything inside the box from
+	 * 'left,top' to 'right,bottom', grown by half the cell size. This is
+	 * used to find what a moving sprite might hit along the way.
+	 * 
+	 * @param left		The left of the box
+	 * @param top		The top of the box
+	 * @param right		The right of the box
+	 * @param bottom	The bottom of the box
+	 * @param out		Where to write the ids of the sprites found
+	 * @return The number of ids found, which stops when 'out' is full
+	 */
+	public int query(float left, float top, float right, float bottom, int [] out)
+	{
+		int found = 0;
+		int cx0 = cellOf(left) - 1, cx1 = cellOf(right) + 1;
+		int cy0 = cellOf(top) - 1, cy1 = cellOf(bottom) + 1;
+		
+		for (int cy=cy0; cy<=cy1; cy++)
+		{
+			for (int cx=cx0; cx<=cx1; cx++)
+			{
+				for (int b=head[hash(cx, cy)]; b != NONE; b=next[b])
+				{
+					// Other cells can share the bucket, only take each sprite from its own cell
+					if (cellX[b] != cx || cellY[b] != cy) continue;
+					if (found == out.length) return found;
+					out[found++] = b;
+				}
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * @return The number of sprites in the grid
+	 */
+	public int size() { return count; }
+
+	/**
+	 * Gets the sprite with the given id.
+	 *
+	 * @param id The id of the sprite
+	 * @return The sprite, or null if there isn't one with that id
+	 */
+	public Sprite getSprite(int id) { return sprites[id]; }
+
+	/**
+	 * Work out the different buckets for the 3x3 block of cells around
+	 * cell 'cx,cy' and store them in nearBuckets.
+	 *
+	 * @return The number of different buckets
+	 */
+	private int nearBuckets(int cx, int cy)
+	{
+		int n = 0;
+		for (int dy=-1; dy<=1; dy++)
+		{
+			for (int dx=-1; dx<=1; dx++)
+			{
+				int b = hash(cx + dx, cy + dy);
+				boolean seen = false;
+				for (int i=0; i<n && !seen; i++)
+					seen = nearBuckets[i] == b;
+				if (!seen) nearBuckets[n++] = b;
+			}
+		}
+		return n;
+	}
+
+	private void link(int id, int b)
+	{
+		bucket[id] = b;
+		prev[id] = NONE;
+		next[id] = head[b];
+		if (head[b] != NONE) prev[head[b]] = id;
+		head[b] = id;
+	}
+
+	private void unlink(int id)
+	{
+		int b = bucket[id];
+		if (prev[id] != NONE) next[prev[id]] = next[id];
+		else head[b] = next[id];
+		if (next[id] != NONE) prev[next[id]] = prev[id];
+		bucket[id] = NONE;
+	}
+
+	private int cellOf(float v)
+	{
+		return (int)Math.floor(v / cellSize);
+	}
+
+	private int hash(int cx, int cy)
+	{
+		return ((cx * 73856093) ^ (cy * 19349663)) & mask;
+	}
+
+	private static float centreX(Sprite s)
+	{
+		return s.getX() + s.getWidth() / 2.0f;
+	}
+
+	private static float centreY(Sprite s)
+	{
+		return s.getY() + s.getHeight() / 2.0f;
+	}
+}
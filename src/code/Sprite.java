@@ -2,6 +2,9 @@ package code;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * This class provides the functionality for a moving animated image or Sprite.
@@ -17,20 +20,21 @@ public class Sprite {
     // Position (pixels)
     private float x;
     private float y;
+    
+    // Position before the last update, used to interpolate when drawing
+    private float prevX;
+    private float prevY;
 
     // Velocity (pixels per millisecond)
     private float dx;
     private float dy;
 
-    // Dimensions of the sprite
-    private float height;
-    private float width;
-    private float radius;
-
     // The scale to draw the sprite at where 1 equals normal size
     private double scale;
     // The rotation to apply to the sprite image
     private double rotation;
+    // Pre-rotated copies of the sprite's images, or null to transform them when drawn
+    private RotationCache rotationCache;
 
     // If render is 'true', the sprite will be drawn when requested
     private boolean render;
@@ -134,15 +138,11 @@ public class Sprite {
     */
     public void update(long elapsedTime) {
     	if (!render) return;
+    	prevX = x;
+    	prevY = y;
         x += dx * elapsedTime;
         y += dy * elapsedTime;
         anim.update(elapsedTime);
-        width = anim.getImage().getWidth(null);
-        height = anim.getImage().getHeight(null);
-        if (width > height)
-        	radius = width / 2.0f;
-        else
-        	radius = height / 2.0f;
     }
 
     /**
@@ -160,17 +160,63 @@ public class Sprite {
     }
 
     /**
-        Sets this Sprite's current x position.
+        Gets this Sprite's x position before the last update.
+    */
+    public float getPrevX() {
+        return prevX;
+    }
+
+    /**
+        Gets this Sprite's y position before the last update.
+    */
+    public float getPrevY() {
+        return prevY;
+    }
+
+    /**
+        Moves the sprite back along its last update so that it is 't'
+        of the way from its previous position, e.g. to where it first
+        hit something.
+        
+        @param t How far along the last update to put the sprite (0-1)
+    */
+    public void rewindTo(float t) {
+        x = prevX + (x - prevX) * t;
+        y = prevY + (y - prevY) * t;
+    }
+
+    /**
+        Gets this Sprite's x position interpolated between the
+        previous and current update by 'alpha' (0 to 1).
+    */
+    public float getRenderX(float alpha) {
+        return prevX + (x - prevX) * alpha;
+    }
+
+    /**
+        Gets this Sprite's y position interpolated between the
+        previous and current update by 'alpha' (0 to 1).
+    */
+    public float getRenderY(float alpha) {
+        return prevY + (y - prevY) * alpha;
+    }
+
+    /**
+        Sets this Sprite's current x position. The sprite jumps
+        straight there rather than being interpolated.
     */
     public void setX(float x) {
         this.x = x;
+        prevX = x;
     }
 
     /**
-        Sets this Sprite's current y position.
+        Sets this Sprite's current y position. The sprite jumps
+        straight there rather than being interpolated.
     */
     public void setY(float y) {
         this.y = y;
+        prevY = y;
     }
 
     /**
@@ -178,8 +224,8 @@ public class Sprite {
 	*/
 	public void setPosition(float x, float y) 
 	{
-	    this.x = x;
-	    this.y = y;
+	    setX(x);
+	    setY(y);
 	}
 
     public void shiftX(float shift)
@@ -194,26 +240,36 @@ public class Sprite {
     
     /**
         Gets this Sprite's width, based on the size of the
-        current image.
+        current image (cached by the animation).
     */
     public int getWidth() {
-        return anim.getImage().getWidth(null);
+        return anim.getWidth();
     }
 
     /**
         Gets this Sprite's height, based on the size of the
-        current image.
+        current image (cached by the animation).
     */
     public int getHeight() {
-        return anim.getImage().getHeight(null);
+        return anim.getHeight();
     }
 
     /**
-    	Gets the sprites radius in pixels
+    	Gets the sprites radius in pixels, half the larger of
+    	its width and height
     */
     public float getRadius()
     {
-    	return radius;
+    	return anim.getRadius();
+    }
+
+    /**
+    	Gets the collision mask of the sprite's current image at its
+    	current rotation, or null if there isn't one.
+    */
+    public CollisionMask getCollisionMask()
+    {
+    	return anim.getMask(getRotation());
     }
 
     /**
@@ -279,6 +335,16 @@ public class Sprite {
     	return scale;
     }
 
+	/**
+		Set a cache of pre-rotated images for drawTransformed to use.
+		The rotation is rounded to the nearest step of the cache, so
+		set it to null if the sprite needs an exact transform.
+	*/
+    public void setRotationCache(RotationCache cache)
+    {
+    	rotationCache = cache;
+    }
+
 	/**
 		Set the rotation angle for the sprite in degrees.
 		Note that scaling and rotation are only applied when
@@ -320,10 +386,20 @@ public class Sprite {
 		transforms are NOT applied.
 	*/
     public void draw(Graphics2D g)
+    {
+    	draw(g, 1.0f);
+    }
+
+	/**
+		Draws the sprite with the graphics object 'g' at a position
+		interpolated between the previous and current update by 'alpha'.
+		Scaling and rotation transforms are NOT applied.
+	*/
+    public void draw(Graphics2D g, float alpha)
     {
     	if (!render) return;
 
-    	g.drawImage(getImage(),(int)x+xoff,(int)y+yoff,null);
+    	g.drawImage(getImage(),(int)getRenderX(alpha)+xoff,(int)getRenderY(alpha)+yoff,null);
     }
 
     /**
@@ -359,18 +435,82 @@ public class Sprite {
 		@param g The graphics object to draw to,
 	*/
     public void drawTransformed(Graphics2D g)
+    {
+    	drawTransformed(g, 1.0f);
+    }
+
+	/**
+		Draws the sprite with the current scaling and rotation transforms
+		applied at a position interpolated between the previous and current
+		update by 'alpha'. If a rotation cache has been set, a copy of the
+		image that has already been transformed is drawn instead.
+		
+		@param g The graphics object to draw to,
+		@param alpha How far between the previous and current update to draw (0-1)
+	*/
+    public void drawTransformed(Graphics2D g, float alpha)
     {
     	if (!render) return;
 
+    	if (rotationCache != null)
+    	{
+    		// Blit a copy that has already been rotated and scaled
+    		RotationCache.Rotated r = rotationCache.get(getImage(), getRotation(), scale);
+    		g.drawImage(r.image, Math.round(getRenderX(alpha))+xoff+r.offsetX,
+    				Math.round(getRenderY(alpha))+yoff+r.offsetY, null);
+    		return;
+    	}
+
 		AffineTransform transform = new AffineTransform();
-		transform.translate(Math.round(x)+xoff,Math.round(y)+yoff);
+		transform.translate(Math.round(getRenderX(alpha))+xoff,Math.round(getRenderY(alpha))+yoff);
 		transform.scale(scale,scale);
-		transform.rotate(rotation,getImage().getWidth(null)/2,getImage().getHeight(null)/2);
+		transform.rotate(rotation,getWidth()/2,getHeight()/2);
 		// Apply transform to the image and draw it
 		g.drawImage(getImage(),transform,null);
     }
 
 
+    /**
+        Save the sprite's position, movement, rotation and animation
+        playback, e.g. for a replay keyframe.
+        
+        @param out Where to write the state
+        @throws IOException If the state could not be written
+    */
+    public void writeState(DataOutput out) throws IOException
+    {
+        out.writeFloat(x);
+        out.writeFloat(y);
+        out.writeFloat(prevX);
+        out.writeFloat(prevY);
+        out.writeFloat(dx);
+        out.writeFloat(dy);
+        out.writeDouble(scale);
+        out.writeDouble(rotation);
+        out.writeBoolean(render);
+        anim.writeState(out);
+    }
+
+    /**
+        Put the sprite back how it was when writeState() was called.
+        
+        @param in Where to read the state from
+        @throws IOException If the state could not be read
+    */
+    public void readState(DataInput in) throws IOException
+    {
+        x = in.readFloat();
+        y = in.readFloat();
+        prevX = in.readFloat();
+        prevY = in.readFloat();
+        dx = in.readFloat();
+        dy = in.readFloat();
+        scale = in.readDouble();
+        rotation = in.readDouble();
+        render = in.readBoolean();
+        anim.readState(in);
+    }
+
 	/**
 		Hide the sprite.
 	*/
@@ -0,0 +1,218 @@
+package code;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+/**
+ * SpriteSheet loads an image holding a grid of animation frames and cuts
+ * it into one image per frame. The sheet is decoded once, straight away,
+ * and each frame is copied into its own compatible image, so the frames
+ * have their size as soon as they are loaded and can be cached by Java2D.
+ *
+ * Columns and rows don't all have to be the same size. For each frame the
+ * rectangle that actually has visible pixels in it is also recorded, which
+ * is handy for working out tighter bounds. The time taken to load the
+ * sheet and how many bytes it used are kept for reporting.
+ *
+ * @author Cameron Morrison
+ */
+public class SpriteSheet {
+
+	private String fileName;
+	private BufferedImage [] frames;	// One image per frame, left to right then top to bottom
+	private Rectangle [] trims;		// The visible part of each frame
+	private long loadNanos;			// How long it took to load and cut up the sheet
+	private long fileBytes;			// Size of the file
+	private long pixelBytes;		// Memory used by the frames' pixels
+
+	private SpriteSheet() { }
+
+	/**
+	 * Load a sheet made of 'columns' by 'rows' frames that are all the same size.
+	 *
+	 * @param fileName	The path to the sheet
+	 * @param columns	How many columns there are in the sheet
+	 * @param rows		How many rows there are in the sheet
+	 * @return The sheet, or null if it couldn't be loaded
+	 */
+	public static SpriteSheet load(String fileName, int columns, int rows)
+	{
+		long start = System.nanoTime();
+		BufferedImage sheet = read(fileName);
+		if (sheet == null) return null;
+
+		int [] widths = new int[columns];
+		int [] heights = new int[rows];
+		Arrays.fill(widths, sheet.getWidth() / columns);
+		Arrays.fill(heights, sheet.getHeight() / rows);
+		return slice(fileName, sheet, widths, heights, start);
+	}
+
+	/**
+	 * Load a sheet whose columns and rows can be different sizes.
+	 *
+	 * @param fileName		The path to the sheet
+	 * @param columnWidths	The width of each column in pixels, left to right
+	 * @param rowHeights	The height of each row in pixels, top to bottom
+	 * @return The sheet, or null if it couldn't be loaded
+	 */
+	public static SpriteSheet load(String fileName, int [] columnWidths, int [] rowHeights)
+	{
+		long start = System.nanoTime();
+		BufferedImage sheet = read(fileName);
+		if (sheet == null) return null;
+		return slice(fileName, sheet, columnWidths, rowHeights, start);
+	}
+
+	private static BufferedImage read(String fileName)
+	{
+		try
+		{
+			BufferedImage sheet = ImageIO.read(new File(fileName));
+			if (sheet == null) System.err.println("Unknown image format for sprite sheet '" + fileName + "'");
+			return sheet;
+		}
+		catch (Exception e)
+		{
+			System.err.println("Failed to read sprite sheet '" + fileName + "':" + e);
+			return null;
+		}
+	}
+
+	private static SpriteSheet slice(String fileName, BufferedImage sheet, int [] widths, int [] heights, long start)
+	{
+		int total = 0;
+		for (int w : widths) total += w;
+		if (total > sheet.getWidth())
+		{
+			System.err.println("Sprite sheet '" + fileName + "' is narrower than its columns");
+			return null;
+		}
+		total = 0;
+		for (int h : heights) total += h;
+		if (total > sheet.getHeight())
+		{
+			System.err.println("Sprite sheet '" + fileName + "' is shorter than its rows");
+			return null;
+		}
+
+		SpriteSheet s = new SpriteSheet();
+		s.fileName = fileName;
+		s.frames = new BufferedImage[widths.length * heights.length];
+		s.trims = new Rectangle[s.frames.length];
+
+		int n = 0;
+		int y = 0;
+		for (int row=0; row<heights.length; row++)
+		{
+			int x = 0;
+			for (int col=0; col<widths.length; col++)
+			{
+				int w = widths[col];
+				int h = heights[row];
+				BufferedImage frame = CompatibleImages.create(w, h, Transparency.TRANSLUCENT);
+				Graphics2D g = frame.createGraphics();
+				g.setComposite(AlphaComposite.Src);
+				g.drawImage(sheet, 0, 0, w, h, x, y, x + w, y + h, null);
+				g.dispose();
+
+				s.frames[n] = frame;
+				s.trims[n] = visibleBounds(sheet, x, y, w, h);
+				s.pixelBytes += 4L * w * h;
+				n++;
+				x += w;
+			}
+			y += heights[row];
+		}
+
+		s.fileBytes = new File(fileName).length();
+		s.loadNanos = System.nanoTime() - start;
+		return s;
+	}
+
+	/**
+	 * Works out the smallest rectangle holding every pixel of the 'w' by 'h'
+	 * area at 'x,y' of 'sheet' that isn't fully transparent.
+	 *
+	 * @return The rectangle relative to 'x,y', empty if nothing is visible
+	 */
+	private static Rectangle visibleBounds(BufferedImage sheet, int x, int y, int w, int h)
+	{
+		int [] row = new int[w];
+		int left = w, right = -1, top = h, bottom = -1;
+
+		for (int j=0; j<h; j++)
+		{
+			sheet.getRGB(x, y + j, w, 1, row, 0, w);
+			for (int i=0; i<w; i++)
+			{
+				if ((row[i] >>> 24) == 0) continue;
+				if (i < left) left = i;
+				if (i > right) right = i;
+				if (j < top) top = j;
+				bottom = j;
+			}
+		}
+
+		if (right < 0) return new Rectangle(0, 0, 0, 0);
+		return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+	}
+
+	/**
+	 * Add every frame of the sheet to 'anim', each shown for 'duration'.
+	 *
+	 * @param anim		The animation to add to
+	 * @param duration	The time to display each frame
+	 */
+	public void addTo(Animation anim, long duration)
+	{
+		for (BufferedImage frame : frames)
+			anim.addFrame(frame, duration);
+	}
+
+	/**
+	 * @return The number of frames in the sheet
+	 */
+	public int getFrameCount() { return frames.length; }
+
+	/**
+	 * @param i The frame, counting left to right then top to bottom
+	 * @return The image for frame 'i'
+	 */
+	public BufferedImage getFrame(int i) { return frames[i]; }
+
+	/**
+	 * @param i The frame, counting left to right then top to bottom
+	 * @return The part of frame 'i' that has visible pixels, relative to its top left
+	 */
+	public Rectangle getTrim(int i) { return new Rectangle(trims[i]); }
+
+	/**
+	 * @return How long it took to load the sheet in milliseconds
+	 */
+	public double getLoadMillis() { return loadNanos / 1e6; }
+
+	/**
+	 * @return The size of the sheet's file in bytes
+	 */
+	public long getFileBytes() { return fileBytes; }
+
+	/**
+	 * @return The memory used by the pixels of all of the frames in bytes
+	 */
+	public long getPixelBytes() { return pixelBytes; }
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s: %d frames, %d bytes on disk, %d bytes of pixels, loaded in %.1f ms",
+				fileName, frames.length, fileBytes, pixelBytes, getLoadMillis());
+	}
+}
@@ -1,7 +1,9 @@
 package code;
 
 /**
- * A Tile in the TileMap.
+ * A Tile in the TileMap. TileMap does not store Tile objects, it hands out
+ * Tiles that read and write the cell they came from so that changing the
+ * character of a tile changes the map.
  * 
  * @author David Cairns
  *
@@ -11,6 +13,9 @@ public class Tile {
 	private char character=' ';	// The character associated with this tile
 	private int xc=0;			// The tile's x coordinate in pixels
 	private int yc=0;			// The tile's y coordinate in pixels
+	
+	private TileMap map=null;	// The map this tile is a view of, if any
+	private int col, row;		// The cell in 'map' this tile is a view of
  	
 	/**
 	 * Create an instance of a tile
@@ -24,11 +29,27 @@ public class Tile {
 		xc = x;
 		yc = y;
 	}
+	
+	/**
+	 * Create a tile that reads and writes cell 'col,row' of 'map'.
+	 * @param map	The tile map
+	 * @param col	The x tile coordinate (in tiles, not pixels)
+	 * @param row	The y tile coordinate (in tiles, not pixels)
+	 */
+	Tile(TileMap map, int col, int row)
+	{
+		this.map = map;
+		this.col = col;
+		this.row = row;
+		xc = col * map.getTileWidth();
+		yc = row * map.getTileHeight();
+	}
 
 	/**
 	 * @return The character for this tile
 	 */
 	public char getCharacter() {
+		if (map != null) return map.getTileChar(col, row);
 		return character;
 	}
 
@@ -36,6 +57,7 @@ public class Tile {
 	 * @param character The character to set the tile to
 	 */
 	public void setCharacter(char character) {
+		if (map != null) map.setTileChar(character, col, row);
 		this.character = character;
 	}
 
@@ -1,12 +1,15 @@
 package code;
 
-import javax.swing.ImageIcon;
+import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Rectangle;
-import java.util.HashMap;
-import java.util.Map;
-import java.io.*;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 
 
 
@@ -38,15 +41,42 @@ bbbbbbbbbb
 public class TileMap 
 {
 
-	private Tile [][] tmap;		// The tile map grid, initially null
+	// The tile map grid holds a tile id per cell, stored column by column
+	// (the cell at x,y is at x*mapHeight + y). It is initially empty.
+	private byte [] grid = new byte[0];
+	private long [] solid = new long[0];	// One bit per cell, set if the tile has an image
 	private int mapWidth=0;		// The maps width in tiles
 	private int mapHeight=0;	// The maps height in tiles
 	private int tileWidth=0;	// The width of a tile in pixels
 	private int tileHeight=0;	// The height of a tile in pixels
+	private boolean wrap=false;	// true if the map repeats forever to the left and right
 	
-	// imagemap contains a set of character to image mappings for
-	// quick loop up of the image associated with a given character.
-	private Map<String,Image> imagemap = new HashMap<String,Image>();
+	// Each different tile character is given a small id. The tables below
+	// map between ids, characters and images. Id 0 is always the blank '.' tile.
+	static final int MAX_TILE_TYPES = 256;
+	private char [] idToChar = new char[MAX_TILE_TYPES];
+	private Image [] idToImage = new Image[MAX_TILE_TYPES];
+	private byte [] asciiToId = new byte[128];	// Quick look up for ASCII characters, -1 if unused
+	private int tileTypes = 0;					// How many ids are in use
+	
+	// The map is pre-drawn into images ('chunks') that are CHUNK_COLUMNS tiles
+	// wide so that draw() only has to blit the few chunks that are on screen.
+	// Chunk c is kept in slot c % CHUNK_SLOTS, so memory use doesn't depend on
+	// the size of the map.
+	static final int CHUNK_COLUMNS = 8;
+	static final int CHUNK_SLOTS = 8;
+	static final int NO_CHUNK = Integer.MIN_VALUE;
+	private BufferedImage [] chunkImages = new BufferedImage[CHUNK_SLOTS];
+	private int [] slotChunk = new int[CHUNK_SLOTS];	// The chunk drawn in each slot, NO_CHUNK if none
+	
+	/**
+	 * Create an empty tile map. Use loadMap to fill it.
+	 */
+	public TileMap()
+	{
+		clearTileTypes();
+		invalidateChunks();
+	}
 	
 	/**
 	 * @return The map height in tiles
@@ -98,9 +128,51 @@ public class TileMap
 	    }
 	}
 
+	/**
+	 * Make this an empty map (all '.') of the given size with no tile types
+	 * other than the blank tile. Use setTileImage to add some.
+	 * 
+	 * @param mapWidth		The maps width in tiles
+	 * @param mapHeight		The maps height in tiles
+	 * @param tileWidth		The width of a tile in pixels
+	 * @param tileHeight	The height of a tile in pixels
+	 */
+	public void create(int mapWidth, int mapHeight, int tileWidth, int tileHeight)
+	{
+		this.mapWidth = mapWidth;
+		this.mapHeight = mapHeight;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		
+		clearTileTypes();
+		grid = new byte[mapWidth * mapHeight];
+		solid = new long[(grid.length + 63) >> 6];
+		invalidateChunks();
+	}
+	
+	/**
+	 * Make the map repeat forever to the left and right, so that column x
+	 * is the same cell as column x + getMapWidth(). This lets a small map be
+	 * used as a ring buffer of columns, e.g. by LevelGenerator.
+	 * 
+	 * @param wrap true to make the map repeat
+	 */
+	public void setWrap(boolean wrap)
+	{
+		this.wrap = wrap;
+		invalidateChunks();
+	}
+	
+	/**
+	 * @return true if the map repeats forever to the left and right
+	 */
+	public boolean isWrapped() { return wrap; }
+	
 	/**
 	 * Loads a 'mapfile' that is contained in the given 'folder'. It is expected that
-	 * the images associated with the map will also be in 'folder'.
+	 * the images associated with the map will also be in 'folder'. Files ending
+	 * in ".lvl" are read as compiled levels (see LevelFile). Levels are kept in
+	 * the LevelCache, so loading a map a second time does not touch the disk.
 	 *  
 	 * @param folder The folder the tile map and images are located in
 	 * @param mapfile The name of the map file in the map folder
@@ -108,114 +180,385 @@ public class TileMap
 	 */
 	public boolean loadMap(String folder, String mapfile)
 	{
-		// Create a full path to the tile map by sticking the folder and mapfile together
-		String path = folder + "/" + mapfile;
-		int row=0;
+		LevelData level = LevelCache.get(folder, mapfile);
+		if (level == null) return false;
 		
-		try
+		load(level);
+		return true;
+	}
+	
+	/**
+	 * Replace this map with a copy of 'level'.
+	 * 
+	 * @param level The level to copy
+	 */
+	public void load(LevelData level)
+	{
+		mapWidth = level.mapWidth;
+		mapHeight = level.mapHeight;
+		tileWidth = level.tileWidth;
+		tileHeight = level.tileHeight;
+		
+		// Take the level's tile types as they are so its ids still match
+		clearTileTypes();
+		tileTypes = level.tileChars.length;
+		for (int id=0; id<tileTypes; id++)
 		{
-			BufferedReader in = new BufferedReader(new FileReader(path));
-			String line="";
-			String trimmed="";
-			String [] vals;
-			
-			// First we need to clear out the old image map
-			imagemap.clear();
-			
-			// Read the first line of the tile map to find out
-			// the relevant dimensions of the map plus the tiles
-			line = in.readLine();
-			vals = line.split(" ");
-			// Check that we read 4 values
-			if (vals.length != 4)
+			char ch = level.tileChars[id];
+			idToChar[id] = ch;
+			idToImage[id] = level.tileImages[id];
+			if (ch < 128) asciiToId[ch] = (byte)id;
+		}
+		
+		grid = level.grid.clone();
+		solid = new long[(grid.length + 63) >> 6];
+		for (int cell=0; cell<grid.length; cell++)
+		{
+			if (idToImage[grid[cell] & 0xFF] != null)
+				solid[cell >> 6] |= 1L << cell;
+		}
+		
+		invalidateChunks();
+	}
+	
+	/**
+	 * Forget all tile characters and images apart from the blank '.' tile.
+	 */
+	private void clearTileTypes()
+	{
+		Arrays.fill(asciiToId, (byte)-1);
+		Arrays.fill(idToImage, null);
+		tileTypes = 0;
+		idFor('.');
+	}
+	
+	/**
+	 * Gets the id for tile character 'ch', giving it a new id if
+	 * it hasn't been seen before.
+	 * 
+	 * @param ch The tile character
+	 * @return The id for 'ch', or -1 if there are no ids left
+	 */
+	private int idFor(char ch)
+	{
+		if (ch < 128 && asciiToId[ch] >= 0) return asciiToId[ch];
+		for (int id=0; id<tileTypes; id++)
+			if (idToChar[id] == ch) return id;
+		
+		if (tileTypes == MAX_TILE_TYPES) return -1;
+		idToChar[tileTypes] = ch;
+		if (ch < 128) asciiToId[ch] = (byte)tileTypes;
+		return tileTypes++;
+	}
+	
+	/**
+	 * Set the image that is drawn for tile character 'ch'. Tiles with an
+	 * image are solid, except for the blank '.' tile which is never drawn.
+	 * 
+	 * @param ch	The tile character
+	 * @param img	The image to draw for it
+	 */
+	public void setTileImage(char ch, Image img)
+	{
+		int id = idFor(ch);
+		if (id <= 0) return;
+		idToImage[id] = img;
+		
+		// Update any cells already using this character
+		for (int cell=0; cell<grid.length; cell++)
+		{
+			if ((grid[cell] & 0xFF) != id) continue;
+			setCell(cell / mapHeight, cell % mapHeight, id);
+		}
+		invalidateChunks();
+	}
+	
+	/**
+	 * Store tile 'id' in the cell at 'x,y' and update the solid bit for it.
+	 * 
+	 * @param x		The x tile coordinate (in tiles, not pixels)
+	 * @param y		The y tile coordinate (in tiles, not pixels)
+	 * @param id	The tile id
+	 */
+	private void setCell(int x, int y, int id)
+	{
+		int cell = cellIndex(x, y);
+		grid[cell] = (byte)id;
+		if (idToImage[id] != null)
+			solid[cell >> 6] |= 1L << cell;
+		else
+			solid[cell >> 6] &= ~(1L << cell);
+	}
+	
+	/**
+	 * Gets where the cell at 'x,y' is stored in the grid, wrapping x
+	 * around if the map repeats. 'x,y' must be valid.
+	 * 
+	 * @param x	The x tile coordinate (in tiles, not pixels)
+	 * @param y	The y tile coordinate (in tiles, not pixels)
+	 * @return The index of the cell
+	 */
+	private int cellIndex(int x, int y)
+	{
+		if (wrap) x = Math.floorMod(x, mapWidth);
+		return x * mapHeight + y;
+	}
+	
+	/**
+	 * Gets the solid bits of 64 rows of column 'x', with row 'row' as bit
+	 * 0. The solid runs of a column are found from these bits a block of
+	 * 64 rows at a time, so they need no memory of their own.
+	 * 
+	 * @param x		The column, which must be on the map
+	 * @param row	The first row, which must be between 0 and mapHeight - 1
+	 * @return The bits, with 0 for rows below the bottom of the map
+	 */
+	private long columnBits(int x, int row)
+	{
+		if (wrap) x = Math.floorMod(x, mapWidth);
+		int cell = x * mapHeight + row;
+		int rows = Math.min(64, mapHeight - row);
+		int w = cell >> 6;
+		int shift = cell & 63;
+		// The rows can start part way through one word and end in the next
+		long bits = solid[w] >>> shift;
+		if (shift > 0 && shift + rows > 64) bits |= solid[w + 1] << (64 - shift);
+		return rows == 64 ? bits : bits & ~(-1L << rows);
+	}
+	
+	/**
+	 * Gets the solid runs of tiles in column 'x'. Each run is written to
+	 * 'out' as two numbers, the first row of the run and the last row + 1,
+	 * from the top of the column down.
+	 * 
+	 * @param x		The x tile coordinate (in tiles, not pixels)
+	 * @param out	Where to write the runs, which needs room for getMapHeight() + 1 numbers
+	 * @return The number of runs, 0 if 'x' is outside the map
+	 */
+	public int getSolidIntervals(int x, int [] out)
+	{
+		if (!valid(x, 0)) return 0;
+		int runs = 0;
+		for (int block=0; block<mapHeight; block+=64)
+		{
+			long bits = columnBits(x, block);
+			long starts = bits & ~(bits << 1);
+			long ends = ~bits & (bits << 1);
+			for (; starts != 0; starts &= starts - 1, ends &= ends - 1)
 			{
-				System.err.println("Incorrect number of parameters in the TileMap header:" + vals.length);
-				in.close();
-				return false;
+				int top = block + Long.numberOfTrailingZeros(starts);
+				int bottom = block + Long.numberOfTrailingZeros(ends);
+				// Join a run on to the one it carries on from in the block above
+				if (runs > 0 && top == block && out[runs * 2 - 1] == block)
+				{
+					out[runs * 2 - 1] = bottom;
+					continue;
+				}
+				out[runs * 2] = top;
+				out[runs * 2 + 1] = bottom;
+				runs++;
 			}
+		}
+		return runs;
+	}
+	
+	/**
+	 * Checks if a circle overlaps any solid tile. The test is exact: the
+	 * circle is checked against the rectangle covered by each solid run of
+	 * the columns it spans.
+	 * 
+	 * @param cx	The x position of the centre of the circle in map pixels
+	 * @param cy	The y position of the centre of the circle in map pixels
+	 * @param r		The radius of the circle in pixels
+	 * @return true if the circle overlaps a solid tile
+	 */
+	public boolean circleHitsSolid(float cx, float cy, float r)
+	{
+		if (mapWidth == 0 || mapHeight == 0) return false;
+		int first = (int)Math.floor((cx - r) / tileWidth);
+		int last = (int)Math.floor((cx + r) / tileWidth);
+		float r2 = r * r;
+		
+		for (int x=first; x<=last; x++)
+		{
+			if (!wrap && (x < 0 || x >= mapWidth)) continue;
 			
-			// Read in the map dimensions
-			mapWidth = Integer.parseInt(vals[0]);
-			mapHeight = Integer.parseInt(vals[1]);
-			tileWidth = Integer.parseInt(vals[2]);
-			tileHeight = Integer.parseInt(vals[3]);
+			// Horizontal distance from the centre to the column
+			float left = x * tileWidth;
+			float dx = cx < left ? left - cx : Math.max(0, cx - (left + tileWidth));
+			float dx2 = dx * dx;
+			if (dx2 >= r2) continue;
 			
-			// Now look for the character assignments
-			while ((line = in.readLine()) != null)
+			for (int block=0; block<mapHeight; block+=64)
 			{
-				trimmed = line.trim();
-				// Skip the current line if it's a comment
-				if (trimmed.startsWith("//")) continue;
-				// Break out of the loop if we find the map
-				if (trimmed.startsWith("#map")) break;
-				
-				if (trimmed.charAt(0) == '#') // Look for a character to image map
+				// A run that goes past the block is checked as two, which gives the same answer
+				long bits = columnBits(x, block);
+				long starts = bits & ~(bits << 1);		// The first row of each run
+				long ends = ~bits & (bits << 1);		// The row after each run, none if it reaches row 63
+				for (; starts != 0; starts &= starts - 1, ends &= ends - 1)
 				{
-					// Extract the character
+					float top = (block + Long.numberOfTrailingZeros(starts)) * tileHeight;
+					float bottom = (block + Long.numberOfTrailingZeros(ends)) * tileHeight;
+					if (top >= cy + r) break;		// This run and the ones below it are too low
 					
-					String ch = "" + trimmed.charAt(1);
-					// and it's file name
-					String fileName = trimmed.substring(3,trimmed.length());
-					
-					Image img  = new ImageIcon(folder + "/" + fileName).getImage();
-					// Now add this character->image mapping to the map
-					if (img != null)
-						imagemap.put(ch,img);
-					else
-						System.err.println("Failed to load image '" + folder + "/" + fileName + "'");
+					float dy = cy < top ? top - cy : Math.max(0, cy - bottom);
+					if (dx2 + dy * dy < r2) return true;
 				}
 			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Works out when a circle moving from 'x0,y0' to 'x1,y1' first touches
+	 * a solid tile, checking only the solid runs of the columns it passes.
+	 * 
+	 * @param x0	The x position of the centre of the circle at the start, in map pixels
+	 * @param y0	The y position of the centre of the circle at the start
+	 * @param x1	The x position of the centre of the circle at the end
+	 * @param y1	The y position of the centre of the circle at the end
+	 * @param r		The radius of the circle in pixels
+	 * @return The fraction of the move (0-1) at which it first touches, or -1 if it doesn't
+	 */
+	public float sweepCircle(float x0, float y0, float x1, float y1, float r)
+	{
+		if (mapWidth == 0 || mapHeight == 0) return -1;
+		float dx = x1 - x0;
+		float dy = y1 - y0;
+		int first = (int)Math.floor((Math.min(x0, x1) - r) / tileWidth);
+		int last = (int)Math.floor((Math.max(x0, x1) + r) / tileWidth);
+		float highest = Math.min(y0, y1) - r;
+		float lowest = Math.max(y0, y1) + r;
+		float hit = -1;
+		
+		for (int x=first; x<=last; x++)
+		{
+			if (!wrap && (x < 0 || x >= mapWidth)) continue;
 			
-			// Check the map dimensione are at least > 0
-			if ((mapWidth > 0) && (mapHeight > 0))
-			{
-				tmap = new Tile[mapWidth][mapHeight]; 
-			}
-			else
-			{
-				System.err.println("Incorrect image map dimensions.");
-				trimmed = "";
-			}
-			
-			// Now read in the tile map structure
-			if (trimmed.startsWith("#map"))
+			float left = x * tileWidth;
+			for (int block=0; block<mapHeight; block+=64)
 			{
-				row=0;
-				while ((line = in.readLine()) != null)
+				long bits = columnBits(x, block);
+				long starts = bits & ~(bits << 1);
+				long ends = ~bits & (bits << 1);
+				for (; starts != 0; starts &= starts - 1, ends &= ends - 1)
 				{
-					if (line.trim().startsWith("//")) continue;
-				
-					if (line.length() != mapWidth)
-					{
-						System.err.println("Incorrect line length in map");
-						System.err.println(row + " : " + line);
-						continue;
-					}
-					
-					for (int col=0; col<mapWidth && col<line.length(); col++)
-						tmap[col][row] = new Tile(line.charAt(col),col*tileWidth,row*tileHeight);
-					row++;
+					float top = (block + Long.numberOfTrailingZeros(starts)) * tileHeight;
+					float bottom = (block + Long.numberOfTrailingZeros(ends)) * tileHeight;
+					if (bottom <= highest) continue;
+					if (top >= lowest) break;
 					
-					if (row >= mapHeight) break;
+					hit = Collision.earliest(hit, Collision.sweepCircleRect(x0, y0, dx, dy, r,
+							left, top, left + tileWidth, bottom));
 				}
 			}
-			
-			in.close();
-			
 		}
-		catch (Exception e)
+		return hit;
+	}
+	
+	/**
+	 * Save the contents of every cell, e.g. for a replay keyframe. The tile
+	 * types and images are not saved, they come from the level the map was
+	 * loaded from.
+	 * 
+	 * @param out Where to write the cells
+	 * @throws IOException If the cells could not be written
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		out.writeInt(mapWidth);
+		out.writeInt(mapHeight);
+		out.write(grid);
+	}
+	
+	/**
+	 * Replace the contents of every cell with those saved by writeState().
+	 * The map must be the same size and have the same tile types.
+	 * 
+	 * @param in Where to read the cells from
+	 * @throws IOException If the cells could not be read
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		if (in.readInt() != mapWidth || in.readInt() != mapHeight)
+			throw new IOException("Saved map is a different size");
+		in.readFully(grid);
+		Arrays.fill(solid, 0);
+		for (int cell=0; cell<grid.length; cell++)
+		{
+			int id = grid[cell] & 0xFF;
+			if (id >= tileTypes) throw new IOException("Unknown tile type " + id);
+			if (idToImage[id] != null)
+				solid[cell >> 6] |= 1L << cell;
+		}
+		invalidateChunks();
+	}
+	
+	/**
+	 * Mark every chunk as needing to be drawn again.
+	 */
+	private void invalidateChunks()
+	{
+		Arrays.fill(slotChunk, NO_CHUNK);
+	}
+	
+	/**
+	 * Mark any chunks showing column 'x' as needing to be drawn again.
+	 * 
+	 * @param x The x tile coordinate (in tiles, not pixels)
+	 */
+	private void invalidateColumn(int x)
+	{
+		for (int slot=0; slot<CHUNK_SLOTS; slot++)
 		{
-			System.err.println("Failed to read in tile map '" + path + "':" + e);
-			return false;
+			if (slotChunk[slot] == NO_CHUNK) continue;
+			int d = x - slotChunk[slot] * CHUNK_COLUMNS;
+			if (wrap) d = Math.floorMod(d, mapWidth);
+			if (d >= 0 && d < CHUNK_COLUMNS) slotChunk[slot] = NO_CHUNK;
 		}
+	}
+	
+	/**
+	 * Gets the image for chunk 'c', drawing the tiles into it first if
+	 * its slot holds a different chunk or the chunk has changed.
+	 * 
+	 * @param c The index of the chunk to get
+	 * @return The image holding the chunk
+	 */
+	private BufferedImage getChunk(int c)
+	{
+		int slot = Math.floorMod(c, CHUNK_SLOTS);
+		BufferedImage img = chunkImages[slot];
+		if (slotChunk[slot] == c) return img;
 		
-		if (row != mapHeight)
+		int w = CHUNK_COLUMNS * tileWidth;
+		int h = getPixelHeight();
+		if (img == null || img.getWidth() != w || img.getHeight() != h)
 		{
-			System.err.println("Map failed to load. Incorrect rows in map");
-			return false;
+			img = CompatibleImages.create(w, h, Transparency.TRANSLUCENT);
+			chunkImages[slot] = img;
 		}
 		
-		return true;
+		Graphics2D g = img.createGraphics();
+		// Clear out whatever was drawn before
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, w, h);
+		g.setComposite(AlphaComposite.SrcOver);
+		
+		int firstCol = c * CHUNK_COLUMNS;
+		int cols = wrap ? CHUNK_COLUMNS : Math.min(CHUNK_COLUMNS, mapWidth - firstCol);
+		Image tile;
+		for (int col=0; col<cols; col++)
+		{
+			for (int r=0; r<mapHeight; r++)
+			{
+				tile = getTileImage(firstCol + col, r);
+				if (tile != null) g.drawImage(tile, col*tileWidth, r*tileHeight, null);
+			}
+		}
+		g.dispose();
+		slotChunk[slot] = c;
+		return img;
 	}
 	
 	/**
@@ -227,7 +570,7 @@ public class TileMap
 		for (int r=0; r<mapHeight; r++)
 		{
 			for (int c=0; c<mapWidth; c++)
-				s.append(tmap[c][r].getCharacter());
+				s.append(getTileChar(c, r));
 	
 			s.append('\n');
 		}
@@ -244,11 +587,8 @@ public class TileMap
 	public Image getTileImage(int x, int y)
 	{
 		if (!valid(x,y)) return null;
-		Tile t = tmap[x][y];
-		if (t == null) return null;
-		char ch = t.getCharacter();
-		if (ch == '.') return null; // Blank space
-		return imagemap.get(ch + "");
+		// Blank space (id 0) never has an image
+		return idToImage[grid[cellIndex(x, y)] & 0xFF];
 	}
 	
 	/**
@@ -261,7 +601,7 @@ public class TileMap
 	public int getTileXC(int x, int y)
 	{
 		if (!valid(x,y)) return 0;
-		return tmap[x][y].getXC();
+		return x * tileWidth;
 	}
 	
 	/**
@@ -274,7 +614,7 @@ public class TileMap
 	public int getTileYC(int x, int y)
 	{
 		if (!valid(x,y)) return 0;
-		return tmap[x][y].getYC();
+		return y * tileHeight;
 	}
 	
 	/**
@@ -285,6 +625,7 @@ public class TileMap
 	 */
 	public boolean valid(int x, int y)
 	{
+		if (wrap) return (y >= 0 && y<mapHeight && mapWidth > 0);
 		return (x >= 0 && y >= 0 && x<mapWidth && y<mapHeight);
 	}
 	
@@ -299,7 +640,11 @@ public class TileMap
 	public boolean setTileChar(char ch, int x, int y)
 	{
 		if (!valid(x,y)) return false;
-		tmap[x][y].setCharacter(ch);
+		int id = idFor(ch);
+		if (id < 0) return false;
+		setCell(x, y, id);
+		// The chunk this tile is in will need to be re-drawn
+		invalidateColumn(x);
 		return true;
 	}
 	
@@ -313,11 +658,40 @@ public class TileMap
 	public char getTileChar(int x, int y)
 	{
 		if (!valid(x,y)) return '?';
-		return tmap[x][y].getCharacter();
+		return idToChar[grid[cellIndex(x, y)] & 0xFF];
+	}
+	
+	/**
+	 * Checks if the tile at position 'x,y' is solid, i.e. has an image.
+	 * Positions outside the map are never solid.
+	 * 
+	 * @param x The x tile coordinate (in tiles, not pixels)
+	 * @param y The y tile coordinate (in tiles, not pixels)
+	 * @return true if the tile is solid
+	 */
+	public boolean isSolid(int x, int y)
+	{
+		if (!valid(x,y)) return false;
+		int cell = cellIndex(x, y);
+		return (solid[cell >> 6] & (1L << cell)) != 0;
 	}
 
 	/**
-	 * Gets the tile object at position 'x,y'
+	 * Gets which tiles in column 'x' are solid as the bits of a long, bit y
+	 * for row y. Rows below the 64th are left out.
+	 *
+	 * @param x The x tile coordinate (in tiles, not pixels)
+	 * @return The solid bits, 0 if 'x' is outside the map
+	 */
+	public long getSolidColumn(int x)
+	{
+		if (!valid(x, 0)) return 0;
+		return columnBits(x, 0);
+	}
+
+	/**
+	 * Gets the tile object at position 'x,y'. Tiles are not stored as
+	 * objects, so this creates a Tile that reads and writes the map.
 	 * 
 	 * @param x The x tile coordinate (in tiles, not pixels)
 	 * @param y The y tile coordinate (in tiles, not pixels)
@@ -326,11 +700,14 @@ public class TileMap
 	public Tile getTile(int x, int y)
 	{
 		if (!valid(x,y)) return null;
-		return tmap[x][y];
+		if (wrap) x = Math.floorMod(x, mapWidth);
+		return new Tile(this, x, y);
 	}
 	
 	/**
-	 * Draws the tile map to the graphics device pointed to by 'g'.
+	 * Draws the tile map to the graphics device pointed to by 'g'. Only the
+	 * pre-drawn chunks that overlap the clip area are drawn, so the cost
+	 * depends on the width of the screen rather than the size of the map.
 	 * 
 	 * @param g The graphics device to draw to
 	 * @param xoff The xoffset to shift the tile map by
@@ -338,26 +715,30 @@ public class TileMap
 	 */
 	public void draw(Graphics2D g, int xoff, int yoff)
 	{
-		if (g == null) return;
+		if (g == null || mapWidth == 0) return;
 	
-		Image img=null;
-		Rectangle rect = (Rectangle)g.getClip();
-		int xc,yc;
+		Rectangle rect = g.getClipBounds();
+		int chunkWidth = CHUNK_COLUMNS * tileWidth;
+		int first = 0;
+		int last = (mapWidth - 1) / CHUNK_COLUMNS;
 		
-		for (int r=0; r<mapHeight; r++)
+		// Work out which chunks are on screen
+		if (rect != null)
 		{
-			for (int c=0; c<mapWidth; c++)
+			if (yoff + getPixelHeight() <= rect.y || yoff >= rect.y + rect.height) return;
+			first = Math.floorDiv(rect.x - xoff, chunkWidth);
+			last = Math.floorDiv(rect.x + rect.width - 1 - xoff, chunkWidth);
+			// A wrapped map carries on forever, otherwise stop at the ends
+			if (!wrap)
 			{
-				img = getTileImage(c, r);
-				if (img == null) continue;
-				xc = xoff + c*tileWidth;
-				yc = yoff + r*tileHeight;
-				
-				// Only draw the tile if it is on screen, otherwise go back round the loop
-				if (xc+tileWidth < 0 || xc >= rect.x + rect.width) continue;
-				if (yc+tileHeight < 0 || yc >= rect.y + rect.height) continue;
-				g.drawImage(img,xc,yc,null);
+				first = Math.max(first, 0);
+				last = Math.min(last, (mapWidth - 1) / CHUNK_COLUMNS);
 			}
-		}		
+		}
+		
+		for (int c=first; c<=last; c++)
+		{
+			g.drawImage(getChunk(c), xoff + c*chunkWidth, yoff, null);
+		}
 	}
 }
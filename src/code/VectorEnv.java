@@ -0,0 +1,315 @@
+package code;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * VectorEnv steps many GameEnvs with one call. All of their observations
+ * live in one direct FloatBuffer, one after another, and each GameEnv
+ * writes straight into its own slice of it, so nothing is copied between
+ * the games and the buffer. The actions, rewards and done flags are direct
+ * buffers too, with one entry per environment:
+ *
+ *  getActions()		the GameWorld.INPUT_ bits for each environment, set before step()
+ *  getRewards()		what each environment earned in the last step()
+ *  getDones()			1 if the game ended in the last step(), otherwise 0
+ *
+ * An environment whose game ends is started again straight away with the
+ * next seed, so its observation after step() is the start of a new game.
+ * The seeds all come from the one given to reset(), so a run can be repeated.
+ * Each environment's next seed is drawn ahead of time on the calling thread,
+ * so the new games can be started on the stepping threads and the seeds are
+ * the same however many threads there are.
+ *
+ * With more than one thread the environments are split into that many
+ * even groups, each stepped on a thread of a ForkJoinPool.
+ *
+ * @author Cameron Morrison
+ */
+public class VectorEnv {
+
+	private GameEnv [] envs;
+	private int observationSize;
+	private FloatBuffer observations;
+	private IntBuffer actions;
+	private FloatBuffer rewards;
+	private FloatBuffer dones;
+	private int [] frames = null;
+	private GameRandom seeds = new GameRandom(0);
+	private long [] nextSeeds;		// The seed each environment starts its next game with
+
+	private ForkJoinPool pool = null;
+	private ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+	/**
+	 * @param settings	How to set up each game, the seed is replaced by reset()
+	 * @param count		How many environments to run
+	 * @param pipes		How many pipes ahead each observes
+	 * @param rocks		How many rocks each observes
+	 * @param threads	How many threads to step them on, 1 to use the calling thread
+	 */
+	public VectorEnv(GameSettings settings, int count, int pipes, int rocks, int threads)
+	{
+		observationSize = GameEnv.getObservationSize(pipes, rocks);
+		observations = GameEnv.createBuffer(count * observationSize);
+		actions = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		rewards = GameEnv.createBuffer(count);
+		dones = GameEnv.createBuffer(count);
+
+		envs = new GameEnv[count];
+		nextSeeds = new long[count];
+		for (int i=0; i<count; i++)
+		{
+			observations.position(i * observationSize);
+			observations.limit((i + 1) * observationSize);
+			envs[i] = new GameEnv(settings, pipes, rocks, observations.slice());
+			observations.clear();
+		}
+
+		threads = Math.max(1, Math.min(threads, count));
+		if (threads > 1) pool = new ForkJoinPool(threads);
+		for (int t=0; t<threads; t++)
+		{
+			final int from = count * t / threads;
+			final int to = count * (t + 1) / threads;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					step(from, to);
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param ticks How many ticks each step() plays with the same action, 1 or more
+	 */
+	public void setTicksPerStep(int ticks)
+	{
+		for (GameEnv e : envs)
+			e.setTicksPerStep(ticks);
+	}
+
+	/**
+	 * @param ticks The most ticks a game lasts, or 0 to play until the first crash
+	 */
+	public void setMaxTicks(int ticks)
+	{
+		for (GameEnv e : envs)
+			e.setMaxTicks(ticks);
+	}
+
+	/**
+	 * Turn on frames for renderFrames(), see GameEnv.setFrameScale().
+	 *
+	 * @param scale How many screen pixels across each frame pixel covers, or 0 for no frames
+	 */
+	public void setFrameScale(int scale)
+	{
+		for (GameEnv e : envs)
+			e.setFrameScale(scale);
+		frames = scale > 0 ? new int[envs.length * getFrameSize()] : null;
+	}
+
+	/**
+	 * Start a new game in every environment.
+	 *
+	 * @param seed Where the seeds for every game, including later ones, come from
+	 * @return true if every game loaded
+	 */
+	public boolean reset(long seed)
+	{
+		seeds.setSeed(seed);
+		boolean loaded = true;
+		for (int i=0; i<envs.length; i++)
+		{
+			loaded &= envs[i].reset(seeds.nextLong());
+			rewards.put(i, 0);
+			dones.put(i, 0);
+		}
+		for (int i=0; i<envs.length; i++)
+			nextSeeds[i] = seeds.nextLong();
+		return loaded;
+	}
+
+	/**
+	 * Step every environment with the actions in getActions().
+	 */
+	public void step()
+	{
+		if (pool == null)
+		{
+			step(0, envs.length);
+		}
+		else
+		{
+			List<Future<Void>> futures = pool.invokeAll(tasks);
+			for (Future<Void> f : futures)
+			{
+				try {
+					f.get();
+				} catch (InterruptedException | ExecutionException e) {
+					System.err.println("Failed to step the environments:" + e);
+				}
+			}
+		}
+
+		// Seeds are handed out here, on one thread, so always in the same order
+		for (int i=0; i<envs.length; i++)
+		{
+			if (dones.get(i) != 0) nextSeeds[i] = seeds.nextLong();
+		}
+	}
+
+	/**
+	 * Step every environment.
+	 *
+	 * @param actions The GameWorld.INPUT_ bits for each environment
+	 */
+	public void step(int [] actions)
+	{
+		this.actions.clear();
+		this.actions.put(actions, 0, envs.length);
+		this.actions.clear();
+		step();
+	}
+
+	/**
+	 * Step environments 'from' to 'to' - 1.
+	 */
+	private void step(int from, int to)
+	{
+		for (int i=from; i<to; i++)
+		{
+			rewards.put(i, envs[i].step(actions.get(i)));
+			boolean done = envs[i].isDone();
+			dones.put(i, done ? 1 : 0);
+			if (done) envs[i].reset(nextSeeds[i]);
+		}
+	}
+
+	/**
+	 * Draw every environment's game into getFrames(), one frame after
+	 * another. Frames must have been turned on with setFrameScale().
+	 */
+	public void renderFrames()
+	{
+		if (frames == null) return;
+		int size = getFrameSize();
+		for (int i=0; i<envs.length; i++)
+			envs[i].renderFrame(frames, i * size);
+	}
+
+	/**
+	 * @return The observations of every environment, one after another
+	 */
+	public FloatBuffer getObservations() { return observations; }
+
+	/**
+	 * @return Where to put each environment's action before step()
+	 */
+	public IntBuffer getActions() { return actions; }
+
+	/**
+	 * @return What each environment earned in the last step()
+	 */
+	public FloatBuffer getRewards() { return rewards; }
+
+	/**
+	 * @return 1 for each environment whose game ended in the last step(), otherwise 0
+	 */
+	public FloatBuffer getDones() { return dones; }
+
+	/**
+	 * @return The frames drawn by renderFrames(), or null if frames are turned off
+	 */
+	public int [] getFrames() { return frames; }
+
+	/**
+	 * @return The number of pixels in each frame
+	 */
+	public int getFrameSize() { return envs[0].getFrameWidth() * envs[0].getFrameHeight(); }
+
+	/**
+	 * @return How many numbers each environment's observation has
+	 */
+	public int getObservationSize() { return observationSize; }
+
+	/**
+	 * @return The number of environments
+	 */
+	public int getCount() { return envs.length; }
+
+	/**
+	 * @param i Which environment
+	 * @return The environment
+	 */
+	public GameEnv getEnv(int i) { return envs[i]; }
+
+	/**
+	 * Stop the threads and release what was used to draw frames.
+	 */
+	public void shutdown()
+	{
+		if (pool != null) pool.shutdown();
+		for (GameEnv e : envs)
+			e.dispose();
+	}
+
+	/**
+	 * Measure how fast the environments can be stepped with random actions.
+	 *
+	 * Usage: java -Djava.awt.headless=true code.VectorEnv [envs] [steps] [threads] [frameScale]
+	 */
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int steps = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int frameScale = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+		GameSettings settings = new GameSettings(0);
+		settings.setEndless(0);
+		VectorEnv env = new VectorEnv(settings, count, 3, 4, threads);
+		env.setFrameScale(frameScale);
+		if (!env.reset(1))
+		{
+			System.err.println("Failed to load the game");
+			return;
+		}
+
+		GameRandom random = new GameRandom(2);
+		int [] actions = new int[count];
+		long games = 0;
+		long start = System.nanoTime();
+		for (int s=0; s<steps; s++)
+		{
+			for (int i=0; i<count; i++)
+				actions[i] = random.nextInt(8) == 0 ? GameWorld.INPUT_FLAP : 0;
+			env.step(actions);
+			for (int i=0; i<count; i++)
+				games += (int)env.getDones().get(i);
+			if (frameScale > 0) env.renderFrames();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%d environments, %d steps on %d threads: %.2f s%n", count, steps, threads, seconds);
+		System.out.printf("%.0f env steps/sec, %d games ended%n", count * steps / seconds, games);
+		System.out.printf("%d observations of %d numbers, first: ", count, env.getObservationSize());
+		for (int i=0; i<env.getObservationSize(); i++)
+			System.out.printf("%.2f ", env.getObservations().get(i));
+		System.out.println();
+		env.shutdown();
+	}
+}
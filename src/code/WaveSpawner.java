@@ -0,0 +1,207 @@
+package code;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * WaveSpawner keeps an ObstaclePool topped up according to a list of
+ * spawn waves read from a text file. Each line of the file describes a
+ * wave that starts a given time after the start of a round:
+
+// start(ms) population minSpeed maxSpeed interval(ms)
+0     3   0.1  0.1  0
+20000 10  0.1  0.2  500
+
+ * While a wave is running, a new obstacle is spawned off the right of the
+ * screen whenever fewer than 'population' are in play, at most one every
+ * 'interval' milliseconds (0 means fill up straight away). Obstacles move
+ * left at a random speed between 'minSpeed' and 'maxSpeed' pixels per
+ * millisecond. Lines starting with // are comments.
+ * 
+ * @author Cameron Morrison
+ */
+public class WaveSpawner {
+
+	private ArrayList<Wave> waves = new ArrayList<Wave>();
+	private long time = 0;			// Time since the start of the round
+	private long sinceSpawn = 0;	// Time since the last obstacle was spawned
+	private float speedScale = 1.0f;	// Multiplies the speed of every wave
+	
+	/**
+	 * Loads the waves in 'path'. Waves must be in order of start time.
+	 * 
+	 * @param path	The file to load
+	 * @return true if the file loaded successfully
+	 */
+	public boolean load(String path)
+	{
+		waves.clear();
+		try (BufferedReader in = new BufferedReader(new FileReader(path)))
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("//")) continue;
+				
+				String [] vals = line.split("\\s+");
+				if (vals.length != 5)
+				{
+					System.err.println("Incorrect number of values in wave: " + line);
+					continue;
+				}
+				addWave(Long.parseLong(vals[0]), Integer.parseInt(vals[1]),
+						Float.parseFloat(vals[2]), Float.parseFloat(vals[3]), Long.parseLong(vals[4]));
+			}
+		}
+		catch (Exception e)
+		{
+			System.err.println("Failed to read in waves '" + path + "':" + e);
+			return false;
+		}
+		return !waves.isEmpty();
+	}
+	
+	/**
+	 * Add a wave to the end of the list.
+	 * 
+	 * @param start			Time from the start of the round in ms
+	 * @param population	How many obstacles to keep in play
+	 * @param minSpeed		Slowest obstacle speed in pixels per ms
+	 * @param maxSpeed		Fastest obstacle speed in pixels per ms
+	 * @param interval		Shortest time between spawns in ms
+	 */
+	public void addWave(long start, int population, float minSpeed, float maxSpeed, long interval)
+	{
+		waves.add(new Wave(start, population, minSpeed, maxSpeed, interval));
+	}
+	
+	/**
+	 * @return The largest population of any wave, i.e. how big the pool needs to be
+	 */
+	public int getMaxPopulation()
+	{
+		int max = 0;
+		for (Wave w : waves)
+			max = Math.max(max, w.population);
+		return max;
+	}
+	
+	/**
+	 * Go back to the first wave.
+	 */
+	public void reset()
+	{
+		time = 0;
+		sinceSpawn = 0;
+	}
+	
+	/**
+	 * Move on by 'elapsed' milliseconds and spawn obstacles into 'pool'
+	 * as needed by the current wave.
+	 * 
+	 * @param elapsed		Time since the last update
+	 * @param pool			The pool to spawn into
+	 * @param random		Where to get random positions and speeds from
+	 * @param screenWidth	Obstacles are spawned to the right of this
+	 * @param screenHeight	Obstacles are spawned between 0 and this
+	 */
+	public void update(long elapsed, ObstaclePool pool, GameRandom random, int screenWidth, int screenHeight)
+	{
+		time += elapsed;
+		sinceSpawn += elapsed;
+		
+		Wave wave = currentWave();
+		if (wave == null) return;
+		
+		while (pool.getActiveCount() < wave.population && sinceSpawn >= wave.interval)
+		{
+			float speed = (wave.minSpeed + random.nextFloat() * (wave.maxSpeed - wave.minSpeed)) * speedScale;
+			int index = pool.spawn(0, 0, -speed, 0);
+			if (index < 0) return;
+			
+			Sprite s = pool.getSprite(index);
+			pool.moveTo(index, screenWidth + (int)(random.nextFloat()*200.0f),
+					(int)Math.floor(random.nextFloat()*(screenHeight-s.getHeight())));
+			
+			if (wave.interval > 0) sinceSpawn = 0;
+		}
+	}
+	
+	/**
+	 * Make every obstacle faster or slower than its wave says, e.g. to try
+	 * out a change to the difficulty without editing the waves file.
+	 * 
+	 * @param scale	What to multiply the speeds by, 1 for the speeds in the file
+	 */
+	public void setSpeedScale(float scale) { speedScale = scale; }
+	
+	/**
+	 * @return What the speeds in the waves are multiplied by
+	 */
+	public float getSpeedScale() { return speedScale; }
+	
+	/**
+	 * Save how far through the waves the round is.
+	 * 
+	 * @param out Where to write the state
+	 * @throws IOException If the state could not be written
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		out.writeLong(time);
+		out.writeLong(sinceSpawn);
+	}
+	
+	/**
+	 * Carry on from a state saved by writeState().
+	 * 
+	 * @param in Where to read the state from
+	 * @throws IOException If the state could not be read
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		time = in.readLong();
+		sinceSpawn = in.readLong();
+	}
+	
+	/**
+	 * @return The last wave that has started, or null if none have
+	 */
+	private Wave currentWave()
+	{
+		Wave current = null;
+		for (int i=0; i<waves.size(); i++)
+		{
+			Wave w = waves.get(i);
+			if (w.start > time) break;
+			current = w;
+		}
+		return current;
+	}
+	
+	/**
+	 * Private class to hold the settings for one wave.
+	 */
+	private class Wave {
+		
+		long start;
+		int population;
+		float minSpeed;
+		float maxSpeed;
+		long interval;
+		
+		Wave(long start, int population, float minSpeed, float maxSpeed, long interval)
+		{
+			this.start = start;
+			this.population = population;
+			this.minSpeed = minSpeed;
+			this.maxSpeed = maxSpeed;
+			this.interval = interval;
+		}
+	}
+}